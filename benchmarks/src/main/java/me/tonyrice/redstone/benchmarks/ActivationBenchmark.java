@@ -0,0 +1,73 @@
+package me.tonyrice.redstone.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import me.tonyrice.redstone.Redstone;
+import me.tonyrice.redstone.Redstone.Wire;
+
+/**
+ * Activates a wire, trips hooks while its activate hook is still running so they
+ * pile up in the trip cache, waits for the cache to drain and deactivates the
+ * wire again. The activate hook is marked blocking so it completes on a later
+ * turn of the event loop.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ActivationBenchmark {
+
+    final static int HOOKS = 20;
+
+    @Param({ "0", "100", "10000" })
+    public int queued;
+
+    private Vertx vertx;
+    private Context context;
+    private Redstone redstone;
+    private Wire idle;
+    private Wire armed;
+
+    @Setup
+    public void setup() throws Exception {
+        JsonObject wireData = Configs.wires(2, HOOKS);
+        wireData.getJsonObject("wire_1").put("activate", new JsonObject().put("blocking", true));
+
+        vertx = Vertx.vertx();
+        redstone = Redstone.create(vertx, wireData, StubWebClient.create());
+        idle = redstone.wire("wire_0");
+        armed = redstone.wire("wire_1");
+        context = armed.getLayer().context();
+    }
+
+    @TearDown
+    public void tearDown() {
+        vertx.close();
+    }
+
+    @Benchmark
+    public void activateDeactivate() {
+        Configs.await(context, done -> {
+            armed.activate();
+            for (int i = 0; i < queued; i++) {
+                armed.trip("hook_" + (i % HOOKS));
+            }
+            armed.trip("ping", rs -> {
+                armed.deactivate();
+                idle.activate();
+                done.handle(null);
+            });
+        });
+    }
+}
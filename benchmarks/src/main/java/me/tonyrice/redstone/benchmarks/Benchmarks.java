@@ -0,0 +1,21 @@
+package me.tonyrice.redstone.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the Redstone benchmarks with the GC profiler attached, so every result
+ * reports its allocation rate next to its score. Accepts the usual JMH command
+ * line options, e.g. a benchmark name pattern or "-p wires=10".
+ */
+public class Benchmarks {
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
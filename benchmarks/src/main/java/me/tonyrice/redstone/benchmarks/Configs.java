@@ -0,0 +1,61 @@
+package me.tonyrice.redstone.benchmarks;
+
+import java.util.concurrent.CompletableFuture;
+
+import io.vertx.core.Context;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Synthetic wires.json configurations and helpers shared by the benchmarks.
+ */
+final class Configs {
+
+    final static String TRIP_KEY = "bench";
+
+    private Configs() {
+    }
+
+    /**
+     * Builds a configuration with the given number of wires. Every wire has an
+     * "opened" hook arming a long timer, a "closed" hook killing it, a "ping" hook
+     * without actions and a number of plain http_get hooks.
+     */
+    static JsonObject wires(int wires, int hooks) {
+        JsonObject wireData = new JsonObject()
+                .put("_config_trip_key", TRIP_KEY)
+                .put("_config_default_wire", "wire_0");
+
+        for (int w = 0; w < wires; w++) {
+            String wireId = "wire_" + w;
+            JsonObject wire = new JsonObject().put("title", "Wire " + w);
+
+            wire.put("opened", new JsonObject()
+                    .put("http_get", "http://stub.local/" + wireId + "/opened")
+                    .put("timer", new JsonObject()
+                            .put("delay", 600000)
+                            .put("http_get", "http://stub.local/" + wireId + "/alarm")));
+            wire.put("closed", new JsonObject().put("kill_timers", new JsonArray().add("opened")));
+            wire.put("ping", new JsonObject());
+
+            for (int h = 0; h < hooks; h++) {
+                wire.put("hook_" + h, new JsonObject().put("http_get", "http://stub.local/" + wireId + "/" + h));
+            }
+
+            wireData.put(wireId, wire);
+        }
+
+        return wireData;
+    }
+
+    /**
+     * Runs the body on the given context and waits until it calls its completion
+     * handler.
+     */
+    static void await(Context context, Handler<Handler<Void>> body) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        context.runOnContext(v -> body.handle(done::complete));
+        done.join();
+    }
+}
@@ -0,0 +1,68 @@
+package me.tonyrice.redstone.benchmarks;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.vertx.core.Vertx;
+import me.tonyrice.redstone.Redstone;
+
+/**
+ * Loads synthetic wires.json files of growing size through {@link Redstone#load}.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class LoadBenchmark {
+
+    @Param({ "10", "1000", "100000" })
+    public int wires;
+
+    private Vertx vertx;
+    private File file;
+
+    @Setup
+    public void setup() throws Exception {
+        vertx = Vertx.vertx();
+        file = File.createTempFile("wires-" + wires + "-", ".json");
+        file.deleteOnExit();
+        Files.write(file.toPath(), Configs.wires(wires, 5).encode().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+        vertx.close();
+    }
+
+    @Benchmark
+    public Redstone load() {
+        CompletableFuture<Redstone> loaded = new CompletableFuture<>();
+        Redstone.load(vertx, file.getPath(), rs -> {
+            if (rs.failed()) {
+                loaded.completeExceptionally(rs.cause());
+            } else {
+                loaded.complete(rs.result());
+            }
+        });
+        return loaded.join();
+    }
+}
@@ -0,0 +1,65 @@
+package me.tonyrice.redstone.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.vertx.core.Vertx;
+import me.tonyrice.redstone.Redstone;
+import me.tonyrice.redstone.Redstone.Wire;
+
+/**
+ * Looks up wires by id and reads configuration variables, as the HTTP API does
+ * on every request.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class LookupBenchmark {
+
+    @Param({ "10", "1000" })
+    public int wires;
+
+    private Vertx vertx;
+    private Redstone redstone;
+    private String last;
+
+    @Setup
+    public void setup() throws Exception {
+        vertx = Vertx.vertx();
+        redstone = Redstone.create(vertx, Configs.wires(wires, 2), StubWebClient.create());
+        last = "wire_" + (wires - 1);
+    }
+
+    @TearDown
+    public void tearDown() {
+        vertx.close();
+    }
+
+    @Benchmark
+    public Wire wireFirst() {
+        return redstone.wire("wire_0");
+    }
+
+    @Benchmark
+    public Wire wireLast() {
+        return redstone.wire(last);
+    }
+
+    @Benchmark
+    public Wire wireMissing() {
+        return redstone.wire("missing");
+    }
+
+    @Benchmark
+    public String config() {
+        return redstone.config().getString("trip_key");
+    }
+}
@@ -0,0 +1,57 @@
+package me.tonyrice.redstone.benchmarks;
+
+import java.lang.reflect.Proxy;
+
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.ext.web.client.HttpRequest;
+import io.vertx.ext.web.client.HttpResponse;
+import io.vertx.ext.web.client.WebClient;
+
+/**
+ * A WebClient answering every request with a 200 right away, so benchmarks
+ * measure Redstone rather than the network.
+ */
+final class StubWebClient {
+
+    private StubWebClient() {
+    }
+
+    static WebClient create() {
+        HttpResponse<?> response = proxy(HttpResponse.class, (method, args) -> {
+            return "statusCode".equals(method) ? 200 : null;
+        });
+
+        Object[] request = new Object[1];
+        request[0] = proxy(HttpRequest.class, (method, args) -> {
+            if ("send".equals(method)) {
+                @SuppressWarnings("unchecked")
+                Handler<Object> handler = (Handler<Object>) args[args.length - 1];
+                handler.handle(Future.succeededFuture(response));
+                return null;
+            }
+            return request[0];
+        });
+
+        return proxy(WebClient.class, (method, args) -> {
+            return method.startsWith("get") || method.startsWith("request") ? request[0] : null;
+        });
+    }
+
+    private interface Call {
+        Object invoke(String method, Object[] args);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, Call call) {
+        return (T) Proxy.newProxyInstance(StubWebClient.class.getClassLoader(), new Class<?>[] { type },
+                (proxy, method, args) -> {
+                    if (method.getDeclaringClass() == Object.class) {
+                        return "equals".equals(method.getName()) ? proxy == args[0]
+                                : "hashCode".equals(method.getName()) ? System.identityHashCode(proxy)
+                                        : type.getSimpleName();
+                    }
+                    return call.invoke(method.getName(), args);
+                });
+    }
+}
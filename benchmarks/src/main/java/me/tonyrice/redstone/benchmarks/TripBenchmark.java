@@ -0,0 +1,81 @@
+package me.tonyrice.redstone.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import me.tonyrice.redstone.Redstone;
+
+/**
+ * Trips hooks of the active wire on the event loop of its layer. Every trip of "opened" sends
+ * an outbound request through the stubbed client and arms a timer, which the
+ * following trip of "closed" cancels again.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class TripBenchmark {
+
+    final static int BATCH = 1000;
+
+    private Vertx vertx;
+    private Context context;
+    private Redstone redstone;
+
+    @Setup
+    public void setup() throws Exception {
+        vertx = Vertx.vertx();
+        redstone = Redstone.create(vertx, Configs.wires(10, 20), StubWebClient.create());
+        context = redstone.live().getLayer().context();
+    }
+
+    @TearDown
+    public void tearDown() {
+        vertx.close();
+    }
+
+    /**
+     * Trips a batch of hooks on the event loop.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public void tripThroughput() {
+        Configs.await(context, done -> {
+            for (int i = 0; i < BATCH; i++) {
+                redstone.trip((i & 1) == 0 ? "opened" : "closed");
+            }
+            done.handle(null);
+        });
+    }
+
+    /**
+     * Measures a single trip from the calling thread until the actions of the
+     * hook have run.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void tripLatency() {
+        Configs.await(context, done -> {
+            redstone.live().trip("opened", rs -> {
+                redstone.trip("closed");
+                done.handle(null);
+            });
+        });
+    }
+}
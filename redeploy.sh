@@ -1,7 +1,7 @@
 #!/usr/bin/env bash
 
 export LAUNCHER="io.vertx.core.Launcher"
-export VERTICLE="me.tonyrice.redstone.http.HttpServer"
+export VERTICLE="me.tonyrice.redstone.http.RedstoneServer"
 export CMD="mvn compile"
 export VERTX_CMD="run"
 
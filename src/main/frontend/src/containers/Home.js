@@ -8,23 +8,41 @@ export default function Home(props) {
   const [isLoading, setIsLoading] = useState(true);
 
   useEffect(() => {
-    async function onLoad() {
-      if (!props.isAuthenticated) {
-        console.log("Not authenticated")
-        return;
-      }
+    if (!props.isAuthenticated) {
+      console.log("Not authenticated")
+      return;
+    }
 
-      try {
-        const wires = await loadWires();
+    if (!window.EventSource) {
+      loadWires().then((wires) => {
         setWires(wires);
-      } catch (e) {
-        console.error(e);
-      }
+        setIsLoading(false);
+      }).catch((e) => console.error(e));
+      return;
+    }
+
+    // The server sends a snapshot of every wire, then a delta whenever a wire
+    // is activated or deactivated.
+    const stream = new EventSource('/v1/wires/stream');
 
+    stream.addEventListener('snapshot', (e) => {
+      setWires(JSON.parse(e.data));
       setIsLoading(false);
-    }
+    });
+
+    stream.addEventListener('delta', (e) => {
+      const delta = JSON.parse(e.data);
+      if (delta.type === 'activate') {
+        // Only one wire of a layer is active at a time.
+        setWires((wires) => wires.map((wire) => wire.layer === delta.layer ? { ...wire, active: wire.id === delta.wire } : wire));
+      } else if (delta.type === 'deactivate') {
+        setWires((wires) => wires.map((wire) => wire.id === delta.wire ? { ...wire, active: false } : wire));
+      }
+    });
+
+    stream.onerror = (e) => console.error(e);
 
-    onLoad();
+    return () => stream.close();
   }, [props.isAuthenticated]);
 
   function loadWires() {
@@ -36,7 +54,7 @@ export default function Home(props) {
   }
   function activateWire(wireId) {
     return fetch('/v1/wires/' + wireId + "/activate").then(async (r) => {
-      if (r.status === 200) {
+      if (r.status === 200 && !window.EventSource) {
         const wires = await loadWires();
         setWires(wires);
       }
@@ -0,0 +1,104 @@
+package me.tonyrice.redstone;
+
+import java.util.Locale;
+
+import me.tonyrice.redstone.schedule.Schedule;
+
+/**
+ * A single, pre-resolved workflow action belonging to a compiled {@link HookPlan}.
+ */
+final class Action {
+
+    enum Kind {
+        TIMER, REPEAT, SCHEDULE, KILL_TIMERS, HTTP_GET, IFTTT, HOOK, INLINE_HOOK, WIRE;
+
+        /**
+         * The name of the kind in trip events.
+         */
+        final String label = name().toLowerCase(Locale.ROOT);
+    }
+
+    final Kind kind;
+
+    /**
+     * The delay of a timer or repeat action in milliseconds.
+     */
+    final long delay;
+
+    /**
+     * The request url or the referenced hook or wire id.
+     */
+    final String target;
+
+    /**
+     * A human readable name of the action, e.g. the IFTTT event.
+     */
+    final String name;
+
+    /**
+     * The window in milliseconds identical outbound requests are coalesced in, or
+     * 0 to send every request.
+     */
+    final long coalesce;
+
+    final String[] targets;
+    final boolean repeat;
+    final Schedule schedule;
+    final HookPlan child;
+
+    /**
+     * The position of a timer, repeat or schedule action within the plan tree of
+     * its root hook, or -1.
+     */
+    final int slot;
+
+    private Action(Kind kind, long delay, String target, String name, long coalesce, String[] targets,
+            boolean repeat, Schedule schedule, HookPlan child, int slot) {
+        this.kind = kind;
+        this.delay = delay;
+        this.target = target;
+        this.name = name;
+        this.coalesce = coalesce;
+        this.targets = targets;
+        this.repeat = repeat;
+        this.schedule = schedule;
+        this.child = child;
+        this.slot = slot;
+    }
+
+    static Action timer(long delay, HookPlan child, int slot) {
+        return new Action(Kind.TIMER, delay, null, null, 0, null, false, null, child, slot);
+    }
+
+    static Action repeat(long delay, HookPlan child, int slot) {
+        return new Action(Kind.REPEAT, delay, null, null, 0, null, true, null, child, slot);
+    }
+
+    static Action schedule(Schedule schedule, boolean repeat, HookPlan child, int slot) {
+        return new Action(Kind.SCHEDULE, 0, null, null, 0, null, repeat, schedule, child, slot);
+    }
+
+    static Action killTimers(String[] hookIds) {
+        return new Action(Kind.KILL_TIMERS, 0, null, null, 0, hookIds, false, null, null, -1);
+    }
+
+    static Action httpGet(String url, long coalesce) {
+        return new Action(Kind.HTTP_GET, 0, url, url, coalesce, null, false, null, null, -1);
+    }
+
+    static Action ifttt(String event, String url, long coalesce) {
+        return new Action(Kind.IFTTT, 0, url, event, coalesce, null, false, null, null, -1);
+    }
+
+    static Action hook(String hookId) {
+        return new Action(Kind.HOOK, 0, hookId, hookId, 0, null, false, null, null, -1);
+    }
+
+    static Action inlineHook(HookPlan child) {
+        return new Action(Kind.INLINE_HOOK, 0, null, null, 0, null, false, null, child, -1);
+    }
+
+    static Action wire(String wireId) {
+        return new Action(Kind.WIRE, 0, wireId, wireId, 0, null, false, null, null, -1);
+    }
+}
@@ -0,0 +1,248 @@
+package me.tonyrice.redstone;
+
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import me.tonyrice.redstone.schedule.Schedule;
+
+/**
+ * The compiled form of a hook configuration. A hook plan is immutable and may
+ * be shared between wires when it originates from an alias.
+ */
+final class HookPlan {
+
+    final JsonObject source;
+
+    /**
+     * The delay before the actions are run in milliseconds, or 0 for none.
+     */
+    final long delay;
+
+    /**
+     * True if the actions must be run on a worker thread instead of an event loop.
+     */
+    final boolean blocking;
+
+    final Action[] actions;
+
+    /**
+     * The number of actions run at once at most, or 0 for no limit.
+     */
+    final int concurrency;
+
+    /**
+     * How long the actions may take in milliseconds before the hook completes as
+     * timed out, or 0 for no deadline.
+     */
+    final long timeout;
+
+    /**
+     * The trip limits of a root hook, see {@link Limiter}: the throttle and
+     * debounce windows in milliseconds, the trips per second and the burst of
+     * the token bucket. 0 disables a limit.
+     */
+    final long throttle;
+    final long debounce;
+    final double rate;
+    final int burst;
+
+    /**
+     * The position of this plan within the plan tree of its root hook.
+     */
+    final int slot;
+
+    /**
+     * Every plan and timer, repeat or schedule action of the tree indexed by slot,
+     * or null if this is not a root plan.
+     */
+    private Object[] nodes;
+
+    private HookPlan(JsonObject source, long delay, boolean blocking, Action[] actions, int concurrency,
+            long timeout, int slot) {
+        this.throttle = source.getLong("throttle_ms", (long) 0);
+        this.debounce = source.getLong("debounce_ms", (long) 0);
+        this.rate = source.getDouble("rate", 0d);
+        this.burst = source.getInteger("burst", (int) Math.max(1, Math.ceil(rate)));
+        this.source = source;
+        this.delay = delay;
+        this.blocking = blocking;
+        this.actions = actions;
+        this.concurrency = concurrency;
+        this.timeout = timeout;
+        this.slot = slot;
+    }
+
+    /**
+     * Returns the plan or action with the given slot within this root plan, or null.
+     */
+    Object node(int slot) {
+        return nodes != null && slot >= 0 && slot < nodes.length ? nodes[slot] : null;
+    }
+
+    /**
+     * Adds the ids of the hooks this plan trips and waits for, directly or through
+     * inline hooks, to the given collection. Hooks tripped by timers, repeats and
+     * schedules are left out as they are not waited for.
+     */
+    void chains(Collection<String> hookIds) {
+        for (Action action : actions) {
+            if (action.kind == Action.Kind.HOOK) {
+                hookIds.add(action.target);
+            } else if (action.kind == Action.Kind.INLINE_HOOK) {
+                action.child.chains(hookIds);
+            }
+        }
+    }
+
+    /**
+     * The configuration variables compiled into hook plans.
+     */
+    final private static String[] VARS = { "coalesce_ms", "time_zone", "ifttt_key", "hook_concurrency",
+            "hook_timeout_ms" };
+
+    /**
+     * Returns true if plans compiled with either set of configuration variables
+     * are the same.
+     */
+    static boolean sameVars(JsonObject vars, JsonObject other) {
+        for (String var : VARS) {
+            if (!Objects.equals(vars.getValue(var), other.getValue(var))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compiles a root hook configuration.
+     *
+     * @param config the hook configuration
+     * @param vars the configuration variables used to resolve IFTTT endpoints,
+     *             time zones and defaults
+     */
+    static HookPlan compile(JsonObject config, JsonObject vars) {
+        List<Object> nodes = new ArrayList<>();
+        HookPlan plan = compile(config, false, vars.getLong("coalesce_ms", (long) 0), vars, nodes);
+        plan.nodes = nodes.toArray();
+        return plan;
+    }
+
+    /**
+     * Compiles a hook configuration.
+     *
+     * @param config the hook configuration
+     * @param consumeDelay true if the delay has already been consumed by a parent
+     *                     timer, repeat or schedule
+     * @param coalesce the coalescing window inherited from the parent hook
+     * @param vars the configuration variables
+     * @param nodes the slot table of the root plan
+     */
+    private static HookPlan compile(JsonObject config, boolean consumeDelay, long coalesce, JsonObject vars,
+            List<Object> nodes) {
+        List<Action> actions = new ArrayList<>();
+
+        int slot = reserve(nodes);
+
+        coalesce = config.getLong("coalesce_ms", coalesce);
+
+        if (config.containsKey("timer")) {
+            JsonObject timerHook = config.getJsonObject("timer", new JsonObject());
+            int timerSlot = reserve(nodes);
+            actions.add(bind(nodes, Action.timer(timerHook.getLong("delay", (long) 5000),
+                    compile(timerHook, true, coalesce, vars, nodes), timerSlot)));
+        }
+
+        if (config.containsKey("repeat")) {
+            JsonObject repeatHook = config.getJsonObject("repeat", new JsonObject());
+            int repeatSlot = reserve(nodes);
+            actions.add(bind(nodes, Action.repeat(repeatHook.getLong("delay", (long) 5000),
+                    compile(repeatHook, true, coalesce, vars, nodes), repeatSlot)));
+        }
+
+        if (config.containsKey("schedule")) {
+            JsonObject schedHook = config.getJsonObject("schedule", new JsonObject()).copy();
+
+            Schedule schedule = Schedule.parse(schedHook, ZoneId.of(vars.getString("time_zone",
+                    ZoneId.systemDefault().getId())));
+            Object repeat = schedHook.remove("repeat");
+
+            for (String key : new String[] { "when", "cron", "days", "zone" }) {
+                schedHook.remove(key);
+            }
+
+            int schedSlot = reserve(nodes);
+            actions.add(bind(nodes, Action.schedule(schedule, Boolean.TRUE.equals(repeat),
+                    compile(schedHook, false, coalesce, vars, nodes), schedSlot)));
+        }
+
+        if (config.containsKey("kill_timers")) {
+            actions.add(Action.killTimers(strings(config.getValue("kill_timers"))));
+        }
+
+        if (config.containsKey("http_get")) {
+            for (String url : strings(config.getValue("http_get", "https://www.google.com"))) {
+                actions.add(Action.httpGet(url, coalesce));
+            }
+        }
+
+        if (config.containsKey("ifttt")) {
+            for (String event : strings(config.getValue("ifttt", "redstone_event"))) {
+                actions.add(Action.ifttt(event, "https://maker.ifttt.com/trigger/" + event + "/with/key/"
+                        + vars.getString("ifttt_key", "invalid"), coalesce));
+            }
+        }
+
+        if (config.containsKey("hook")) {
+            Object hookVal = config.getValue("hook");
+
+            if (hookVal instanceof JsonObject) {
+                actions.add(Action.inlineHook(compile((JsonObject) hookVal, false, coalesce, vars, nodes)));
+            } else if (hookVal != null) {
+                actions.add(Action.hook(hookVal.toString()));
+            }
+        }
+
+        if (config.containsKey("wire")) {
+            actions.add(Action.wire(config.getString("wire")));
+        }
+
+        long delay = consumeDelay ? 0 : config.getLong("delay", (long) 0);
+
+        HookPlan plan = new HookPlan(config, delay, config.getBoolean("blocking", false),
+                actions.toArray(new Action[actions.size()]),
+                config.getInteger("concurrency", vars.getInteger("hook_concurrency", 0)),
+                config.getLong("timeout_ms", vars.getLong("hook_timeout_ms", (long) 0)), slot);
+        nodes.set(slot, plan);
+        return plan;
+    }
+
+    private static int reserve(List<Object> nodes) {
+        nodes.add(null);
+        return nodes.size() - 1;
+    }
+
+    private static Action bind(List<Object> nodes, Action action) {
+        nodes.set(action.slot, action);
+        return action;
+    }
+
+    private static String[] strings(Object value) {
+        if (value instanceof JsonArray) {
+            JsonArray values = (JsonArray) value;
+            String[] strings = new String[values.size()];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = String.valueOf(values.getValue(i));
+            }
+            return strings;
+        }
+        if (value == null) {
+            return new String[0];
+        }
+        return new String[] { value.toString() };
+    }
+}
@@ -0,0 +1,151 @@
+package me.tonyrice.redstone;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits how often a hook can be tripped. The state is a few primitive fields
+ * updated with compare-and-set, so admitting a trip neither locks nor
+ * allocates.
+ *
+ * <ul>
+ * <li>{@code throttle_ms} lets a trip through at most once per window and
+ * suppresses the trips within it.</li>
+ * <li>{@code rate} and {@code burst} form a token bucket of {@code rate} trips
+ * per second holding {@code burst} tokens, kept as a single theoretical arrival
+ * time (GCRA).</li>
+ * <li>{@code debounce_ms} holds trips back until the hook was quiet for the
+ * window and then runs it once.</li>
+ * </ul>
+ */
+final class Limiter {
+
+    static final int PASS = 0;
+    static final int THROTTLED = 1;
+    static final int LIMITED = 2;
+
+    final private static AtomicLongFieldUpdater<Limiter> NEXT = AtomicLongFieldUpdater.newUpdater(Limiter.class,
+            "next");
+    final private static AtomicLongFieldUpdater<Limiter> ARRIVAL = AtomicLongFieldUpdater.newUpdater(Limiter.class,
+            "arrival");
+    final private static AtomicIntegerFieldUpdater<Limiter> ARMED = AtomicIntegerFieldUpdater
+            .newUpdater(Limiter.class, "armed");
+
+    /**
+     * The throttle window in nanoseconds, or 0.
+     */
+    final private long throttle;
+
+    /**
+     * The nanoseconds between two tokens of the bucket, or 0 without a rate.
+     */
+    final private long interval;
+
+    /**
+     * How far the theoretical arrival time may run ahead of now, i.e. the burst.
+     */
+    final private long tolerance;
+
+    /**
+     * The debounce window in milliseconds, or 0.
+     */
+    final long debounce;
+
+    private volatile long next = Long.MIN_VALUE;
+    private volatile long arrival = Long.MIN_VALUE;
+    private volatile long quiet;
+    private volatile int armed;
+
+    final LongAdder throttled = new LongAdder();
+    final LongAdder limited = new LongAdder();
+    final LongAdder debounced = new LongAdder();
+
+    private Limiter(long throttle, double rate, int burst, long debounce) {
+        this.throttle = TimeUnit.MILLISECONDS.toNanos(throttle);
+        this.interval = rate > 0 ? Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / rate)) : 0;
+        this.tolerance = interval * (Math.max(1, burst) - 1);
+        this.debounce = debounce;
+    }
+
+    /**
+     * Returns the limiter of a hook plan, or null if the hook is not limited.
+     */
+    static Limiter of(HookPlan plan) {
+        if (plan.throttle <= 0 && plan.rate <= 0 && plan.debounce <= 0) {
+            return null;
+        }
+        return new Limiter(Math.max(0, plan.throttle), plan.rate, plan.burst, Math.max(0, plan.debounce));
+    }
+
+    /**
+     * Decides whether a trip passes the throttle and the token bucket.
+     *
+     * @param now the current {@link System#nanoTime()}
+     * @return {@link #PASS}, {@link #THROTTLED} or {@link #LIMITED}
+     */
+    int admit(long now) {
+        if (throttle > 0) {
+            long current;
+            do {
+                current = next;
+                if (now - current < 0 && current != Long.MIN_VALUE) {
+                    throttled.increment();
+                    return THROTTLED;
+                }
+            } while (!NEXT.compareAndSet(this, current, now + throttle));
+        }
+
+        if (interval > 0) {
+            long current;
+            long updated;
+            do {
+                current = arrival;
+                long base = current == Long.MIN_VALUE || current - now < 0 ? now : current;
+                if (base - tolerance - now > 0) {
+                    limited.increment();
+                    return LIMITED;
+                }
+                updated = base + interval;
+            } while (!ARRIVAL.compareAndSet(this, current, updated));
+        }
+
+        return PASS;
+    }
+
+    /**
+     * Pushes the end of the quiet window back.
+     *
+     * @return true if the caller must arm the debounce timer
+     */
+    boolean debounce(long now) {
+        quiet = now + TimeUnit.MILLISECONDS.toNanos(debounce);
+        debounced.increment();
+        return armed == 0 && ARMED.compareAndSet(this, 0, 1);
+    }
+
+    /**
+     * Called when the debounce timer fired.
+     *
+     * @return the milliseconds left in the quiet window to re-arm the timer with,
+     *         or 0 if the hook must run now
+     */
+    long settle(long now) {
+        long remaining = quiet - now;
+        if (remaining > 0) {
+            return Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining));
+        }
+        armed = 0;
+        debounced.decrement();
+        return 0;
+    }
+
+    /**
+     * Forgets the trips held back once the debounce timer was cancelled, so the
+     * next trip arms a new one.
+     */
+    void reset() {
+        armed = 0;
+    }
+}
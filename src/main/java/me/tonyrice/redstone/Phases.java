@@ -0,0 +1,46 @@
+package me.tonyrice.redstone;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Measures the phases of loading the wires, e.g. to track the cold start time.
+ */
+final class Phases {
+
+    final private long started = System.nanoTime();
+    final private JsonObject millis = new JsonObject();
+    private long last = started;
+
+    /**
+     * Ends the current phase.
+     */
+    Phases mark(String phase) {
+        long now = System.nanoTime();
+        millis.put(phase, (now - last) / 1000000);
+        last = now;
+        return this;
+    }
+
+    long totalMillis() {
+        return (last - started) / 1000000;
+    }
+
+    /**
+     * Returns the duration of every phase in milliseconds and the total.
+     */
+    JsonObject toJson() {
+        return millis.copy().put("total", totalMillis());
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder();
+        for (String phase : millis.fieldNames()) {
+            if (out.length() > 0) {
+                out.append(", ");
+            }
+            out.append(phase).append(' ').append(millis.getLong(phase)).append(" ms");
+        }
+        return out.toString();
+    }
+}
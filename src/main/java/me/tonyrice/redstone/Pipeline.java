@@ -0,0 +1,163 @@
+package me.tonyrice.redstone;
+
+import java.util.function.IntFunction;
+
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import me.tonyrice.redstone.events.EventLog;
+import me.tonyrice.redstone.timer.Timeout;
+import me.tonyrice.redstone.timer.TimerGroup;
+import me.tonyrice.redstone.timer.TimingWheel;
+
+/**
+ * Runs the actions of a hook plan in parallel, at most a given number at a time,
+ * and joins their outcomes into a single result. The result is handed over once
+ * every action completed or, if the deadline passed first, with the outcome
+ * {@code timeout}. Actions still running then are reported as timed out and
+ * actions not started yet are skipped.
+ *
+ * Actions may complete on any thread.
+ */
+final class Pipeline {
+
+    interface Step {
+        /**
+         * Starts the action at the given index of the plan.
+         *
+         * @param done called exactly once with the outcome of the action
+         */
+        void run(int index, Handler<JsonObject> done);
+    }
+
+    final private Step step;
+    final private IntFunction<JsonObject> describe;
+    final private int concurrency;
+    final private JsonObject[] outcomes;
+    final private Handler<JsonObject> complete;
+
+    private int next;
+    private int remaining;
+    private boolean done;
+    private volatile Timeout deadline;
+
+    /**
+     * @param size        the number of actions
+     * @param concurrency the number of actions running at once at most, or 0 for
+     *                    no limit
+     * @param describe    returns the description of the action at an index,
+     *                    reported with the outcome if the deadline passes first
+     * @param complete    called once with the joined result
+     */
+    Pipeline(int size, int concurrency, Step step, IntFunction<JsonObject> describe, Handler<JsonObject> complete) {
+        this.step = step;
+        this.describe = describe;
+        this.concurrency = concurrency > 0 ? Math.min(concurrency, size) : size;
+        this.outcomes = new JsonObject[size];
+        this.remaining = size;
+        this.complete = complete;
+    }
+
+    /**
+     * Starts the actions and arms the deadline.
+     *
+     * @param timeout the deadline in milliseconds, or 0 for none
+     */
+    void start(TimingWheel wheel, TimerGroup group, long timeout) {
+        if (timeout > 0 && outcomes.length > 0) {
+            deadline = wheel.setTimer(group, timeout, t -> expire());
+        }
+        start();
+    }
+
+    void start() {
+        if (outcomes.length == 0) {
+            synchronized (this) {
+                done = true;
+            }
+            complete.handle(result(EventLog.OK));
+            return;
+        }
+
+        synchronized (this) {
+            next = concurrency;
+        }
+        for (int i = 0; i < concurrency; i++) {
+            launch(i);
+        }
+    }
+
+    /**
+     * Completes the pipeline with the outcome {@code timeout} unless it completed
+     * already.
+     */
+    void expire() {
+        synchronized (this) {
+            if (done) {
+                return;
+            }
+            done = true;
+
+            for (int i = 0; i < outcomes.length; i++) {
+                if (outcomes[i] == null) {
+                    outcomes[i] = describe.apply(i).put("outcome", i < next ? EventLog.TIMEOUT : EventLog.SKIPPED);
+                }
+            }
+        }
+        complete.handle(result(EventLog.TIMEOUT));
+    }
+
+    private void launch(int index) {
+        step.run(index, outcome -> completed(index, outcome));
+    }
+
+    private void completed(int index, JsonObject outcome) {
+        int launch = -1;
+        boolean finished = false;
+
+        synchronized (this) {
+            if (done) {
+                return;
+            }
+            outcomes[index] = outcome;
+            remaining--;
+
+            if (next < outcomes.length) {
+                launch = next++;
+            } else if (remaining == 0) {
+                done = true;
+                finished = true;
+            }
+        }
+
+        if (launch >= 0) {
+            launch(launch);
+        } else if (finished) {
+            Timeout timeout = deadline;
+            if (timeout != null) {
+                timeout.cancel();
+            }
+            complete.handle(result(null));
+        }
+    }
+
+    /**
+     * @param outcome the outcome of the pipeline, or null to derive it from the
+     *                outcomes of the actions
+     */
+    private JsonObject result(String outcome) {
+        JsonArray actions = new JsonArray();
+        boolean failed = false;
+
+        for (JsonObject action : outcomes) {
+            String actionOutcome = action.getString("outcome");
+            failed |= EventLog.FAILED.equals(actionOutcome) || EventLog.TIMEOUT.equals(actionOutcome);
+            actions.add(action);
+        }
+
+        if (outcome == null) {
+            outcome = failed ? EventLog.FAILED : EventLog.OK;
+        }
+        return new JsonObject().put("outcome", outcome).put("actions", actions);
+    }
+}
@@ -0,0 +1,150 @@
+package me.tonyrice.redstone;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+/**
+ * An immutable execution plan compiled from a wires.json configuration. Aliases,
+ * inline hooks, url lists and IFTTT endpoints are resolved once at load time so
+ * tripping a hook never has to look at the raw configuration again.
+ */
+final class Plan {
+    final private static Logger logger = LoggerFactory.getLogger(Plan.class);
+
+    final JsonObject config;
+    final Map<String, WirePlan> wires;
+
+    private Plan(JsonObject config, Map<String, WirePlan> wires) {
+        this.config = config;
+        this.wires = Collections.unmodifiableMap(wires);
+    }
+
+    static Plan compile(JsonObject wireData) {
+        JsonObject config = new JsonObject();
+
+        for (String field : wireData.fieldNames()) {
+            if (field.startsWith("_config_")) {
+                config.put(field.replaceFirst("_config_", ""), wireData.getValue(field));
+                logger.debug("Registered config variable \"" + field.replace("_config_", "") + "\"");
+            }
+        }
+
+        Map<String, HookPlan> aliases = new ConcurrentHashMap<>();
+        List<String> wireIds = new ArrayList<>();
+
+        for (String wireId : wireData.fieldNames()) {
+            if (wireId.startsWith("_alias_")) {
+                logger.debug("Registered hook alias \"" + wireId.replace("_alias_", "") + "\"");
+            } else if (!wireId.startsWith("_config_")) {
+                wireIds.add(wireId);
+            }
+        }
+
+        // Wires are compiled in parallel, sharing the plans of aliases.
+        WirePlan[] compiled = wireIds.parallelStream()
+                .map(wireId -> compile(wireId, wireData, config, aliases))
+                .toArray(WirePlan[]::new);
+
+        Map<String, WirePlan> wires = new LinkedHashMap<>();
+        for (WirePlan wirePlan : compiled) {
+            wires.put(wirePlan.wireId, wirePlan);
+        }
+
+        return new Plan(config, wires);
+    }
+
+    private static WirePlan compile(String wireId, JsonObject wireData, JsonObject config,
+            Map<String, HookPlan> aliases) {
+        JsonObject wireConfig = wireData.getJsonObject(wireId);
+        Map<String, HookPlan> hooks = new LinkedHashMap<>();
+
+        for (String hookId : wireConfig.fieldNames()) {
+            if (hookId.equals("default") || hookId.equals("title") || hookId.equals("description")
+                    || hookId.equals("layer")) {
+                continue;
+            }
+
+            Object value = wireConfig.getValue(hookId);
+
+            if (value instanceof String) {
+                String aliasId = "_alias_" + value;
+                if (wireData.containsKey(aliasId)) {
+                    hooks.put(hookId, aliases.computeIfAbsent(aliasId,
+                            id -> HookPlan.compile(wireData.getJsonObject(id, new JsonObject()), config)));
+                }
+            } else if (value instanceof JsonObject) {
+                hooks.put(hookId, HookPlan.compile((JsonObject) value, config));
+            }
+        }
+
+        checkChains(wireId, hooks);
+        return new WirePlan(wireId, wireConfig, hooks);
+    }
+
+    /**
+     * Rejects hooks of a wire that trip each other in a cycle, as a tripped hook
+     * waits for the hooks it trips. A hook tripping itself is not a cycle, such
+     * actions are skipped when the hook runs.
+     *
+     * @throws IllegalArgumentException naming the hooks of the first cycle found
+     */
+    private static void checkChains(String wireId, Map<String, HookPlan> hooks) {
+        Map<String, Boolean> visited = new HashMap<>();
+
+        for (String hookId : hooks.keySet()) {
+            List<String> path = new ArrayList<>();
+            if (cycle(hookId, hooks, visited, path)) {
+                throw new IllegalArgumentException("The hooks of wire \"" + wireId + "\" trip each other in a cycle: "
+                        + String.join(" -> ", path) + ".");
+            }
+        }
+    }
+
+    /**
+     * Walks the hooks tripped by a hook depth first.
+     *
+     * @param visited true for hooks on the current path, false for hooks known to
+     *                be free of cycles
+     * @param path    the current path, ending with the repeated hook if a cycle was
+     *                found
+     * @return true if a cycle was found
+     */
+    private static boolean cycle(String hookId, Map<String, HookPlan> hooks, Map<String, Boolean> visited,
+            List<String> path) {
+        HookPlan plan = hooks.get(hookId);
+        Boolean onPath = visited.get(hookId);
+
+        if (plan == null || Boolean.FALSE.equals(onPath)) {
+            return false;
+        }
+        path.add(hookId);
+        if (onPath != null) {
+            path.subList(0, path.indexOf(hookId)).clear();
+            return true;
+        }
+
+        visited.put(hookId, true);
+        List<String> chained = new ArrayList<>();
+        plan.chains(chained);
+        for (String next : chained) {
+            if (next.equals(hookId)) {
+                continue;
+            }
+            if (cycle(next, hooks, visited, path)) {
+                return true;
+            }
+        }
+        visited.put(hookId, false);
+        path.remove(path.size() - 1);
+        return false;
+    }
+}
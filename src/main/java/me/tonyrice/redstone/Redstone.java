@@ -1,28 +1,49 @@
 package me.tonyrice.redstone;
 
-import java.time.LocalTime;
-import java.util.AbstractMap;
-import java.util.Calendar;
-import java.util.Date;
-import java.util.Iterator;
-import java.util.LinkedHashSet;
-import java.util.LinkedList;
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.Map.Entry;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
-
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.vertx.core.AbstractVerticle;
 import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
-import io.vertx.core.file.FileSystem;
+import io.vertx.core.json.DecodeException;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
 import io.vertx.ext.web.client.WebClient;
+import me.tonyrice.redstone.events.EventLog;
+import me.tonyrice.redstone.journal.Journal;
+import me.tonyrice.redstone.metrics.LatencyHistogram;
+import me.tonyrice.redstone.metrics.PrometheusWriter;
+import me.tonyrice.redstone.outbound.OutboundDispatcher;
+import me.tonyrice.redstone.schedule.ScheduleIndex;
+import me.tonyrice.redstone.timer.Timeout;
+import me.tonyrice.redstone.timer.TimerGroup;
+import me.tonyrice.redstone.timer.TimingWheel;
 
 /**
  * Redstone is a simple interface for curating automated workflows with JSON.
@@ -31,119 +52,985 @@ public class Redstone {
     final private Logger logger = LoggerFactory.getLogger(Redstone.class);
 
     final private Vertx vertx;
-    final private WebClient webClient;
-    final private JsonObject wireData;
 
-    final private Set<Wire> loadedWires = new LinkedHashSet<Wire>();
+    /**
+     * The context layers are deployed from, so every deployment takes the next
+     * event loop rather than creating a context of its own first.
+     */
+    final private Context context;
+
+    final private OutboundDispatcher outbound;
+    final private TimingWheel timingWheel;
+
+    /**
+     * The deadlines of running hooks, apart from the timers of the hooks so
+     * killing those leaves them armed.
+     */
+    final private TimerGroup deadlines;
+
+    /**
+     * The timers releasing the queued trips of wires at a limited rate.
+     */
+    final private TimerGroup releases;
+    final private ScheduleIndex scheduleIndex;
+    final private Journal journal;
+    final private EventLog events;
+    final private TripDedup dedup;
+    final private String file;
+
+    /**
+     * True if hooks are run through the legacy worker hop instead of on the
+     * caller's event loop.
+     */
+    final private boolean workerExecution;
+
+    /**
+     * The loaded plan and wires, replaced as a whole on reload.
+     */
+    private volatile Model model;
+
+    final private AtomicBoolean reloading = new AtomicBoolean();
+
+    /**
+     * Bumped after every activation, deactivation and reload.
+     */
+    final private AtomicLong version = new AtomicLong();
+
+    final private List<Handler<JsonObject>> listeners = new CopyOnWriteArrayList<>();
+    private long modified;
+    private long watchTimer = -1;
+
+    /**
+     * The layers by name. Layers are created as wires refer to them and closed
+     * once a reload left them without wires.
+     */
+    final private Map<String, Layer> layers = new ConcurrentHashMap<>();
+    private volatile Layer[] layerList = new Layer[0];
+
+    /**
+     * The number of trips a wire's mailbox holds at most.
+     */
+    final private int mailboxSize;
+
+    /**
+     * The number of trips a wire queues while it activates at most, what is
+     * dropped once it is full and how fast the queue is released afterwards.
+     */
+    final private int tripCacheSize;
+    final private int tripCachePolicy;
+    final private int releaseBatch;
+    final private long releaseInterval;
+
+    /**
+     * The duration of each startup phase in milliseconds.
+     */
+    final private JsonObject startup;
+
+    final static Handler<AsyncResult<JsonObject>> NOOP = result -> {
+    };
+
+    final private static Handler<JsonObject> IGNORE = outcome -> {
+    };
+
+    private Redstone(Vertx vertx, String file, JsonObject wireData, WebClient webClient, Phases phases)
+            throws IOException {
 
-    private Wire activeWire = null;
+        this.vertx = vertx;
+        this.context = vertx.getOrCreateContext();
+        this.file = file;
+
+        Plan plan = Plan.compile(wireData);
+        phases.mark("compile");
+
+        this.outbound = new OutboundDispatcher(vertx, plan.config.getJsonObject("outbound", new JsonObject()),
+                webClient);
+        this.workerExecution = "worker".equals(plan.config.getString("trip_executor", "event_loop"));
+        this.mailboxSize = plan.config.getInteger("mailbox_size", 1024);
+        this.tripCacheSize = plan.config.getInteger("trip_cache_size", 1024);
+        this.tripCachePolicy = TripQueue.policy(plan.config.getString("trip_cache_policy", "drop_oldest"));
+
+        long tick = plan.config.getLong("timer_tick_ms", (long) 10);
+        double releaseRate = plan.config.getDouble("trip_cache_release_rate", 0.0);
+        this.releaseInterval = releaseRate > 0 ? Math.max(tick, (long) (1000 / releaseRate)) : 0;
+        this.releaseBatch = releaseRate > 0 ? (int) Math.max(1, Math.round(releaseRate * releaseInterval / 1000))
+                : Integer.MAX_VALUE;
+
+        this.timingWheel = new TimingWheel(vertx, tick, plan.config.getInteger("timer_wheel_size", 512));
+        this.scheduleIndex = new ScheduleIndex(timingWheel);
+        this.deadlines = timingWheel.group();
+        this.releases = timingWheel.group();
+        this.events = new EventLog(plan.config.getInteger("event_log_size", 4096));
+        this.dedup = new TripDedup(plan.config.getInteger("trip_dedup_size", 1048576),
+                plan.config.getLong("trip_dedup_ms", (long) 600000));
+        this.journal = Journal.open(vertx, plan.config);
+        phases.mark("journal");
+
+        this.model = prepare(plan, null).model;
+        phases.mark("build");
+
+        for (Wire wire : model.wires) {
+            logger.debug("Loaded wire \"" + wire.getId() + "\".");
+        }
 
-    private Redstone(Vertx vertx, JsonObject wireData) {
+        long watch = plan.config.getLong("reload_watch_ms", (long) 0);
+        if (watch > 0 && file != null) {
+            this.modified = vertx.fileSystem().propsBlocking(file).lastModifiedTime();
+            this.watchTimer = vertx.setPeriodic(watch, t -> watch());
+        }
 
-        this.vertx = vertx;
-        this.webClient = WebClient.create(vertx);
-        this.wireData = wireData;
+        restore(journal.state());
 
-        for (String wireId : wireData.fieldNames()) {
+        for (String wireId : defaultWires()) {
+            Wire wire = wire(wireId);
 
-            if (wireId.startsWith("_alias_")) {
-                logger.debug("Registered hook alias \"" + wireId.replace("_alias_", "") + "\"");
-                continue;
+            if (wire != null && wire.layer.live() == null) {
+                logger.info("Activating default wire \"" + wire.getId() + "\".");
+                wire.activate();
+            }
+        }
+        phases.mark("restore");
+
+        this.startup = phases.toJson();
+        logger.info("Loaded " + model.wires.size() + " wires in " + phases.totalMillis() + " ms (" + phases + ").");
+    }
+
+    /**
+     * Returns the ids of the wires activated on startup, one per layer.
+     */
+    private List<String> defaultWires() {
+        Object value = config().getValue("default_wire");
+
+        if (value instanceof JsonArray) {
+            List<String> wireIds = new ArrayList<>();
+            for (Object wireId : (JsonArray) value) {
+                wireIds.add(String.valueOf(wireId));
             }
-            if (wireId.startsWith("_config_")) {
-                logger.debug("Registered config variable \"" + wireId.replace("_config_", "") + "\"");
+            return wireIds;
+        }
+        return value != null ? Collections.singletonList(String.valueOf(value)) : Collections.emptyList();
+    }
+
+    /**
+     * Restores the active wires, their queued trips and every armed timer from the
+     * journal.
+     */
+    private void restore(Journal.State state) {
+        List<Wire> restored = new ArrayList<>();
+
+        for (String wireId : new ArrayList<>(state.activeWires())) {
+            Wire wire = wire(wireId);
+
+            if (wire == null || !wire.layer.active.compareAndSet(null, wire)) {
+                // The wire was removed or another wire of its layer was activated later.
+                journal.deactivate(wireId);
                 continue;
             }
+            logger.info("Restoring wire \"" + wire.getId() + "\" from the journal.");
 
-            JsonObject wireEvents = wireData.getJsonObject(wireId);
+            version.incrementAndGet();
+            wire.state.set(state.activated(wireId) ? Wire.ACTIVE : Wire.ACTIVATING);
+            for (String hookId : state.queued(wireId)) {
+                wire.tripCache.offer(hookId, NOOP);
+            }
+            wire.queued = wire.tripCache.size();
+            restored.add(wire);
+        }
 
-            Wire wire = new Wire(wireId, wireEvents);
+        Set<Wire> activating = new HashSet<>();
+        long now = System.currentTimeMillis();
 
-            loadedWires.add(wire);
+        for (Journal.Timer timer : new ArrayList<>(state.timers())) {
+            Wire timerWire = wire(timer.wireId());
+            Wire.Hook hook = timerWire != null ? timerWire.hook(timer.hookId()) : null;
 
-            logger.info("Loaded wire \"" + wireId + "\".");
+            if (hook == null || !hook.restore(timer, now)) {
+                // The hook or its plan changed since the timer was armed.
+                journal.timerFired(timer.key());
+            } else if (timer.kind() == Journal.DELAY && timer.slot() == hook.plan.slot
+                    && "activate".equals(timer.hookId())) {
+                activating.add(timerWire);
+            }
+        }
 
+        for (Wire wire : restored) {
+            if (wire.state.get() == Wire.ACTIVATING && !activating.contains(wire)) {
+                wire.activated();
+            }
         }
+    }
 
-        Wire wire = wire(config().getString("default_wire", "not_found"));
+    /**
+     * Returns the configuration variables. The returned object is shared and must
+     * not be modified.
+     */
+    public JsonObject config() {
+        return model.plan.config;
+    }
 
-        if (wire != null) {
+    /**
+     * Reloads the wires from the file they were loaded from. The new plan is
+     * compiled off the event loop and swapped in as a whole. Hooks whose
+     * configuration did not change keep their armed timers and the active wire
+     * stays active if it still exists.
+     *
+     * @param handler called with the ids of the added, removed, changed and
+     *                unchanged hooks
+     */
+    public void reload(Handler<AsyncResult<JsonObject>> handler) {
+        if (file == null) {
+            handler.handle(Future.failedFuture("Redstone was not loaded from a file."));
+            return;
+        }
+        if (!reloading.compareAndSet(false, true)) {
+            handler.handle(Future.failedFuture("A reload is already in progress."));
+            return;
+        }
+
+        vertx.<Reload>executeBlocking(event -> {
+            JsonObject wireData;
+            try {
+                wireData = WireFile.read(file).wireData;
+            } catch (IOException e) {
+                event.fail("Could not read the file \"" + file + "\"!");
+                return;
+            }
+            event.complete(prepare(Plan.compile(wireData), model));
+        }, rs -> {
+            if (rs.failed()) {
+                reloading.set(false);
+                logger.error("Failed to reload \"" + file + "\": " + rs.cause().getMessage());
+                handler.handle(Future.failedFuture(rs.cause()));
+                return;
+            }
+
+            commit(rs.result());
+            reloading.set(false);
+
+            JsonObject diff = rs.result().diff;
+            logger.info("Reloaded \"" + file + "\": " + diff.getJsonArray("added").size() + " added, "
+                    + diff.getJsonArray("removed").size() + " removed, " + diff.getJsonArray("changed").size()
+                    + " changed, " + diff.getJsonArray("unchanged").size() + " unchanged hooks.");
+            handler.handle(Future.succeededFuture(diff));
+        });
+    }
+
+    /**
+     * Reloads the wires once the file was modified.
+     */
+    private void watch() {
+        vertx.fileSystem().props(file, rs -> {
+            if (rs.failed() || rs.result().lastModifiedTime() == modified || reloading.get()) {
+                return;
+            }
+            modified = rs.result().lastModifiedTime();
+
+            logger.info("Detected a change of \"" + file + "\", reloading.");
+            reload(result -> {
+            });
+        });
+    }
+
+    /**
+     * Builds the wires of a plan, reusing the wires and hooks of the current model
+     * that did not change. Nothing is visible to trips until the result is
+     * committed.
+     */
+    private Reload prepare(Plan plan, Model current) {
+        Reload reload = new Reload();
+
+        if (current == null) {
+            // Nothing to compare with, so the wires are built in parallel.
+            Wire[] built = plan.wires.values().parallelStream()
+                    .map(wirePlan -> new Wire(wirePlan.wireId, layer(wirePlan.layer))).toArray(Wire[]::new);
+            Wiring[] wirings = Arrays.stream(built).parallel()
+                    .map(wire -> wire.rewire(plan.wires.get(wire.wireId), null, false, null, null))
+                    .toArray(Wiring[]::new);
+
+            for (int i = 0; i < built.length; i++) {
+                reload.wirings.put(built[i], wirings[i]);
+            }
+            reload.model = new Model(plan, reload.wirings);
+            reload.diff = new JsonObject()
+                    .put("added", new JsonArray())
+                    .put("removed", new JsonArray())
+                    .put("changed", new JsonArray())
+                    .put("unchanged", new JsonArray());
+            return reload;
+        }
+        boolean sameVars = HookPlan.sameVars(current.plan.config, plan.config);
+
+        JsonArray added = new JsonArray();
+        JsonArray removed = new JsonArray();
+        JsonArray changed = new JsonArray();
+        JsonArray unchanged = new JsonArray();
+
+        for (WirePlan wirePlan : plan.wires.values()) {
+            Wire wire = current.wire(wirePlan.wireId);
+
+            if (wire != null && !wire.layer.name.equals(wirePlan.layer)) {
+                // A wire moved to another layer is replaced as a whole.
+                current.wiring(wire).hooks.keySet().forEach(hookId -> removed.add(wirePlan.wireId + "." + hookId));
+                wire = null;
+            }
+
+            if (wire == null) {
+                wire = new Wire(wirePlan.wireId, layer(wirePlan.layer));
+                Wiring wiring = wire.rewire(wirePlan, null, false, null, null);
+                reload.wirings.put(wire, wiring);
+                for (String hookId : wiring.hooks.keySet()) {
+                    String id = wirePlan.wireId + "." + hookId;
+                    if (!removed.remove(id)) {
+                        added.add(id);
+                    } else {
+                        changed.add(id);
+                    }
+                }
+            } else {
+                Wiring wiring = current.wiring(wire);
+                reload.wirings.put(wire, wire.rewire(wirePlan, wiring, sameVars, unchanged, changed));
 
-            logger.info("Activating default wire \"" + wire.getId() + "\".");
+                for (Map.Entry<String, Wire.Hook> hook : wiring.hooks.entrySet()) {
+                    Wire.Hook next = reload.wirings.get(wire).hooks.get(hook.getKey());
+                    if (next != hook.getValue()) {
+                        reload.retired.add(hook.getValue());
+                    }
+                    if (next == null) {
+                        removed.add(wire.getId() + "." + hook.getKey());
+                    }
+                }
+                for (String hookId : wirePlan.hooks.keySet()) {
+                    if (!wiring.hooks.containsKey(hookId)) {
+                        added.add(wire.getId() + "." + hookId);
+                    }
+                }
+            }
+        }
 
-            wire.activate();
+        for (Wire wire : current.wires) {
+            if (!reload.wirings.containsKey(wire)) {
+                reload.removed.add(wire);
+                if (!plan.wires.containsKey(wire.getId())) {
+                    current.wiring(wire).hooks.keySet().forEach(hookId -> removed.add(wire.getId() + "." + hookId));
+                }
+            }
         }
+
+        reload.model = new Model(plan, reload.wirings);
+        reload.diff = new JsonObject()
+                .put("added", added)
+                .put("removed", removed)
+                .put("changed", changed)
+                .put("unchanged", unchanged);
+        return reload;
     }
 
-    public JsonObject config() {
-        JsonObject configJson = new JsonObject();
+    /**
+     * Swaps a prepared reload in. Retired hooks and removed wires are shut down
+     * first, since their timers are cancelled by wire and hook id and the hooks
+     * replacing them must not arm any before.
+     */
+    private void commit(Reload reload) {
+        Model current = model;
 
-        for (String field : wireData.fieldNames()) {
-            if (field.startsWith("_config_")) {
-                configJson.put(field.replaceFirst("_config_", ""), wireData.getValue(field));
+        for (Wire.Hook hook : reload.retired) {
+            hook.retire();
+        }
+
+        boolean deactivated = false;
+        for (Wire wire : reload.removed) {
+            wire.removed = current.wiring(wire);
+
+            Layer layer = wire.layer;
+            if (layer.active.get() == wire) {
+                wire.deactivate();
+                layer.active.compareAndSet(wire, null);
+                deactivated = true;
+            }
+            for (Wire.Hook hook : wire.removed.hooks.values()) {
+                hook.retire();
             }
         }
 
-        return configJson;
+        model = reload.model;
+        prune();
+        publish("reload", null, null);
+
+        if (deactivated) {
+            for (String wireId : defaultWires()) {
+                Wire fallback = wire(wireId);
+                if (fallback != null && fallback.layer.live() == null) {
+                    logger.info("Activating default wire \"" + fallback.getId() + "\".");
+                    fallback.activate();
+                }
+            }
+        }
+        version.incrementAndGet();
     }
 
+    /**
+     * Trips a hook on the active wire of every layer having it.
+     */
     public Redstone trip(String hookId) {
-        if (activeWire != null){
-            activeWire.trip(hookId);
+        dispatch(hookId);
+        return this;
+    }
+
+    /**
+     * @return the status of the trip, as returned by
+     *         {@link #trip(String, String, Handler)}
+     */
+    private String dispatch(String hookId) {
+        String status = null;
+
+        for (Layer layer : layerList) {
+            Wire wire = layer.active.get();
+            if (wire != null && wire.wiring().hooks.containsKey(hookId)) {
+                status = merge(status, wire.accept(hookId, NOOP));
+            }
+        }
+
+        if (status == null) {
+            events.record(null, hookId, EventLog.TRIP, null, EventLog.IGNORED, 0, 0);
+            return EventLog.IGNORED;
         }
+        return status;
+    }
+
+    /**
+     * Trips a hook on the active wire of every layer having it.
+     *
+     * @param handler called once the hook completed on every wire, with the result
+     *                of each wire
+     */
+    public Redstone trip(String hookId, Handler<AsyncResult<JsonArray>> handler) {
+        dispatch(hookId, handler);
         return this;
     }
 
+    /**
+     * @return the status of the trip, as returned by
+     *         {@link #trip(String, String, Handler)}
+     */
+    private String dispatch(String hookId, Handler<AsyncResult<JsonArray>> handler) {
+        List<Wire> wires = new ArrayList<>();
+
+        for (Layer layer : layerList) {
+            Wire wire = layer.active.get();
+            if (wire != null && wire.wiring().hooks.containsKey(hookId)) {
+                wires.add(wire);
+            }
+        }
+
+        if (wires.isEmpty()) {
+            events.record(null, hookId, EventLog.TRIP, null, EventLog.IGNORED, 0, 0);
+            handler.handle(Future.succeededFuture(new JsonArray()));
+            return EventLog.IGNORED;
+        }
+
+        // Every wire is tripped as the pipeline starts, as it runs them all at once.
+        String[] status = new String[1];
+        new Pipeline(wires.size(), 0, (index, done) -> status[0] = merge(status[0], wires.get(index).accept(hookId, rs -> {
+            done.handle(rs.succeeded() ? rs.result()
+                    : wires.get(index).outcome(hookId, EventLog.DROPPED).put("error", rs.cause().getMessage()));
+        })), index -> new JsonObject(), result -> handler.handle(Future.succeededFuture(result.getJsonArray("actions")))).start();
+        return status[0];
+    }
+
+    /**
+     * Combines the outcomes of the wires tripped for a hook. A trip accepted by
+     * any wire was tripped, otherwise it was limited if any wire limited it.
+     */
+    private static String merge(String status, String outcome) {
+        if (EventLog.THROTTLED.equals(outcome)) {
+            outcome = EventLog.LIMITED;
+        } else if (!EventLog.LIMITED.equals(outcome) && !EventLog.DROPPED.equals(outcome)) {
+            outcome = EventLog.TRIPPED;
+        }
+
+        if (status == null || EventLog.TRIPPED.equals(outcome)
+                || EventLog.LIMITED.equals(outcome) && EventLog.DROPPED.equals(status)) {
+            return outcome;
+        }
+        return status;
+    }
+
+    /**
+     * Trips a hook, optionally with the event id of its sender, so a retried trip
+     * is acknowledged without running the hook again. An id is forgotten again if
+     * no wire accepted the trip, as with a full mailbox or the throttle or rate
+     * limit of the hook, so the trip can be retried.
+     *
+     * @param eventId the event id of the trip, or null to not deduplicate it
+     * @param handler called as by {@link #trip(String, Handler)} unless the trip
+     *                is a duplicate, or null to not wait for the hook
+     * @return {@link EventLog#TRIPPED} if any wire accepted the trip,
+     *         {@link EventLog#IGNORED} if no active wire has the hook,
+     *         {@link EventLog#LIMITED} if the throttle or rate limit of the hook
+     *         rejected it, {@link EventLog#DROPPED} if the mailboxes of the wires
+     *         were full or {@link EventLog#DUPLICATE} if it is a duplicate of one
+     *         accepted within the dedup window
+     */
+    public String trip(String hookId, String eventId, Handler<AsyncResult<JsonArray>> handler) {
+        if (eventId != null && dedup.duplicate(hookId, eventId)) {
+            events.record(null, hookId, EventLog.TRIP, null, EventLog.DUPLICATE, 0, 0);
+            return EventLog.DUPLICATE;
+        }
+        String status = handler != null ? dispatch(hookId, handler) : dispatch(hookId);
+        if (eventId != null && !EventLog.TRIPPED.equals(status)) {
+            dedup.forget(hookId, eventId);
+        }
+        return status;
+    }
+
+    /**
+     * Returns true if the active wire of any layer has a hook.
+     */
+    public boolean handles(String hookId) {
+        for (Layer layer : layerList) {
+            Wire wire = layer.active.get();
+            if (wire != null && wire.wiring().hooks.containsKey(hookId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Registers a listener receiving a delta whenever a wire is activated or
+     * deactivated, a hook is tripped or the wires are reloaded. Deltas carry a
+     * "type" of activate, deactivate, trip or reload and the "wire", its "layer"
+     * and the "hook" they concern. Listeners are called on the thread making the
+     * change.
+     */
+    public Redstone listen(Handler<JsonObject> listener) {
+        listeners.add(listener);
+        return this;
+    }
+
+    public Redstone unlisten(Handler<JsonObject> listener) {
+        listeners.remove(listener);
+        return this;
+    }
+
+    private void publish(String type, Wire wire, String hookId) {
+        if (listeners.isEmpty()) {
+            return;
+        }
+
+        JsonObject delta = new JsonObject().put("type", type);
+        if (wire != null) {
+            delta.put("wire", wire.wireId).put("layer", wire.layer.name);
+        }
+        if (hookId != null) {
+            delta.put("hook", hookId);
+        }
+
+        for (Handler<JsonObject> listener : listeners) {
+            try {
+                listener.handle(delta);
+            } catch (RuntimeException e) {
+                logger.error("Wire listener failed.", e);
+            }
+        }
+    }
+
+    /**
+     * Returns the log of recent trip events.
+     */
+    public EventLog events() {
+        return events;
+    }
+
+    /**
+     * Returns the active wire of the default layer.
+     */
     public Wire live() {
-        return this.activeWire;
+        return live(Layer.DEFAULT);
     }
 
-    public Wire wire(String wireId) {
-        for (Wire wire : loadedWires) {
-            if (wireId.equals(wire.getId())) {
-                return wire;
+    /**
+     * Returns the active wire of a layer, or null.
+     */
+    public Wire live(String layer) {
+        Layer found = layers.get(layer);
+        return found != null ? found.active.get() : null;
+    }
+
+    /**
+     * Returns the layers in the order they were created.
+     */
+    public List<Layer> layers() {
+        return Arrays.asList(layerList);
+    }
+
+    /**
+     * Closes the layers no wire of the current model belongs to.
+     */
+    private void prune() {
+        Set<Layer> used = new HashSet<>();
+        for (Wire wire : model.wires) {
+            used.add(wire.layer);
+        }
+
+        synchronized (layers) {
+            List<Layer> kept = new ArrayList<>();
+            for (Layer layer : layerList) {
+                if (used.contains(layer)) {
+                    kept.add(layer);
+                } else {
+                    layers.remove(layer.name, layer);
+                    layer.close();
+                }
+            }
+            layerList = kept.toArray(new Layer[kept.size()]);
+        }
+    }
+
+    /**
+     * Undeploys the contexts of the layers and stops watching the wires file.
+     * Called as the verticle hosting this instance is undeployed.
+     */
+    public void close() {
+        if (watchTimer >= 0) {
+            vertx.cancelTimer(watchTimer);
+        }
+        synchronized (layers) {
+            for (Layer layer : layerList) {
+                layer.close();
             }
+            layers.clear();
+            layerList = new Layer[0];
         }
-        return null;
+    }
+
+    /**
+     * Returns the layer of a name, creating it if it does not exist yet. Blocks
+     * while a new layer deploys, so it must not be called on an event loop.
+     */
+    private Layer layer(String name) {
+        Layer layer = layers.get(name);
+        if (layer != null) {
+            return layer;
+        }
+
+        synchronized (layers) {
+            layer = layers.get(name);
+            if (layer == null) {
+                layer = new Layer(name);
+                layers.put(name, layer);
+
+                Layer[] list = Arrays.copyOf(layerList, layerList.length + 1);
+                list[list.length - 1] = layer;
+                layerList = list;
+            }
+            return layer;
+        }
+    }
+
+    /**
+     * Returns the state version. It only ever grows and changes whenever a wire
+     * is activated or deactivated or the wires are reloaded, so anything derived
+     * from the wires and their active flags can be cached against it. Read the
+     * version before reading the state it covers.
+     */
+    public long version() {
+        return version.get();
+    }
+
+    public Wire wire(String wireId) {
+        return model.wire(wireId);
     }
 
     public Set<Wire> wires() {
-        return loadedWires;
+        return model.wires;
     }
 
+    /**
+     * Returns the runtime statistics of this instance.
+     */
+    public JsonObject stats() {
+        JsonObject active = new JsonObject();
+        for (Layer layer : layerList) {
+            Wire wire = layer.active.get();
+            active.put(layer.name, wire != null ? wire.wireId : null);
+        }
+
+        return new JsonObject()
+                .put("layers", active)
+                .put("armed_timers", timingWheel.size())
+                .put("armed_schedules", scheduleIndex.size())
+                .put("startup_ms", startup)
+                .put("trip_dedup", dedup.stats())
+                .put("outbound", outbound.stats());
+    }
+
+    /**
+     * Writes the trip, latency, queue and timer metrics of every wire and hook and
+     * the outbound request metrics.
+     */
+    public void metrics(PrometheusWriter writer) {
+        Model current = model;
+        Set<Wire> wires = current.wires;
+
+        writer.type("redstone_trips_total", "counter", "Hooks triggered by wire and hook.");
+        for (Wire wire : wires) {
+            for (Wire.Hook hook : current.wiring(wire).hooks.values()) {
+                writer.sample("redstone_trips_total", hook.trips.sum(), "wire", wire.wireId, "hook", hook.hookId);
+            }
+        }
+
+        writer.type("redstone_trip_latency_seconds", "summary",
+                "Time from triggering a hook until its actions run, including delays and worker queueing.");
+        for (Wire wire : wires) {
+            for (Wire.Hook hook : current.wiring(wire).hooks.values()) {
+                hook.latency.write(writer, "redstone_trip_latency_seconds", "wire", wire.wireId, "hook", hook.hookId);
+            }
+        }
+
+        writer.type("redstone_wire_trip_latency_seconds", "summary",
+                "Time from triggering a hook until its actions run by wire.");
+        for (Wire wire : wires) {
+            wire.latency.write(writer, "redstone_wire_trip_latency_seconds", "wire", wire.wireId);
+        }
+
+        writer.type("redstone_armed_timers", "gauge", "Timers, repeats and schedules armed by wire and hook.");
+        for (Wire wire : wires) {
+            for (Wire.Hook hook : current.wiring(wire).hooks.values()) {
+                writer.sample("redstone_armed_timers", hook.armedTimers(), "wire", wire.wireId, "hook", hook.hookId);
+            }
+        }
+
+        writer.type("redstone_suppressed_trips_total", "counter",
+                "Trips suppressed by the throttle, rate or debounce limit of a hook by wire and hook.");
+        for (Wire wire : wires) {
+            for (Wire.Hook hook : current.wiring(wire).hooks.values()) {
+                Limiter limiter = hook.limiter;
+                if (limiter != null) {
+                    writer.sample("redstone_suppressed_trips_total", limiter.throttled.sum(), "wire", wire.wireId,
+                            "hook", hook.hookId, "reason", EventLog.THROTTLED);
+                    writer.sample("redstone_suppressed_trips_total", limiter.limited.sum(), "wire", wire.wireId,
+                            "hook", hook.hookId, "reason", EventLog.LIMITED);
+                    writer.sample("redstone_suppressed_trips_total", limiter.debounced.sum(), "wire", wire.wireId,
+                            "hook", hook.hookId, "reason", EventLog.DEBOUNCED);
+                }
+            }
+        }
+
+        writer.type("redstone_trip_cache_depth", "gauge", "Trips queued while a wire activates.");
+        for (Wire wire : wires) {
+            writer.sample("redstone_trip_cache_depth", wire.queued, "wire", wire.wireId);
+        }
+
+        writer.type("redstone_trip_cache_trips_total", "counter",
+                "Trips dropped or coalesced by the trip cache policy of a wire.");
+        for (Wire wire : wires) {
+            writer.sample("redstone_trip_cache_trips_total", wire.tripCache.droppedTrips.sum(), "wire", wire.wireId,
+                    "outcome", EventLog.DROPPED);
+            writer.sample("redstone_trip_cache_trips_total", wire.tripCache.coalescedTrips.sum(), "wire",
+                    wire.wireId, "outcome", EventLog.COALESCED);
+        }
+
+        writer.type("redstone_mailbox_depth", "gauge", "Messages waiting in the mailbox of a wire.");
+        for (Wire wire : wires) {
+            writer.sample("redstone_mailbox_depth", wire.pending.get(), "wire", wire.wireId);
+        }
+
+        writer.type("redstone_wire_active", "gauge", "1 if the wire is active.");
+        for (Wire wire : wires) {
+            writer.sample("redstone_wire_active", wire.active() ? 1 : 0, "wire", wire.wireId);
+        }
+
+        writer.type("redstone_timer_wheel_size", "gauge", "Timers armed on the timing wheel.");
+        writer.sample("redstone_timer_wheel_size", timingWheel.size());
+        writer.type("redstone_timer_wheel_wakeups_total", "counter", "Times the timing wheel woke up to fire timers.");
+        writer.sample("redstone_timer_wheel_wakeups_total", timingWheel.wakeups());
+        writer.type("redstone_armed_schedules", "gauge", "Schedules armed.");
+        writer.sample("redstone_armed_schedules", scheduleIndex.size());
+
+        outbound.metrics(writer);
+    }
+
+    /**
+     * A group of wires of which one at a time is active. Every layer deploys a
+     * verticle of its own and handles its trips and timers on its context, so
+     * independent layers such as security, lighting and HVAC run on separate
+     * event loops.
+     */
+    public class Layer {
+
+        final static String DEFAULT = "default";
+
+        final private String name;
+        final private AtomicReference<Wire> active = new AtomicReference<>();
+        final private LayerVerticle verticle;
+        final private Context context;
+
+        Layer(String name) {
+            this.name = name;
+            this.verticle = LayerVerticle.deploy(vertx, Redstone.this.context);
+            this.context = verticle.context();
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the active wire of this layer, or null.
+         */
+        public Wire live() {
+            return active.get();
+        }
+
+        /**
+         * Returns the context the wires of this layer handle their trips on.
+         */
+        public Context context() {
+            return context;
+        }
+
+        /**
+         * Undeploys the verticle of this layer once the messages already posted
+         * to its context were handled.
+         */
+        private void close() {
+            context.runOnContext(v -> vertx.undeploy(verticle.deploymentID(), rs -> {
+            }));
+        }
+
+        /**
+         * Runs a task on the context of this layer, right away if called on it.
+         */
+        private void run(Runnable task) {
+            if (Vertx.currentContext() == context) {
+                task.run();
+            } else {
+                context.runOnContext(v -> task.run());
+            }
+        }
+    }
+
+    /**
+     * The verticle owning the event loop context of a layer.
+     */
+    private static final class LayerVerticle extends AbstractVerticle {
+        final private CountDownLatch started = new CountDownLatch(1);
+
+        /**
+         * Deploys a verticle from a context and waits until it started.
+         */
+        static LayerVerticle deploy(Vertx vertx, Context from) {
+            LayerVerticle verticle = new LayerVerticle();
+            from.runOnContext(v -> vertx.deployVerticle(verticle));
+            try {
+                if (!verticle.started.await(30, TimeUnit.SECONDS)) {
+                    throw new IllegalStateException("A layer did not start within 30 seconds.");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while a layer started.", e);
+            }
+            return verticle;
+        }
+
+        @Override
+        public void start() {
+            started.countDown();
+        }
+
+        Context context() {
+            return context;
+        }
+    }
+
+    /**
+     * A wire is an actor. Trips and state changes may come from any thread and are
+     * posted to its mailbox, which is drained on the context of its layer, so
+     * every message is handled in order and without locks. Trips posted on that
+     * context are handled right away.
+     */
     public class Wire {
 
+        final static int INACTIVE = 0;
+        final static int ACTIVATING = 1;
+        final static int ACTIVE = 2;
+
+        /**
+         * The messages drained in one go before the rest is handed to the event
+         * loop, so a busy wire cannot hold on to a thread for ever.
+         */
+        final private static int MAX_BATCH = 256;
+
         final private String wireId;
-        final private JsonObject config;
+        final private Layer layer;
 
-        final private LinkedList<Map.Entry<String, Handler<AsyncResult<Void>>>> tripCache = new LinkedList<Map.Entry<String, Handler<AsyncResult<Void>>>>();
-        final private Map<String, Hook> hooks = new ConcurrentHashMap<>();
+        final private Queue<Runnable> mailbox = new ConcurrentLinkedQueue<>();
+        final private AtomicInteger pending = new AtomicInteger();
+        final private AtomicBoolean draining = new AtomicBoolean();
 
-        private boolean activated = false;
+        final private AtomicInteger state = new AtomicInteger(INACTIVE);
 
-        Wire(String wireId, JsonObject config) {
-            this.wireId = wireId;
-            this.config = config;
+        /**
+         * Trips received while the wire activates and until they were released.
+         * Only touched while draining.
+         */
+        final private TripQueue tripCache = new TripQueue(tripCacheSize, tripCachePolicy, this::dropQueued);
+        private volatile int queued;
+        private Timeout release;
 
-            Set<String> wireHookIds = config.fieldNames();
+        /**
+         * The timers of debounced hooks waiting for their quiet window to pass,
+         * cancelled as the wire is deactivated.
+         */
+        final private TimerGroup debounces = timingWheel.group();
 
-            for (String wireHookId : wireHookIds) {
-                if (wireHookId == "default" || wireHookId == "title" || wireHookId == "description") {
-                    continue;
-                }
+        /**
+         * The last plan and hooks of this wire once a reload removed it.
+         */
+        private volatile Wiring removed;
 
-                if (config.getValue(wireHookId) instanceof String) {
-                    String aliasId = "_alias_" + config.getValue(wireHookId);
-                    if (wireData.containsKey(aliasId)) {
-                        JsonObject hookAliasConfig = wireData.getJsonObject(aliasId, new JsonObject());
-                        Hook hook = new Hook(this, wireHookId, hookAliasConfig);
-                        hooks.put(wireHookId, hook);
-                    }
+        final private LatencyHistogram latency = new LatencyHistogram();
+
+        Wire(String wireId, Layer layer) {
+            this.wireId = wireId;
+            this.layer = layer;
+        }
+
+        /**
+         * Builds the hooks of a wire plan, keeping the hooks of the current wiring
+         * whose configuration did not change.
+         *
+         * @param current the current wiring, or null for a new wire
+         * @param reuse   false to build every hook
+         */
+        private Wiring rewire(WirePlan plan, Wiring current, boolean reuse, JsonArray unchanged,
+                JsonArray changed) {
+            Map<String, Hook> hooks = new LinkedHashMap<>();
+
+            for (Map.Entry<String, HookPlan> hookPlan : plan.hooks.entrySet()) {
+                String hookId = hookPlan.getKey();
+                Hook hook = reuse ? current.hooks.get(hookId) : null;
+
+                if (hook != null && hook.plan.source.equals(hookPlan.getValue().source)) {
+                    unchanged.add(wireId + "." + hookId);
                 } else {
-                    Hook hook = new Hook(this, wireHookId, config.getJsonObject(wireHookId));
-                    hooks.put(wireHookId, hook);
+                    if (current != null && current.hooks.containsKey(hookId)) {
+                        changed.add(wireId + "." + hookId);
+                    }
+                    hook = new Hook(this, hookId, hookPlan.getValue());
                 }
+                hooks.put(hookId, hook);
             }
+
+            return new Wiring(plan, hooks);
+        }
+
+        /**
+         * Returns the plan and hooks of this wire in the current model.
+         */
+        private Wiring wiring() {
+            Wiring wiring = model.wiring(this);
+            return wiring != null ? wiring : removed;
         }
 
         public String getId() {
@@ -151,342 +1038,802 @@ public class Redstone {
         }
 
         public String getTitle() {
-            return config.getString("title", wireId);
+            return wiring().plan.title;
+        }
+
+        public Layer getLayer() {
+            return layer;
         }
 
         public boolean active() {
-            return activeWire == this;
+            return layer.active.get() == this;
         }
 
+        /**
+         * Makes this wire the active wire and deactivates the previous one. Trips
+         * are queued until the activate hook completed.
+         */
         public Wire activate() {
+            Wire previous;
+            do {
+                previous = layer.active.get();
+                if (previous == this) {
+                    return this;
+                }
+            } while (!layer.active.compareAndSet(previous, this));
+
             logger.info("Activating wire \"" + wireId + "\".");
 
+            if (previous != null) {
+                previous.deactivate();
+            }
+            version.incrementAndGet();
+            publish("activate", this, null);
+
+            post(this::start, true);
+            return this;
+        }
+
+        public Wire deactivate() {
+            logger.info("Deactivating wire \"" + wireId + "\".");
 
-            Wire liveWire = live();
+            post(this::stop, true);
+            return this;
+        }
 
-            if (liveWire != null) {
-                if (liveWire == this) {
-                    return this;
+        public Wire trip(String hookId) {
+            return trip(hookId, NOOP);
+        }
+
+        public Wire trip(String hookId, Handler<AsyncResult<JsonObject>> handler) {
+            accept(hookId, handler);
+            return this;
+        }
+
+        /**
+         * Posts a trip to the mailbox unless the limits of its hook suppress it.
+         *
+         * @return {@link EventLog#TRIPPED} if the trip was posted,
+         *         {@link EventLog#DROPPED} if the mailbox is full, or the outcome of
+         *         a trip suppressed by the limits of its hook
+         */
+        private String accept(String hookId, Handler<AsyncResult<JsonObject>> handler) {
+            Hook hook = wiring().hooks.get(hookId);
+            if (hook != null && hook.limiter != null) {
+                String outcome = admit(hook, handler);
+                if (outcome != null) {
+                    return outcome;
                 }
-                liveWire.deactivate();
             }
 
-            // Set the active wire to this wire
-            activeWire = this;
+            if (!post(() -> deliver(hookId, handler), false)) {
+                events.record(wireId, hookId, EventLog.TRIP, null, EventLog.DROPPED, 0, 0);
+                handler.handle(Future.failedFuture("The mailbox of wire \"" + wireId + "\" is full."));
+                return EventLog.DROPPED;
+            }
+            return EventLog.TRIPPED;
+        }
 
-            return this.trip("activate", rs -> {
-                activated = true;
-                
-                Iterator i = tripCache.iterator();
-                while (i.hasNext()) {
-                    Map.Entry<String, Handler<AsyncResult<Void>>> entry = (Entry<String, Handler<AsyncResult<Void>>>) i
-                            .next();
-                    i.remove();
+        /**
+         * Applies the throttle, rate and debounce limits of a hook to a trip before
+         * anything is scheduled for it.
+         *
+         * @return the outcome of a suppressed trip, or null if the trip must be
+         *         delivered now
+         */
+        private String admit(Hook hook, Handler<AsyncResult<JsonObject>> handler) {
+            Limiter limiter = hook.limiter;
+            long now = System.nanoTime();
+
+            int admitted = limiter.admit(now);
+            String outcome = null;
+
+            if (admitted == Limiter.THROTTLED) {
+                outcome = EventLog.THROTTLED;
+            } else if (admitted == Limiter.LIMITED) {
+                outcome = EventLog.LIMITED;
+            } else if (limiter.debounce > 0) {
+                if (limiter.debounce(now)) {
+                    debounce(hook.hookId, limiter, limiter.debounce);
+                }
+                outcome = EventLog.DEBOUNCED;
+            }
 
-                    trip(entry.getKey(), entry.getValue());
+            if (outcome == null) {
+                return null;
+            }
+            events.record(wireId, hook.hookId, EventLog.TRIP, null, outcome, 0, 0);
+            if (handler != NOOP) {
+                handler.handle(Future.succeededFuture(outcome(hook.hookId, outcome)));
+            }
+            return outcome;
+        }
 
+        /**
+         * Delivers a debounced trip once its hook was quiet for the debounce window,
+         * unless the wire was deactivated meanwhile.
+         */
+        private void debounce(String hookId, Limiter limiter, long delay) {
+            timingWheel.setTimer(debounces, delay, (t) -> {
+                if (layer.active.get() != this) {
+                    limiter.reset();
+                    return;
+                }
+                long remaining = limiter.settle(System.nanoTime());
+                if (remaining > 0) {
+                    debounce(hookId, limiter, remaining);
+                } else if (!post(() -> deliver(hookId, NOOP), false)) {
+                    events.record(wireId, hookId, EventLog.TRIP, null, EventLog.DROPPED, 0, 0);
                 }
             });
         }
 
-        public Wire deactivate() {
-            logger.info("Deactivating wire \"" + wireId + "\".");
-
-            for (Hook hook : hooks.values()) {
-                hook.killTimers();
+        /**
+         * Posts a message and drains the mailbox unless another thread does.
+         *
+         * @param force true to post even if the mailbox is full, for state changes
+         *              that must not be lost
+         * @return false if the mailbox is full
+         */
+        private boolean post(Runnable message, boolean force) {
+            if (pending.incrementAndGet() > mailboxSize && !force) {
+                pending.decrementAndGet();
+                return false;
             }
+            mailbox.offer(message);
+            schedule();
+            return true;
+        }
 
-            if (!activated){
-                return this;
+        /**
+         * Drains the mailbox on the context of the layer unless it is drained
+         * already, right away if called on that context.
+         */
+        private void schedule() {
+            if (!draining.compareAndSet(false, true)) {
+                return;
+            }
+            if (Vertx.currentContext() == layer.context) {
+                drain();
+            } else {
+                layer.context.runOnContext(v -> drain());
             }
+        }
 
-            activeWire = null;
-            activated = false;
+        private void drain() {
+            while (true) {
+                int handled = 0;
+                try {
+                    Runnable message;
+                    while (handled < MAX_BATCH && (message = mailbox.poll()) != null) {
+                        pending.decrementAndGet();
+                        handled++;
+                        try {
+                            message.run();
+                        } catch (RuntimeException e) {
+                            logger.error("Wire \"" + wireId + "\" failed to handle a message.", e);
+                        }
+                    }
+                } finally {
+                    draining.set(false);
+                }
 
-            return this.trip("deactivate");
+                // Go on if a message arrived after the last poll and nobody else took it.
+                if (mailbox.isEmpty() || !draining.compareAndSet(false, true)) {
+                    return;
+                }
+                if (handled == MAX_BATCH) {
+                    // Let other work of the event loop run first.
+                    layer.context.runOnContext(v -> drain());
+                    return;
+                }
+            }
         }
 
-        public Wire trip(String hookId) {
-            return trip(hookId, rs -> {
+        /**
+         * Handles the activation of this wire unless another wire was activated
+         * meanwhile.
+         */
+        private void start() {
+            if (layer.active.get() != this || !state.compareAndSet(INACTIVE, ACTIVATING)) {
+                return;
+            }
+            journal.activate(wireId);
 
+            deliver("activate", rs -> {
+                String outcome = rs.succeeded() ? rs.result().getString("outcome") : EventLog.FAILED;
+                if (!EventLog.OK.equals(outcome) && !EventLog.IGNORED.equals(outcome)) {
+                    logger.warn("The activate hook of wire \"" + wireId + "\" completed with outcome \"" + outcome
+                            + "\", releasing queued trips anyway.");
+                }
+                activated();
             });
         }
 
-        public Wire trip(String hookId, Handler<AsyncResult<Void>> handler) {
-            if (hooks.containsKey(hookId)) {
-                if (!activated && activeWire == this && hookId != "activate") {
-
-                    logger.info("Slowly tripping hook \"" + hookId + "\" on wire \"" + wireId + "\".");
+        /**
+         * Posts the completion of the activate hook.
+         */
+        private void activated() {
+            post(this::completeActivation, true);
+        }
 
-                    tripCache.add(new AbstractMap.SimpleEntry(hookId, handler));
-                    return this;
-                }
+        private void completeActivation() {
+            if (!state.compareAndSet(ACTIVATING, ACTIVE)) {
+                return;
+            }
+            journal.activated(wireId);
+            release();
+        }
 
-                logger.info("Tripping hook \"" + hookId + "\" on wire \"" + wireId + "\".");
-                Hook hook = hooks.get(hookId);
-                hook.trigger(handler);
-            } else {
-                if (hookId == "activate" || hookId == "disable") {
-                    handler.handle(Future.succeededFuture());
-                }
+        /**
+         * Releases the next batch of queued trips and arms a timer for the rest.
+         * Trips received meanwhile are queued behind them to keep their order.
+         */
+        private void release() {
+            release = null;
+            if (state.get() != ACTIVE) {
+                return;
             }
 
-            return this;
+            tripCache.drain(releaseBatch, this::releaseQueued);
+            queued = tripCache.size();
+
+            if (!tripCache.isEmpty()) {
+                release = timingWheel.setTimer(releases, releaseInterval, (t) -> post(this::release, true));
+            }
         }
 
-        public Hook hook(String hookId) {
-            if (hooks.containsKey(hookId)) {
-                Hook hook = hooks.get(hookId);
-                return hook;
+        private void releaseQueued(String hookId, Handler<AsyncResult<JsonObject>> handler, int count) {
+            Hook hook = wiring().hooks.get(hookId);
+
+            if (count > 1 && handler != NOOP) {
+                Handler<AsyncResult<JsonObject>> coalesced = handler;
+                handler = rs -> coalesced.handle(rs.succeeded()
+                        ? Future.succeededFuture(rs.result().put("coalesced", count)) : rs);
             }
 
-            return null;
+            if (hook == null) {
+                events.record(wireId, hookId, EventLog.TRIP, null, EventLog.IGNORED, 0, 0);
+                handler.handle(Future.succeededFuture(outcome(hookId, EventLog.IGNORED)));
+                return;
+            }
+            run(hook, hookId, handler);
         }
 
-        public class Hook {
-            final private Wire wire;
+        private void dropQueued(String hookId, Handler<AsyncResult<JsonObject>> handler) {
+            events.record(wireId, hookId, EventLog.TRIP, null, EventLog.DROPPED, 0, 0);
+            handler.handle(Future.succeededFuture(outcome(hookId, EventLog.DROPPED)));
+        }
 
-            final private String hookId;
-            final private JsonObject config;
+        private void stop() {
+            debounces.cancelAll();
+            for (Hook hook : wiring().hooks.values()) {
+                hook.killTimers();
+                if (hook.limiter != null) {
+                    hook.limiter.reset();
+                }
+            }
 
-            final private List<Long> timerIds = new LinkedList<>();
+            int previous = state.getAndSet(INACTIVE);
+            if (layer.active.compareAndSet(this, null)) {
+                version.incrementAndGet();
+            }
 
-            Hook(Wire wire, String hookId, JsonObject config) {
-                this.wire = wire;
+            // Trips queued during an activation that never completed or not yet released are dropped.
+            if (release != null) {
+                release.cancel();
+                release = null;
+            }
+            tripCache.clear();
+            queued = 0;
 
-                this.hookId = hookId;
-                this.config = config;
+            if (previous == INACTIVE) {
+                return;
             }
+            publish("deactivate", this, null);
+            journal.deactivate(wireId);
 
-            public String getId() {
-                return this.hookId;
+            if (previous == ACTIVE) {
+                deliver("deactivate", NOOP);
             }
+        }
 
-            public Hook trigger() {
-                return trigger(result -> {
-                });
+        /**
+         * Handles a trip in the mailbox.
+         */
+        private void deliver(String hookId, Handler<AsyncResult<JsonObject>> handler) {
+            Hook hook = wiring().hooks.get(hookId);
+
+            if (hook == null) {
+                events.record(wireId, hookId, EventLog.TRIP, null, EventLog.IGNORED, 0, 0);
+                handler.handle(Future.succeededFuture(outcome(hookId, EventLog.IGNORED)));
+                return;
             }
 
-            public Hook trigger(Handler<AsyncResult<Void>> completeHandler) {
-                vertx.executeBlocking(event -> {
-                    if (config.containsKey("delay")) {
-                        long timeout = config.getLong("delay");
-                        logger.info("Triggering delayed hook \"" + hookId + "\"" + " on wire \"" + wireId + "\".");
+            boolean activating = state.get() != ACTIVE;
+            if ((activating ? layer.active.get() == this : !tripCache.isEmpty()) && !"activate".equals(hookId)) {
+                String outcome = tripCache.offer(hookId, handler);
+                queued = tripCache.size();
+                if (EventLog.DROPPED.equals(outcome)) {
+                    return;
+                }
+                events.record(wireId, hookId, EventLog.TRIP, null, outcome, 0, 0);
+                publish("trip", this, hookId);
+                if (activating && EventLog.QUEUED.equals(outcome)) {
+                    journal.tripQueued(wireId, hookId);
+                }
+                return;
+            }
+            run(hook, hookId, handler);
+        }
 
-                        setTimer(timeout, (t) -> {
-                            event.complete();
-                        });
-                        return;
-                    }
-                    logger.info("Triggering hook \"" + hookId + "\"" + " on wire \"" + wireId + "\".");
+        private void run(Hook hook, String hookId, Handler<AsyncResult<JsonObject>> handler) {
+            events.record(wireId, hookId, EventLog.TRIP, null, EventLog.TRIPPED, 0, 0);
+            publish("trip", this, hookId);
+            hook.trigger(handler);
+        }
 
-                    event.complete();
-                }, r -> {
-                    logger.info("Running hook \"" + hookId + "\"" + " on wire \"" + wireId + "\".");
+        /**
+         * Returns the result of a trip that did not run the hook.
+         */
+        private JsonObject outcome(String hookId, String outcome) {
+            return new JsonObject().put("wire", wireId).put("hook", hookId).put("outcome", outcome)
+                    .put("actions", new JsonArray());
+        }
 
-                    triggerTimers();
-                    triggerOutbound();
+        public Hook hook(String hookId) {
+            return wiring().hooks.get(hookId);
+        }
 
-                    if(config.containsKey("hook")) {
-                        Object hookVal = config.getValue("hook");
+        public class Hook {
+            final private Wire wire;
 
-                        if (hookVal instanceof JsonObject) {
-                            Hook thook = new Hook(wire, hookId + "_inline", (JsonObject) hookVal);
-                            thook.trigger();
-                        } else {
-                            Hook hook = hook(hookVal.toString());
-                            if (hook != this) {
-                                hook.trigger();
-                            }
-                        }
-                    }
+            final private String hookId;
+            final private HookPlan plan;
 
-                    if(config.containsKey("wire")) {
-                        String wireId = config.getString("wire");
+            final private TimerGroup timers = timingWheel.group();
+            final private ScheduleIndex.Group schedules = scheduleIndex.group();
 
-                        Wire wire = wire(wireId);
+            final private LongAdder trips = new LongAdder();
+            final private LatencyHistogram latency = new LatencyHistogram();
 
-                        if (wire != null) {
-                            wire.activate();
-                        }
-                    }
+            /**
+             * The trip limits of this hook, or null if it is not limited.
+             */
+            final private Limiter limiter;
 
-                    completeHandler.handle(Future.succeededFuture());
-                });
+            /**
+             * True once a reload replaced or removed this hook.
+             */
+            private volatile boolean retired = false;
 
-                return this;
-            }
+            Hook(Wire wire, String hookId, HookPlan plan) {
+                this.wire = wire;
 
-            protected Hook killTimers() {
-                for (long timerId : timerIds) {
-                    vertx.cancelTimer(timerId);
-                }
-                timerIds.clear();
-                return this;
+                this.hookId = hookId;
+                this.plan = plan;
+                this.limiter = Limiter.of(plan);
             }
 
-            private void triggerTimers(){
-                if (config.containsKey("timer")) {
-                    JsonObject timerHook = config.getJsonObject("timer", new JsonObject());
+            public String getId() {
+                return this.hookId;
+            }
 
-                    long timeout = timerHook.getLong("delay", (long) 5000);
-                    timerHook.remove("delay");
-                    setTimer(timeout, (t) -> {
-                        Hook thook = new Hook(wire, hookId + "_" + t, timerHook);
-                        thook.trigger();
-                    });
-                }
+            public Hook trigger() {
+                return trigger(NOOP);
+            }
 
-                if (config.containsKey("repeat")) {
+            /**
+             * Runs the actions of this hook.
+             *
+             * @param completeHandler called once every action completed or the
+             *                        deadline of the hook passed, with the outcome of
+             *                        the hook and of each action
+             */
+
+            public Hook trigger(Handler<AsyncResult<JsonObject>> completeHandler) {
+                trips.increment();
+                return run(plan, System.nanoTime(), completeHandler);
+            }
 
-                    JsonObject repeatHook = config.getJsonObject("repeat", new JsonObject());
+            /**
+             * @param tripped the time the hook was tripped, or 0 if the plan is run by
+             *                a timer of this hook
+             */
+            private Hook run(HookPlan plan, long tripped, Handler<AsyncResult<JsonObject>> completeHandler) {
+                if (retired) {
+                    completeHandler.handle(Future.succeededFuture(outcome(hookId, EventLog.IGNORED)));
+                    return this;
+                }
 
-                    long timeout = repeatHook.getLong("delay", (long) 5000);
-                    repeatHook.remove("delay");
-                    long timerId = vertx.setPeriodic(timeout, (t) -> {
-                        Hook thook = new Hook(wire, hookId + "_" + t, repeatHook);
-                        thook.trigger();
+                if (workerExecution) {
+                    vertx.executeBlocking(event -> {
+                        if (plan.delay > 0) {
+                            setTimer(Journal.DELAY, plan.slot, plan.delay, (t) -> {
+                                event.complete();
+                            });
+                            return;
+                        }
+                        event.complete();
+                    }, r -> {
+                        runActions(plan, tripped, completeHandler);
                     });
-
-                    timerIds.add(timerId);
+                    return this;
                 }
 
-                if (config.containsKey("schedule")) {
-                    JsonObject schedHook = config.getJsonObject("schedule", new JsonObject());
-
-                    String when = schedHook.getString("when");
-                    boolean repeat = schedHook.getBoolean("repeat", false);
-
-                    schedHook.remove("when");
+                // Timers fire on the context of the timing wheel, the actions run on the layer.
+                if (plan.delay > 0) {
+                    setTimer(Journal.DELAY, plan.slot, plan.delay, (t) -> {
+                        layer.run(() -> runActions(plan, tripped, completeHandler));
+                    });
+                    return this;
+                }
 
-                    Handler<Void> schedHandler = new Handler<Void>() {
+                layer.run(() -> runActions(plan, tripped, completeHandler));
+                return this;
+            }
 
-                        @Override
-                        public void handle(Void event) {
-                            long timeout = getScheduledTimeout(when);
+            private void runActions(HookPlan plan, long tripped, Handler<AsyncResult<JsonObject>> completeHandler) {
+                if (plan.blocking && !workerExecution) {
+                    vertx.executeBlocking(event -> {
+                        startActions(plan, tripped, completeHandler);
+                        event.complete();
+                    }, false, r -> {
+                    });
+                    return;
+                }
 
-                            setTimer(timeout, (t) -> {
-                                Hook thook = new Hook(wire, hookId + "_" + t,
-                                        config.getJsonObject("repeat", new JsonObject()));
-                                thook.trigger();
+                startActions(plan, tripped, completeHandler);
+            }
 
-                                if (repeat){
-                                    this.handle(null);
-                                }
-                            });
-                        }
-                    };
+            private void startActions(HookPlan plan, long tripped, Handler<AsyncResult<JsonObject>> completeHandler) {
+                long elapsed = 0;
+                if (tripped != 0) {
+                    elapsed = System.nanoTime() - tripped;
+                    latency.recordNanos(elapsed);
+                    wire.latency.recordNanos(elapsed);
+                }
+                events.record(wireId, hookId, EventLog.RUN, null, EventLog.OK, 0, elapsed);
 
-                    schedHandler.handle(null);
+                if (completeHandler == NOOP && plan.concurrency == 0 && plan.timeout == 0) {
+                    // Nobody waits for the outcome, so there is nothing to join.
+                    for (Action action : plan.actions) {
+                        runAction(action, IGNORE);
+                    }
+                    return;
                 }
 
-                if (config.containsKey("kill_timers")) {
-                    JsonArray timers = config.getJsonArray("kill_timers", new JsonArray());
+                long started = System.nanoTime();
+                Pipeline pipeline = new Pipeline(plan.actions.length, plan.concurrency,
+                        (index, done) -> runAction(plan.actions[index], done),
+                        index -> describe(plan.actions[index]), result -> {
+                            if (EventLog.TIMEOUT.equals(result.getString("outcome"))) {
+                                events.record(wireId, hookId, EventLog.RUN, null, EventLog.TIMEOUT, 0,
+                                        System.nanoTime() - started);
+                            }
+                            completeHandler.handle(Future.succeededFuture(result.put("wire", wireId).put("hook", hookId)));
+                        });
+                pipeline.start(timingWheel, deadlines, plan.timeout);
+            }
 
-                    for (Object tobj : timers.getList().toArray()) {
-                        String hookId = tobj.toString();
-                        Hook hook = hooks.getOrDefault(hookId, null);
+            /**
+             * Runs a single action.
+             *
+             * @param done called with the outcome of the action once it completed
+             */
+            private void runAction(Action action, Handler<JsonObject> done) {
+                JsonObject result = describe(action);
+                String outcome = EventLog.OK;
+
+                switch (action.kind) {
+                case TIMER:
+                    setTimer(Journal.TIMER, action.slot, action.delay, (t) -> {
+                        run(action.child, 0, NOOP);
+                    });
+                    outcome = EventLog.ARMED;
+                    break;
+                case REPEAT:
+                    journal.armTimer(wireId, hookId, Journal.REPEAT, action.slot,
+                            System.currentTimeMillis() + action.delay, action.delay);
+                    timingWheel.setPeriodic(timers, action.delay, (t) -> {
+                        run(action.child, 0, NOOP);
+                    });
+                    outcome = EventLog.ARMED;
+                    break;
+                case SCHEDULE:
+                    schedule(action, journal.armTimer(wireId, hookId, Journal.SCHEDULE, action.slot, 0, 0));
+                    outcome = EventLog.ARMED;
+                    break;
+                case KILL_TIMERS:
+                    for (String hookId : action.targets) {
+                        Hook hook = hook(hookId);
                         if (hook != null) {
                             hook.killTimers();
                         }
                     }
+                    break;
+                case HTTP_GET:
+                case IFTTT:
+                    long start = System.nanoTime();
+                    outbound.dispatch(action.target, action.coalesce, rs -> {
+                        done.handle(outboundResult(action, start, rs, result));
+                    });
+                    return;
+                case HOOK:
+                    Hook hook = hook(action.target);
+                    if (hook != null && hook != this) {
+                        long chained = System.nanoTime();
+                        hook.trigger(rs -> {
+                            String hookOutcome = chained(rs, result);
+                            events.record(wireId, hookId, action.kind.label, action.name, hookOutcome, 0,
+                                    System.nanoTime() - chained);
+                            done.handle(result);
+                        });
+                        return;
+                    }
+                    outcome = EventLog.IGNORED;
+                    break;
+                case INLINE_HOOK:
+                    run(action.child, 0, rs -> {
+                        chained(rs, result);
+                        done.handle(result);
+                    });
+                    return;
+                case WIRE:
+                    Wire wire = wire(action.target);
+                    if (wire != null) {
+                        wire.activate();
+                    } else {
+                        outcome = EventLog.IGNORED;
+                    }
+                    break;
                 }
-            }
 
-            private void triggerOutbound() {
-                if (config.containsKey("http_get")){
+                events.record(wireId, hookId, action.kind.label, action.name, outcome, 0, 0);
+                done.handle(result.put("outcome", outcome));
+            }
 
-                    Object value = config.getValue("http_get", "https://www.google.com");
+            private JsonObject describe(Action action) {
+                JsonObject description = new JsonObject().put("action", action.kind.label);
+                if (action.name != null) {
+                    description.put("name", action.name);
+                }
+                return description;
+            }
 
-                    List<String> urls = new LinkedList<>();
-                    if (value instanceof JsonArray) {
-                        for (Object obj : ((JsonArray) value).getList()) {
-                            urls.add(obj.toString());
-                        }
-                    } else {
-                        urls.add(value.toString());
-                    }
+            /**
+             * Adds the result of a chained or inline hook to the outcome of the action
+             * that ran it.
+             *
+             * @return the outcome of the hook
+             */
+            private String chained(AsyncResult<JsonObject> rs, JsonObject result) {
+                if (rs.failed()) {
+                    result.put("outcome", EventLog.FAILED).put("error", rs.cause().getMessage());
+                    return EventLog.FAILED;
+                }
+                String outcome = rs.result().getString("outcome");
+                result.put("outcome", outcome).put("result", rs.result());
+                return outcome;
+            }
 
-                    urls.forEach(url -> {
-                        logger.info("Triggering HTTP request on \"" + url + "\" on wire \"" + wireId + "\" triggered by \"" + hookId + "\".");
-                        webClient.getAbs(url).send(rs -> {
-                            if (rs.failed()) {
-                                logger.error("Failed to send request on wire \"" + wireId + "\" triggered by \"" + hookId + "\".");
-                            }
-                        });
-                    });
+            /**
+             * Records the result of an outbound request.
+             *
+             * @return the outcome of the action
+             */
+            private JsonObject outboundResult(Action action, long start, AsyncResult<Integer> rs, JsonObject result) {
+                long elapsed = System.nanoTime() - start;
+
+                if (rs.failed()) {
+                    events.record(wireId, hookId, action.kind.label, action.name, EventLog.FAILED, 0, elapsed);
+                    logger.error("Failed to send request on wire \"" + wireId + "\" triggered by \"" + hookId + "\": " + rs.cause().getMessage());
+                    return result.put("outcome", EventLog.FAILED).put("error", rs.cause().getMessage());
+                } else if (rs.result() == OutboundDispatcher.COALESCED) {
+                    events.record(wireId, hookId, action.kind.label, action.name, EventLog.COALESCED, 0, 0);
+                    return result.put("outcome", EventLog.COALESCED);
+                } else if (rs.result() >= 400) {
+                    events.record(wireId, hookId, action.kind.label, action.name, EventLog.FAILED, rs.result(), elapsed);
+                    logger.error("Request on wire \"" + wireId + "\" triggered by \"" + hookId + "\" failed with status " + rs.result() + ".");
+                    return result.put("outcome", EventLog.FAILED).put("status", rs.result());
+                } else {
+                    events.record(wireId, hookId, action.kind.label, action.name, EventLog.OK, rs.result(), elapsed);
+                    return result.put("outcome", EventLog.OK).put("status", rs.result());
                 }
+            }
 
-                if (config.containsKey("ifttt")) {
-                    Object value = config.getValue("ifttt", "redstone_event");
+            /**
+             * Cancels the timers of a hook that was replaced or removed by a reload.
+             */
+            private void retire() {
+                retired = true;
+                killTimers();
+            }
 
-                    List<String> events = new LinkedList<>();
+            protected Hook killTimers() {
+                timers.cancelAll();
+                schedules.cancelAll();
+                journal.hookCancelled(wireId, hookId);
+                return this;
+            }
 
-                    if (value instanceof JsonArray) {
-                        for (Object obj : ((JsonArray) value).getList()) {
-                            events.add(obj.toString());
-                        }
-                    } else {
-                        events.add(value.toString());
+            /**
+             * Re-arms a journaled timer.
+             *
+             * @return false if the timer no longer matches the plan of this hook
+             */
+            private boolean restore(Journal.Timer timer, long now) {
+                Object node = plan.node(timer.slot());
+                long remaining = Math.max(0, timer.deadline() - now);
+
+                if (timer.kind() == Journal.DELAY && node instanceof HookPlan) {
+                    HookPlan delayed = (HookPlan) node;
+                    Handler<AsyncResult<JsonObject>> completeHandler = NOOP;
+                    if (delayed == plan && "activate".equals(hookId) && layer.active.get() == wire
+                            && wire.state.get() == Wire.ACTIVATING) {
+                        completeHandler = rs -> wire.activated();
                     }
+                    Handler<AsyncResult<JsonObject>> handler = completeHandler;
+                    timingWheel.setTimer(timers, remaining, journaled(timer.key(), (t) -> {
+                        layer.run(() -> runActions(delayed, 0, handler));
+                    }));
+                    return true;
+                }
 
-                    events.forEach(event -> {
-                        logger.info("Triggering IFTTT event \"" + event + "\" on wire \"" + wireId + "\" triggered by \"" + hookId + "\".");
-
-                        String apiKey = config().getString("ifttt_key", "invalid");
-                        String iftttUrl = "https://maker.ifttt.com/trigger/" + event
-                                + "/with/key/" + apiKey;
+                if (!(node instanceof Action)) {
+                    return false;
+                }
+                Action action = (Action) node;
 
-                        webClient.getAbs(iftttUrl).ssl(true).send(rs -> {
-                            if (rs.failed()) {
-                                logger.error("Failed to send request on wire \"" + wireId + "\" triggered by \"" + hookId + "\".");
-                            }
-                        });
+                if (timer.kind() == Journal.TIMER && action.kind == Action.Kind.TIMER) {
+                    timingWheel.setTimer(timers, remaining, journaled(timer.key(), (t) -> {
+                        run(action.child, 0, NOOP);
+                    }));
+                    return true;
+                }
+                if (timer.kind() == Journal.REPEAT && action.kind == Action.Kind.REPEAT
+                        && timer.period() == action.delay) {
+                    long period = Math.max(1, timer.period());
+                    long next = timer.deadline() >= now ? timer.deadline() - now
+                            : period - (now - timer.deadline()) % period;
+                    timingWheel.setPeriodic(timers, next, period, (t) -> {
+                        run(action.child, 0, NOOP);
                     });
+                    return true;
                 }
+                if (timer.kind() == Journal.SCHEDULE && action.kind == Action.Kind.SCHEDULE) {
+                    schedule(action, timer.key());
+                    return true;
+                }
+                return false;
             }
 
-            private void setTimer(long timeout, Handler<Long> handler) {
-                long timerId = vertx.setTimer(timeout, handler);
-
-                timerIds.add(timerId);
+            /**
+             * Returns the number of timers currently armed by this hook.
+             */
+            public int armedTimers() {
+                return timers.size() + schedules.size();
             }
 
-            private long getScheduledTimeout(String when) {
-                LocalTime time = LocalTime.parse(when);
-
-                Calendar now = Calendar.getInstance();
-                Calendar sched = Calendar.getInstance();
+            private void setTimer(int kind, int slot, long timeout, Handler<Timeout> handler) {
+                long key = journal.armTimer(wireId, hookId, kind, slot, System.currentTimeMillis() + timeout, 0);
+                timingWheel.setTimer(timers, timeout, journaled(key, handler));
+            }
 
-                sched.set(Calendar.HOUR, time.getHour());
-                sched.set(Calendar.MINUTE, time.getMinute());
+            private void schedule(Action action, long key) {
+                ScheduleIndex.Entry entry = scheduleIndex.add(schedules, action.schedule, action.repeat, (e) -> {
+                    if (!action.repeat) {
+                        journal.timerFired(key);
+                    }
+                    run(action.child, 0, NOOP);
+                });
+                if (entry == null) {
+                    journal.timerFired(key);
+                }
+            }
 
-                if (sched.before(now)) {
-                    sched.add(Calendar.DAY_OF_MONTH, 1);
+            /**
+             * Wraps the handler of a one-shot timer to record when it fires.
+             */
+            private Handler<Timeout> journaled(long key, Handler<Timeout> handler) {
+                if (key == 0) {
+                    return handler;
                 }
+                return (t) -> {
+                    journal.timerFired(key);
+                    handler.handle(t);
+                };
+            }
+        }
+    }
 
-                return sched.getTime().getTime() - (new Date()).getTime();
+    /**
+     * An immutable snapshot of the loaded plan and wires.
+     */
+    private static final class Model {
+        final Plan plan;
+        final Set<Wire> wires;
+        final Map<String, Wire> index;
+        final Map<Wire, Wiring> wirings;
+
+        /**
+         * @param wirings the wires in order along with their plan and hooks
+         */
+        Model(Plan plan, Map<Wire, Wiring> wirings) {
+            this.plan = plan;
+            this.wirings = Collections.unmodifiableMap(new LinkedHashMap<>(wirings));
+            this.wires = this.wirings.keySet();
+
+            Map<String, Wire> index = new HashMap<>();
+            for (Wire wire : wires) {
+                index.put(wire.getId(), wire);
             }
+            this.index = index;
+        }
+
+        Wire wire(String wireId) {
+            return index.get(wireId);
+        }
+
+        /**
+         * Returns the plan and hooks of a wire, or null if it is not part of this
+         * model.
+         */
+        Wiring wiring(Wire wire) {
+            return wirings.get(wire);
+        }
+    }
+
+    /**
+     * The plan and hooks of a wire.
+     */
+    private static final class Wiring {
+        final WirePlan plan;
+        final Map<String, Wire.Hook> hooks;
+
+        Wiring(WirePlan plan, Map<String, Wire.Hook> hooks) {
+            this.plan = plan;
+            this.hooks = Collections.unmodifiableMap(hooks);
         }
     }
 
+    /**
+     * A reload prepared off the event loop.
+     */
+    private static final class Reload {
+        Model model;
+        JsonObject diff;
+        final Map<Wire, Wiring> wirings = new LinkedHashMap<>();
+        final List<Wire.Hook> retired = new ArrayList<>();
+        final List<Wire> removed = new ArrayList<>();
+    }
+
+    /**
+     * Creates an instance from an already parsed configuration. Blocks while the
+     * journal is opened, so it must not be called on an event loop.
+     *
+     * @param webClient the client used for outbound requests, or null to create
+     *                  one from the configuration
+     */
+    public static Redstone create(Vertx vertx, JsonObject wireData, WebClient webClient) throws IOException {
+        return new Redstone(vertx, null, wireData, webClient, new Phases());
+    }
+
+    /**
+     * Loads the wires from a file, from its snapshot if that is up to date.
+     */
     public static void load(Vertx vertx, String loadedWires, Handler<AsyncResult<Redstone>> handler) {
-        FileSystem fs = vertx.fileSystem();
-        fs.exists(loadedWires, result -> {
-            if (result.failed() || !result.result()) {
-                handler.handle(Future.failedFuture("The file \"" + loadedWires + "\" does not exist!"));
-                return;
+        vertx.executeBlocking(event -> {
+            Phases phases = new Phases();
+            try {
+                WireFile wireFile = WireFile.read(loadedWires);
+                phases.mark(wireFile.fromSnapshot ? "snapshot" : "parse");
+                event.complete(new Redstone(vertx, loadedWires, wireFile.wireData, null, phases));
+            } catch (NoSuchFileException e) {
+                event.fail("The file \"" + loadedWires + "\" does not exist!");
+            } catch (IOException | DecodeException e) {
+                event.fail(new IOException("Could not read the file \"" + loadedWires + "\"!", e));
             }
-            fs.readFile(loadedWires, fr -> {
-                if (fr.failed()) {
-                    handler.handle(Future.failedFuture("Could not read the file \"" + loadedWires + "\"!"));
-                    return;
-                }
-
-                vertx.executeBlocking(event -> {
-                    event.complete(new Redstone(vertx, new JsonObject(fr.result())));
-                }, handler);
-            });
-        });
+        }, handler);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,197 @@
+package me.tonyrice.redstone;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.EventBus;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import me.tonyrice.redstone.Redstone.Wire;
+import me.tonyrice.redstone.events.EventLog;
+
+/**
+ * Hosts a single Redstone instance for every verticle of a Vert.x instance. The
+ * instance is kept in the shared data of its Vert.x instance while deployed,
+ * see {@link #engine(Vertx)}, and its operations are exposed on the event bus:
+ *
+ * <ul>
+ * <li>{@value #TRIP} trips {"hook": "opened"}, optionally with an "event_id"
+ * and "wait": true, and replies with its status, with wait also with the
+ * results of every wire once the hook completed.</li>
+ * <li>{@value #ACTIVATE} and {@value #DEACTIVATE} activate or deactivate
+ * {"wire": "away_armed"}.</li>
+ * <li>{@value #WIRES} replies with every wire and whether it is active.</li>
+ * <li>{@value #STATS} replies with the runtime statistics.</li>
+ * </ul>
+ *
+ * Invalid requests fail with 400 and unknown wires with 404.
+ *
+ * The wires are loaded from the "wires" path of the verticle configuration,
+ * ./wires.json by default.
+ */
+public class RedstoneVerticle extends AbstractVerticle {
+
+    public static final String TRIP = "redstone.trip";
+    public static final String ACTIVATE = "redstone.activate";
+    public static final String DEACTIVATE = "redstone.deactivate";
+    public static final String WIRES = "redstone.wires";
+    public static final String STATS = "redstone.stats";
+
+    /**
+     * The local map the engine of a Vert.x instance is kept in while deployed.
+     */
+    final private static String ENGINES = "redstone.engines";
+    final private static String ENGINE = "engine";
+
+    final private Logger logger = LoggerFactory.getLogger(RedstoneVerticle.class);
+
+    private Redstone redstone;
+
+    @Override
+    public void start(Promise<Void> startPromise) {
+        if (engine(vertx) != null) {
+            startPromise.fail("Redstone is already deployed on this Vert.x instance.");
+            return;
+        }
+        String file = config().getString("wires", "./wires.json");
+
+        Redstone.load(vertx, file, rs -> {
+            if (rs.failed()) {
+                startPromise.fail(rs.cause());
+                return;
+            }
+            if (engines(vertx).putIfAbsent(ENGINE, new Engine(rs.result())) != null) {
+                rs.result().close();
+                startPromise.fail("Redstone is already deployed on this Vert.x instance.");
+                return;
+            }
+            redstone = rs.result();
+
+            EventBus bus = vertx.eventBus();
+            MessageConsumer<JsonObject> trips = bus.consumer(TRIP, this::trip);
+            bus.<JsonObject>consumer(ACTIVATE, message -> activation(message, true));
+            bus.<JsonObject>consumer(DEACTIVATE, message -> activation(message, false));
+            bus.consumer(WIRES, this::wires);
+            bus.consumer(STATS, message -> message.reply(redstone.stats()));
+
+            trips.completionHandler(registered -> {
+                if (registered.failed()) {
+                    stop();
+                    startPromise.fail(registered.cause());
+                    return;
+                }
+                logger.info("Redstone is listening on the event bus at \"" + TRIP + "\".");
+                startPromise.complete();
+            });
+        });
+    }
+
+    @Override
+    public void stop() {
+        if (redstone != null) {
+            LocalMap<String, Engine> engines = engines(vertx);
+            Engine engine = engines.get(ENGINE);
+            if (engine != null && engine.redstone == redstone) {
+                engines.removeIfPresent(ENGINE, engine);
+            }
+            redstone.close();
+        }
+    }
+
+    /**
+     * Returns the Redstone instance deployed on a Vert.x instance, or null if
+     * none is deployed.
+     */
+    public static Redstone engine(Vertx vertx) {
+        Engine engine = engines(vertx).get(ENGINE);
+        return engine != null ? engine.redstone : null;
+    }
+
+    private static LocalMap<String, Engine> engines(Vertx vertx) {
+        return vertx.sharedData().getLocalMap(ENGINES);
+    }
+
+    private void trip(Message<JsonObject> message) {
+        JsonObject body = message.body();
+        Object hook = body != null ? body.getValue("hook") : null;
+        Object eventId = body != null ? body.getValue("event_id") : null;
+
+        if (!(hook instanceof String)) {
+            message.fail(400, "A trip requires a hook.");
+            return;
+        }
+        String hookId = (String) hook;
+        boolean wait = body.getBoolean("wait", false);
+
+        // The handler is called once the trip returned its status.
+        String[] status = new String[1];
+        Handler<AsyncResult<JsonArray>> completed = wait ? rs -> vertx.runOnContext(v -> message.reply(
+                status(hookId, status[0], rs.succeeded() ? rs.result() : new JsonArray()))) : null;
+
+        status[0] = redstone.trip(hookId, eventId instanceof String ? (String) eventId : null, completed);
+        if (!wait || EventLog.DUPLICATE.equals(status[0])) {
+            message.reply(status(hookId, status[0], wait ? new JsonArray() : null));
+        }
+    }
+
+    private void activation(Message<JsonObject> message, boolean activate) {
+        JsonObject body = message.body();
+        Object wireId = body != null ? body.getValue("wire") : null;
+
+        if (!(wireId instanceof String)) {
+            message.fail(400, "A wire is required.");
+            return;
+        }
+
+        Wire wire = redstone.wire((String) wireId);
+        if (wire == null) {
+            message.fail(404, "The wire \"" + wireId + "\" does not exist.");
+            return;
+        }
+
+        if (activate) {
+            wire.activate();
+        } else {
+            wire.deactivate();
+        }
+        message.reply(new JsonObject().put("wire", wire.getId()).put("layer", wire.getLayer().getName())
+                .put("active", wire.active()));
+    }
+
+    private void wires(Message<Object> message) {
+        JsonArray wires = new JsonArray();
+        for (Wire wire : redstone.wires()) {
+            wires.add(new JsonObject().put("id", wire.getId()).put("title", wire.getTitle())
+                    .put("layer", wire.getLayer().getName()).put("active", wire.active()));
+        }
+        message.reply(wires);
+    }
+
+    /**
+     * Shares the engine by reference, as Redstone is mutable and must not be
+     * copied into the local map.
+     */
+    private static final class Engine implements Shareable {
+        final private Redstone redstone;
+
+        Engine(Redstone redstone) {
+            this.redstone = redstone;
+        }
+    }
+
+    private static JsonObject status(String hookId, String status, JsonArray results) {
+        JsonObject reply = new JsonObject().put("hook", hookId).put("status", status);
+        if (results != null) {
+            reply.put("results", results);
+        }
+        return reply;
+    }
+}
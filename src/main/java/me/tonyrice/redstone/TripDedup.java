@@ -0,0 +1,231 @@
+package me.tonyrice.redstone;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Remembers the event ids of recent trips so a retried trip does not run its
+ * hook again. Ids are hashed with their hook to 64 bit keys and kept in an open
+ * addressing table of primitive arrays along with their expiry in seconds, so
+ * an entry takes 12 bytes and no objects.
+ *
+ * The table is split into independently locked stripes by the high bits of the
+ * key, so trips from different event loops rarely contend. Each stripe is
+ * allocated on first use.
+ *
+ * Expired entries are reused as they are probed. Once a neighbourhood is full
+ * of live ids a trip is let through without being remembered, since running a
+ * retried hook twice is better than not running a new one.
+ */
+final class TripDedup {
+
+    final private static int MAX_PROBE = 16;
+    final private static int ENTRY_BYTES = 8 + 4;
+
+    final private int capacity;
+    final private int window;
+    final private long origin = System.nanoTime();
+
+    final private Stripe[] stripes;
+    final private int shift;
+
+    final private LongAdder hits = new LongAdder();
+    final private LongAdder misses = new LongAdder();
+    final private LongAdder overflows = new LongAdder();
+
+    /**
+     * @param capacity the number of ids remembered at most, rounded up to a power
+     *                 of two
+     * @param window   how long an id is remembered in milliseconds
+     */
+    TripDedup(int capacity, long window) {
+        int size = 16;
+        while (size < capacity && size < 1 << 30) {
+            size <<= 1;
+        }
+        this.capacity = size;
+        this.window = (int) Math.max(1, (window + 999) / 1000);
+
+        int count = 1;
+        while (count < Runtime.getRuntime().availableProcessors() * 4 && size / (count * 2) >= MAX_PROBE) {
+            count <<= 1;
+        }
+        this.stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe(size / count);
+        }
+        this.shift = 64 - Integer.numberOfTrailingZeros(count);
+    }
+
+    /**
+     * Records the event id of a trip.
+     *
+     * @return true if the id was already recorded for the hook within the window
+     */
+    boolean duplicate(String hookId, String eventId) {
+        long key = key(hookId, eventId);
+        int result = stripe(key).record(key, now(), window);
+
+        if (result == Stripe.HIT) {
+            hits.increment();
+            return true;
+        }
+        misses.increment();
+        if (result == Stripe.OVERFLOW) {
+            overflows.increment();
+        }
+        return false;
+    }
+
+    /**
+     * Forgets the event id of a trip that was rejected, so it can be retried.
+     */
+    void forget(String hookId, String eventId) {
+        long key = key(hookId, eventId);
+        stripe(key).forget(key, now());
+    }
+
+    /**
+     * Returns the hit rate and footprint of the table.
+     */
+    JsonObject stats() {
+        int now = now();
+        long entries = 0;
+        long memory = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                entries += stripe.live(now);
+                memory += stripe.keys != null ? (long) stripe.size * ENTRY_BYTES : 0;
+            }
+        }
+
+        long hits = this.hits.sum();
+        long lookups = hits + misses.sum();
+        return new JsonObject()
+                .put("capacity", capacity)
+                .put("entries", entries)
+                .put("window_s", window)
+                .put("hits", hits)
+                .put("misses", misses.sum())
+                .put("overflows", overflows.sum())
+                .put("hit_rate", lookups > 0 ? (double) hits / lookups : 0.0)
+                .put("memory_bytes", memory);
+    }
+
+    private int now() {
+        return (int) TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - origin);
+    }
+
+    private Stripe stripe(long key) {
+        return shift < 64 ? stripes[(int) (key >>> shift)] : stripes[0];
+    }
+
+    /**
+     * Hashes a hook and event id to a non-zero key, FNV-1a followed by the
+     * MurmurHash3 finalizer to spread the bits used as stripe and index.
+     */
+    private static long key(String hookId, String eventId) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < hookId.length(); i++) {
+            hash = (hash ^ hookId.charAt(i)) * 0x100000001b3L;
+        }
+        hash = (hash ^ 0xffff) * 0x100000001b3L;
+        for (int i = 0; i < eventId.length(); i++) {
+            hash = (hash ^ eventId.charAt(i)) * 0x100000001b3L;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb93fe53ec44dL;
+        hash ^= hash >>> 33;
+        return hash != 0 ? hash : 1;
+    }
+
+    /**
+     * A part of the table with its own lock.
+     */
+    private static final class Stripe {
+        final static int HIT = 0;
+        final static int MISS = 1;
+        final static int OVERFLOW = 2;
+
+        final private int size;
+
+        private long[] keys;
+        private int[] expires;
+
+        Stripe(int size) {
+            this.size = size;
+        }
+
+        synchronized int record(long key, int now, int window) {
+            if (keys == null) {
+                keys = new long[size];
+                expires = new int[size];
+            }
+
+            int mask = size - 1;
+            int free = -1;
+            int index = (int) key & mask;
+
+            for (int i = 0; i < MAX_PROBE; i++, index = (index + 1) & mask) {
+                long slot = keys[index];
+
+                if (slot == 0) {
+                    if (free < 0) {
+                        free = index;
+                    }
+                    break;
+                }
+                if (now < expires[index] && slot == key) {
+                    return HIT;
+                }
+                if (free < 0 && now >= expires[index]) {
+                    free = index;
+                }
+            }
+
+            if (free < 0) {
+                return OVERFLOW;
+            }
+            keys[free] = key;
+            expires[free] = now + window;
+            return MISS;
+        }
+
+        synchronized void forget(long key, int now) {
+            if (keys == null) {
+                return;
+            }
+
+            int mask = size - 1;
+            int index = (int) key & mask;
+
+            for (int i = 0; i < MAX_PROBE && keys[index] != 0; i++, index = (index + 1) & mask) {
+                if (keys[index] == key && now < expires[index]) {
+                    // Expired entries keep the probe going, so the slot is simply expired.
+                    expires[index] = now;
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Counts the ids that did not expire yet.
+         */
+        int live(int now) {
+            int live = 0;
+            if (keys != null) {
+                for (int i = 0; i < size; i++) {
+                    if (keys[i] != 0 && now < expires[i]) {
+                        live++;
+                    }
+                }
+            }
+            return live;
+        }
+    }
+}
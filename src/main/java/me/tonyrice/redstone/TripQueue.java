@@ -0,0 +1,258 @@
+package me.tonyrice.redstone;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonObject;
+import me.tonyrice.redstone.events.EventLog;
+
+/**
+ * A bounded ring buffer of the trips received while a wire activates. The
+ * buffer starts small and grows up to its capacity, so idle wires hold next to
+ * nothing. Once it is full the policy decides which trip is dropped:
+ *
+ * <ul>
+ * <li>{@code drop_oldest} drops the trip queued first.</li>
+ * <li>{@code drop_newest} drops the trip received.</li>
+ * <li>{@code coalesce} queues every hook at most once and counts the trips it
+ * received, dropping trips of further hooks once full.</li>
+ * </ul>
+ *
+ * Only used on the context of its wire, so it is not thread safe.
+ */
+final class TripQueue {
+
+    static final int DROP_OLDEST = 0;
+    static final int DROP_NEWEST = 1;
+    static final int COALESCE = 2;
+
+    final private static int INITIAL_SIZE = 16;
+
+    /**
+     * Receives a queued trip together with the number of trips coalesced into it.
+     */
+    interface Release {
+        void release(String hookId, Handler<AsyncResult<JsonObject>> handler, int count);
+    }
+
+    final private int capacity;
+    final private int policy;
+    final private BiConsumer<String, Handler<AsyncResult<JsonObject>>> dropped;
+
+    private String[] hooks;
+    private Handler<AsyncResult<JsonObject>>[] handlers;
+    private int[] counts;
+    private int head;
+    private int size;
+
+    /**
+     * The slot of every queued hook plus one by the hash of the hook, with
+     * {@code coalesce} only. Linear probing in a table of at least twice the
+     * slots, so lookups neither allocate nor box.
+     */
+    final private boolean coalesce;
+    private int[] index;
+
+    final LongAdder droppedTrips = new LongAdder();
+    final LongAdder coalescedTrips = new LongAdder();
+
+    /**
+     * @param dropped receives the trips dropped by the policy
+     */
+    TripQueue(int capacity, int policy, BiConsumer<String, Handler<AsyncResult<JsonObject>>> dropped) {
+        this.capacity = Math.max(1, capacity);
+        this.policy = policy;
+        this.dropped = dropped;
+        this.coalesce = policy == COALESCE;
+    }
+
+    /**
+     * Returns the policy of a name.
+     *
+     * @throws IllegalArgumentException if the policy is unknown
+     */
+    static int policy(String name) {
+        switch (name) {
+        case "drop_oldest":
+            return DROP_OLDEST;
+        case "drop_newest":
+            return DROP_NEWEST;
+        case "coalesce":
+            return COALESCE;
+        default:
+            throw new IllegalArgumentException("Unknown trip cache policy \"" + name + "\".");
+        }
+    }
+
+    /**
+     * Queues a trip.
+     *
+     * @return {@link EventLog#QUEUED}, {@link EventLog#COALESCED} or
+     *         {@link EventLog#DROPPED} if the trip itself was dropped
+     */
+    String offer(String hookId, Handler<AsyncResult<JsonObject>> handler) {
+        if (coalesce && hooks != null) {
+            int slot = index[position(hookId)] - 1;
+            if (slot >= 0) {
+                counts[slot]++;
+                handlers[slot] = combine(handlers[slot], handler);
+                coalescedTrips.increment();
+                return EventLog.COALESCED;
+            }
+        }
+
+        String evictedHook = null;
+        Handler<AsyncResult<JsonObject>> evictedHandler = null;
+
+        if (size == capacity) {
+            droppedTrips.increment();
+            if (policy != DROP_OLDEST) {
+                dropped.accept(hookId, handler);
+                return EventLog.DROPPED;
+            }
+            evictedHook = hooks[head];
+            evictedHandler = handlers[head];
+            remove();
+        }
+
+        if (hooks == null || size == hooks.length) {
+            grow();
+        }
+        int slot = (head + size) % hooks.length;
+        hooks[slot] = hookId;
+        handlers[slot] = handler;
+        counts[slot] = 1;
+        size++;
+        if (coalesce) {
+            index[position(hookId)] = slot + 1;
+        }
+
+        // Completing the dropped trip last leaves the queue consistent for its handler.
+        if (evictedHook != null) {
+            dropped.accept(evictedHook, evictedHandler);
+        }
+        return EventLog.QUEUED;
+    }
+
+    /**
+     * Removes up to max trips in order and hands them to a release.
+     *
+     * @return the number of trips released
+     */
+    int drain(int max, Release release) {
+        int released = 0;
+        while (size > 0 && released < max) {
+            String hookId = hooks[head];
+            Handler<AsyncResult<JsonObject>> handler = handlers[head];
+            int count = counts[head];
+            remove();
+            released++;
+            release.release(hookId, handler, count);
+        }
+        return released;
+    }
+
+    /**
+     * Drops every queued trip.
+     */
+    void clear() {
+        drain(Integer.MAX_VALUE, (hookId, handler, count) -> dropped.accept(hookId, handler));
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    private void remove() {
+        if (coalesce) {
+            delete(position(hooks[head]));
+        }
+        hooks[head] = null;
+        handlers[head] = null;
+        head = (head + 1) % hooks.length;
+        size--;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private void grow() {
+        int length = hooks == null ? Math.min(INITIAL_SIZE, capacity) : Math.min(hooks.length * 2, capacity);
+
+        String[] grownHooks = new String[length];
+        Handler<AsyncResult<JsonObject>>[] grownHandlers = new Handler[length];
+        int[] grownCounts = new int[length];
+
+        for (int i = 0; i < size; i++) {
+            int slot = (head + i) % hooks.length;
+            grownHooks[i] = hooks[slot];
+            grownHandlers[i] = handlers[slot];
+            grownCounts[i] = counts[slot];
+        }
+
+        hooks = grownHooks;
+        handlers = grownHandlers;
+        counts = grownCounts;
+        head = 0;
+
+        if (coalesce) {
+            index = new int[Integer.highestOneBit(length * 2 - 1) * 2];
+            for (int i = 0; i < size; i++) {
+                index[position(hooks[i])] = i + 1;
+            }
+        }
+    }
+
+    /**
+     * Returns the position of a hook in the index, or the empty position ending
+     * its probe if it is not queued.
+     */
+    private int position(String hookId) {
+        int mask = index.length - 1;
+        int i = home(hookId, mask);
+        while (index[i] != 0 && !hooks[index[i] - 1].equals(hookId)) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    /**
+     * Empties a position of the index, moving later entries of the probe back so
+     * every entry stays reachable from its home position.
+     */
+    private void delete(int i) {
+        int mask = index.length - 1;
+        index[i] = 0;
+        for (int j = (i + 1) & mask; index[j] != 0; j = (j + 1) & mask) {
+            int home = home(hooks[index[j] - 1], mask);
+            if (((j - home) & mask) >= ((j - i) & mask)) {
+                index[i] = index[j];
+                index[j] = 0;
+                i = j;
+            }
+        }
+    }
+
+    private static int home(String hookId, int mask) {
+        int hash = hookId.hashCode();
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    private static Handler<AsyncResult<JsonObject>> combine(Handler<AsyncResult<JsonObject>> first,
+            Handler<AsyncResult<JsonObject>> second) {
+        if (second == Redstone.NOOP) {
+            return first;
+        }
+        if (first == Redstone.NOOP) {
+            return second;
+        }
+        return result -> {
+            first.handle(result);
+            second.handle(result);
+        };
+    }
+}
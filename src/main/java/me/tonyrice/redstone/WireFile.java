@@ -0,0 +1,295 @@
+package me.tonyrice.redstone;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.json.jackson.DatabindCodec;
+
+/**
+ * Reads a wires.json file. The file is parsed as a stream of top level fields,
+ * so it is never held in memory as a whole besides the parsed values.
+ *
+ * With {@code _config_snapshot} the parsed configuration is also written to a
+ * binary snapshot next to the file. As long as the snapshot matches the size,
+ * modification time and checksum of the file, later loads map the snapshot and
+ * decode its fields in parallel instead of parsing the JSON.
+ */
+final class WireFile {
+
+    final private static int MAGIC = 0x52534e50;
+    final private static int VERSION = 1;
+
+    final private static byte NULL = 0;
+    final private static byte TRUE = 1;
+    final private static byte FALSE = 2;
+    final private static byte INT = 3;
+    final private static byte LONG = 4;
+    final private static byte DOUBLE = 5;
+    final private static byte STRING = 6;
+    final private static byte OBJECT = 7;
+    final private static byte ARRAY = 8;
+
+    /**
+     * The configuration read and whether it came from the snapshot.
+     */
+    final JsonObject wireData;
+    final boolean fromSnapshot;
+
+    private WireFile(JsonObject wireData, boolean fromSnapshot) {
+        this.wireData = wireData;
+        this.fromSnapshot = fromSnapshot;
+    }
+
+    /**
+     * Reads a wires.json file, from its snapshot if that is up to date. Blocks,
+     * so it must not be called on an event loop.
+     */
+    static WireFile read(String file) throws IOException {
+        Path source = new File(file).toPath();
+        Path snapshot = snapshotOf(source);
+
+        long size = Files.size(source);
+        long modified = Files.getLastModifiedTime(source).toMillis();
+        long checksum = checksum(source, size);
+
+        JsonObject wireData = Files.exists(snapshot) ? readSnapshot(snapshot, size, modified, checksum) : null;
+        if (wireData != null) {
+            return new WireFile(wireData, true);
+        }
+
+        wireData = parse(source);
+
+        if (wireData.getBoolean("_config_snapshot", false)) {
+            writeSnapshot(snapshot, wireData, size, modified, checksum);
+        } else {
+            Files.deleteIfExists(snapshot);
+        }
+        return new WireFile(wireData, false);
+    }
+
+    static Path snapshotOf(Path source) {
+        return source.resolveSibling(source.getFileName() + ".snapshot");
+    }
+
+    /**
+     * Parses the top level fields of a JSON file one by one.
+     */
+    static JsonObject parse(Path source) throws IOException {
+        Map<String, Object> fields = new LinkedHashMap<>();
+
+        ObjectMapper mapper = DatabindCodec.mapper();
+
+        try (JsonParser parser = mapper.getFactory().createParser(source.toFile())) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new DecodeException("The file \"" + source + "\" does not contain a JSON object.");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                fields.put(field, mapper.readValue(parser, Object.class));
+            }
+        } catch (JsonProcessingException e) {
+            throw new DecodeException("Failed to decode \"" + source + "\": " + e.getOriginalMessage());
+        }
+
+        return new JsonObject(fields);
+    }
+
+    private static long checksum(Path source, long size) throws IOException {
+        CRC32 crc = new CRC32();
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            crc.update(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Maps a snapshot and decodes its fields in parallel.
+     *
+     * @return the configuration, or null if the snapshot is stale or unreadable
+     */
+    private static JsonObject readSnapshot(Path snapshot, long size, long modified, long checksum) {
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getLong() != size
+                    || buffer.getLong() != modified || buffer.getLong() != checksum) {
+                return null;
+            }
+
+            int count = buffer.getInt();
+            int[] offsets = new int[count];
+            for (int i = 0; i < count; i++) {
+                offsets[i] = buffer.getInt();
+            }
+
+            String[] names = new String[count];
+            Object[] values = new Object[count];
+            IntStream.range(0, count).parallel().forEach(i -> {
+                ByteBuffer field = buffer.duplicate();
+                field.position(offsets[i]);
+                names[i] = readString(field);
+                values[i] = readValue(field);
+            });
+
+            Map<String, Object> fields = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                fields.put(names[i], values[i]);
+            }
+            return new JsonObject(fields);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static void writeSnapshot(Path snapshot, JsonObject wireData, long size, long modified, long checksum)
+            throws IOException {
+        List<String> names = new ArrayList<>(wireData.fieldNames());
+
+        byte[][] fields = new byte[names.size()][];
+        IntStream.range(0, fields.length).parallel().forEach(i -> {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                writeString(out, names.get(i));
+                writeValue(out, wireData.getValue(names.get(i)));
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            fields[i] = bytes.toByteArray();
+        });
+
+        Path temp = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(size);
+            out.writeLong(modified);
+            out.writeLong(checksum);
+            out.writeInt(fields.length);
+
+            int offset = 4 + 4 + 8 + 8 + 8 + 4 + fields.length * 4;
+            for (byte[] field : fields) {
+                out.writeInt(offset);
+                offset += field.length;
+            }
+            for (byte[] field : fields) {
+                out.write(field);
+            }
+        }
+        Files.move(temp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof Boolean) {
+            out.writeByte((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            out.writeByte(INT);
+            out.writeInt(((Number) value).intValue());
+        } else if (value instanceof Long || value instanceof BigInteger && ((BigInteger) value).bitLength() < 64) {
+            out.writeByte(LONG);
+            out.writeLong(((Number) value).longValue());
+        } else if (value instanceof Number) {
+            out.writeByte(DOUBLE);
+            out.writeDouble(value instanceof BigDecimal ? ((BigDecimal) value).doubleValue()
+                    : ((Number) value).doubleValue());
+        } else if (value instanceof CharSequence) {
+            out.writeByte(STRING);
+            writeString(out, value.toString());
+        } else if (value instanceof JsonObject || value instanceof Map) {
+            Map<?, ?> map = value instanceof JsonObject ? ((JsonObject) value).getMap() : (Map<?, ?>) value;
+            out.writeByte(OBJECT);
+            out.writeInt(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                writeString(out, String.valueOf(entry.getKey()));
+                writeValue(out, entry.getValue());
+            }
+        } else if (value instanceof JsonArray || value instanceof List) {
+            List<?> list = value instanceof JsonArray ? ((JsonArray) value).getList() : (List<?>) value;
+            out.writeByte(ARRAY);
+            out.writeInt(list.size());
+            for (Object item : list) {
+                writeValue(out, item);
+            }
+        } else {
+            throw new IllegalArgumentException("Cannot write a " + value.getClass().getName() + " to a snapshot.");
+        }
+    }
+
+    private static Object readValue(ByteBuffer in) {
+        byte type = in.get();
+        switch (type) {
+        case NULL:
+            return null;
+        case TRUE:
+            return true;
+        case FALSE:
+            return false;
+        case INT:
+            return in.getInt();
+        case LONG:
+            return in.getLong();
+        case DOUBLE:
+            return in.getDouble();
+        case STRING:
+            return readString(in);
+        case OBJECT:
+            int fields = in.getInt();
+            Map<String, Object> map = new LinkedHashMap<>(fields * 4 / 3 + 1);
+            for (int i = 0; i < fields; i++) {
+                String name = readString(in);
+                map.put(name, readValue(in));
+            }
+            return map;
+        case ARRAY:
+            int items = in.getInt();
+            List<Object> list = new ArrayList<>(items);
+            for (int i = 0; i < items; i++) {
+                list.add(readValue(in));
+            }
+            return list;
+        default:
+            throw new IllegalStateException("Unknown snapshot value type " + type + ".");
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
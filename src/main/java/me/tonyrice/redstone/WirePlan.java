@@ -0,0 +1,26 @@
+package me.tonyrice.redstone;
+
+import java.util.Collections;
+import java.util.Map;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * The compiled form of a wire configuration.
+ */
+final class WirePlan {
+
+    final String wireId;
+    final String title;
+    final String layer;
+    final JsonObject source;
+    final Map<String, HookPlan> hooks;
+
+    WirePlan(String wireId, JsonObject source, Map<String, HookPlan> hooks) {
+        this.wireId = wireId;
+        this.title = source.getString("title", wireId);
+        this.layer = source.getString("layer", "default");
+        this.source = source;
+        this.hooks = Collections.unmodifiableMap(hooks);
+    }
+}
@@ -0,0 +1,275 @@
+package me.tonyrice.redstone.events;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * A fixed size ring buffer of recent trip events. Writers claim a sequence
+ * number with a single atomic increment and fill the slot it maps to in place,
+ * so recording never allocates. Each slot is guarded by a version that is odd
+ * while it is written; a writer only retries a few times while another one
+ * lapping it holds the same slot, and gives up if the slot already holds a
+ * newer event. An event given up on is marked skipped in its slot. Readers copy
+ * a slot and keep it only if its version did not change meanwhile, counting
+ * slots that were overwritten or skipped as missed.
+ */
+public class EventLog {
+
+    /**
+     * Event kinds besides the lower case action kinds.
+     */
+    public static final String TRIP = "trip";
+    public static final String RUN = "run";
+
+    /**
+     * Event outcomes.
+     */
+    public static final String TRIPPED = "tripped";
+    public static final String QUEUED = "queued";
+    public static final String DROPPED = "dropped";
+    public static final String THROTTLED = "throttled";
+    public static final String LIMITED = "limited";
+    public static final String DEBOUNCED = "debounced";
+    public static final String IGNORED = "ignored";
+    public static final String DUPLICATE = "duplicate";
+    public static final String OK = "ok";
+    public static final String ARMED = "armed";
+    public static final String FAILED = "failed";
+    public static final String COALESCED = "coalesced";
+    public static final String TIMEOUT = "timeout";
+    public static final String SKIPPED = "skipped";
+
+    /**
+     * How often a writer retries to take a slot held by another one.
+     */
+    final private static int MAX_RETRIES = 16;
+
+    final private Slot[] slots;
+    final private int mask;
+    final private AtomicLong sequence = new AtomicLong();
+
+    /**
+     * @param capacity the number of events kept, rounded up to a power of two
+     */
+    public EventLog(int capacity) {
+        int size = 16;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        this.slots = new Slot[size];
+        this.mask = size - 1;
+
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+        }
+    }
+
+    /**
+     * Records an event.
+     *
+     * @param wire the wire id, or null
+     * @param hook the hook id, or null
+     * @param kind {@link #TRIP}, {@link #RUN} or the lower case action kind
+     * @param target the url, event, hook or wire the action targets, or null
+     * @param outcome one of the outcome constants
+     * @param status the response status of outbound requests, otherwise 0
+     * @param latency the latency in nanoseconds, or 0
+     */
+    public void record(String wire, String hook, String kind, String target, String outcome, int status,
+            long latency) {
+        long seq = sequence.getAndIncrement();
+        Slot slot = slots[(int) (seq & mask)];
+
+        if (!slot.acquire(seq)) {
+            return;
+        }
+        slot.published = seq;
+        slot.time = System.currentTimeMillis();
+        slot.wire = wire;
+        slot.hook = hook;
+        slot.kind = kind;
+        slot.target = target;
+        slot.outcome = outcome;
+        slot.status = status;
+        slot.latency = latency;
+        slot.release();
+    }
+
+    /**
+     * Returns the sequence the next event will be recorded with.
+     */
+    public long head() {
+        return sequence.get();
+    }
+
+    public int capacity() {
+        return slots.length;
+    }
+
+    /**
+     * Returns matching events oldest first. With a cursor the events recorded
+     * after it are returned, otherwise the newest events.
+     *
+     * @param after the sequence of the last event already seen, or -1
+     * @param limit the maximum number of events returned
+     * @param wire the wire to filter by, or null
+     * @param hook the hook to filter by, or null
+     * @param kind the kind to filter by, or null
+     * @param outcome the outcome to filter by, or null
+     * @return the events, the cursor to continue from as "next" and the number of
+     *         events overwritten before they could be read as "missed"
+     */
+    public JsonObject query(long after, int limit, String wire, String hook, String kind, String outcome) {
+        long head = sequence.get();
+        long oldest = Math.max(0, head - slots.length);
+        long from = after < 0 ? oldest : Math.max(after + 1, oldest);
+        long missed = after < 0 ? 0 : from - (after + 1);
+        long next = after < 0 ? from - 1 : Math.max(after, from - 1);
+
+        ArrayDeque<JsonObject> events = new ArrayDeque<>();
+        Event event = new Event();
+
+        for (long seq = from; seq < head; seq++) {
+            if (after >= 0 && events.size() >= limit) {
+                break;
+            }
+
+            Slot slot = slots[(int) (seq & mask)];
+            if (!event.copy(slot, seq)) {
+                if (slot.published > seq || slot.skipped >= seq) {
+                    // Overwritten by a newer event, or given up by its writer.
+                    missed++;
+                    next = seq;
+                    continue;
+                }
+                // Still being written, continue from here next time.
+                break;
+            }
+            next = seq;
+
+            if (matches(wire, event.wire) && matches(hook, event.hook) && matches(kind, event.kind)
+                    && matches(outcome, event.outcome)) {
+                events.add(event.toJson(seq));
+                if (events.size() > limit) {
+                    events.removeFirst();
+                }
+            }
+        }
+
+        return new JsonObject()
+                .put("events", new JsonArray(new ArrayList<>(events)))
+                .put("next", next)
+                .put("missed", missed);
+    }
+
+    private static boolean matches(String filter, String value) {
+        return filter == null || filter.equals(value);
+    }
+
+    private static final class Slot {
+        final private static AtomicLongFieldUpdater<Slot> VERSION = AtomicLongFieldUpdater.newUpdater(Slot.class,
+                "version");
+        final private static AtomicLongFieldUpdater<Slot> SKIPPED = AtomicLongFieldUpdater.newUpdater(Slot.class,
+                "skipped");
+
+        volatile long version;
+        volatile long published = -1;
+        volatile long skipped = -1;
+        volatile long time;
+        volatile String wire;
+        volatile String hook;
+        volatile String kind;
+        volatile String target;
+        volatile String outcome;
+        volatile int status;
+        volatile long latency;
+
+        /**
+         * Takes the slot to write the event of a sequence.
+         *
+         * @return false if the slot already holds a newer event, or was held by
+         *         another writer for too long and the event was skipped
+         */
+        boolean acquire(long seq) {
+            for (int i = 0; i < MAX_RETRIES; i++) {
+                long current = version;
+                if ((current & 1) == 0 && VERSION.compareAndSet(this, current, current + 1)) {
+                    if (published > seq) {
+                        version = current + 2;
+                        return false;
+                    }
+                    return true;
+                }
+                Thread.yield();
+            }
+
+            long last;
+            do {
+                last = skipped;
+                if (last >= seq) {
+                    break;
+                }
+            } while (!SKIPPED.compareAndSet(this, last, seq));
+            return false;
+        }
+
+        void release() {
+            version = version + 1;
+        }
+    }
+
+    /**
+     * A reader's copy of a slot.
+     */
+    private static final class Event {
+        long time;
+        String wire;
+        String hook;
+        String kind;
+        String target;
+        String outcome;
+        int status;
+        long latency;
+
+        boolean copy(Slot slot, long seq) {
+            long version = slot.version;
+            if ((version & 1) != 0 || slot.published != seq) {
+                return false;
+            }
+            time = slot.time;
+            wire = slot.wire;
+            hook = slot.hook;
+            kind = slot.kind;
+            target = slot.target;
+            outcome = slot.outcome;
+            status = slot.status;
+            latency = slot.latency;
+            return slot.version == version;
+        }
+
+        JsonObject toJson(long seq) {
+            JsonObject json = new JsonObject()
+                    .put("seq", seq)
+                    .put("time", time)
+                    .put("wire", wire)
+                    .put("hook", hook)
+                    .put("kind", kind)
+                    .put("outcome", outcome);
+            if (target != null) {
+                json.put("target", target);
+            }
+            if (status != 0) {
+                json.put("status", status);
+            }
+            if (latency != 0) {
+                json.put("latency_ms", latency / 1e6);
+            }
+            return json;
+        }
+    }
+}
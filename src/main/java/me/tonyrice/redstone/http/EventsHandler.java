@@ -0,0 +1,83 @@
+package me.tonyrice.redstone.http;
+
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.RoutingContext;
+import me.tonyrice.redstone.events.EventLog;
+
+/**
+ * Serves recent trip events from /v1/events. Events can be filtered by wire,
+ * hook, kind and outcome. Passing the "next" cursor of a response as "after"
+ * continues where it left off, and "wait_ms" holds the request open until a
+ * matching event arrives, so clients can tail the log. The events missed while
+ * waiting are added up over every poll.
+ */
+public class EventsHandler implements Handler<RoutingContext> {
+
+  private static final long POLL_MS = 100;
+  private static final long MAX_WAIT_MS = 30000;
+
+  private final Vertx vertx;
+  private final EventLog events;
+
+  public EventsHandler(Vertx vertx, EventLog events) {
+    this.vertx = vertx;
+    this.events = events;
+  }
+
+  @Override
+  public void handle(RoutingContext rc) {
+    HttpServerRequest request = rc.request();
+
+    long after;
+    int limit;
+    long wait;
+    try {
+      after = Long.parseLong(param(request, "after", "-1"));
+      limit = Math.max(1, Math.min(events.capacity(), Integer.parseInt(param(request, "limit", "100"))));
+      wait = Math.max(0, Math.min(MAX_WAIT_MS, Long.parseLong(param(request, "wait_ms", "0"))));
+    } catch (NumberFormatException e) {
+      rc.response().setStatusCode(400).end("Invalid number: " + e.getMessage());
+      return;
+    }
+
+    String wire = request.getParam("wire");
+    String hook = request.getParam("hook");
+    String kind = request.getParam("kind");
+    String outcome = request.getParam("outcome");
+
+    JsonObject result = events.query(after, limit, wire, hook, kind, outcome);
+    if (wait == 0 || !result.getJsonArray("events").isEmpty()) {
+      end(rc, result);
+      return;
+    }
+
+    long deadline = System.currentTimeMillis() + wait;
+    long[] cursor = { result.getLong("next"), result.getLong("missed") };
+
+    long timer = vertx.setPeriodic(POLL_MS, id -> {
+      JsonObject next = events.query(cursor[0], limit, wire, hook, kind, outcome);
+      cursor[0] = next.getLong("next");
+      cursor[1] += next.getLong("missed");
+
+      if (!next.getJsonArray("events").isEmpty() || System.currentTimeMillis() >= deadline) {
+        vertx.cancelTimer(id);
+        end(rc, next.put("missed", cursor[1]));
+      }
+    });
+    rc.response().closeHandler(v -> vertx.cancelTimer(timer));
+  }
+
+  private static String param(HttpServerRequest request, String name, String defaultValue) {
+    String value = request.getParam(name);
+    return value != null ? value : defaultValue;
+  }
+
+  private static void end(RoutingContext rc, JsonObject result) {
+    if (!rc.response().closed()) {
+      rc.response().putHeader("Content-Type", "application/json").end(result.encode());
+    }
+  }
+}
@@ -1,9 +1,10 @@
 package me.tonyrice.redstone.http;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
 import io.vertx.core.AbstractVerticle;
-import io.vertx.core.Vertx;
-import io.vertx.core.json.JsonArray;
-import io.vertx.core.json.JsonObject;
+import io.vertx.core.Promise;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
 import io.vertx.ext.auth.User;
@@ -16,186 +17,215 @@ import io.vertx.ext.web.handler.StaticHandler;
 import io.vertx.ext.web.sstore.LocalSessionStore;
 import me.tonyrice.redstone.Redstone;
 import me.tonyrice.redstone.Redstone.Wire;
-import me.tonyrice.redstone.http.auth.ReactHtdigestAuthHandler;
+import me.tonyrice.redstone.http.auth.ReactHtdigestAuth;
+import me.tonyrice.redstone.metrics.PrometheusWriter;
 
 /**
- * An HTTP Server exposing the Redstone API.
+ * An HTTP Server exposing the Redstone API. Deployed by {@link RedstoneServer}
+ * once per core, every instance serves the same port from its own event loop
+ * and shares the engine, users and trip handlers set up there.
  */
 public class HttpServer extends AbstractVerticle {
 
-  public static void main(String[] args) {
-    Vertx vertx = Vertx.vertx();
-    vertx.deployVerticle(new HttpServer());
-  }
-
   private final Logger logger = LoggerFactory.getLogger(HttpServer.class);
 
-  @Override
-  public void start() {
-
-    logger.info("Initializing Redstone HTTP Server...");
-
-    Redstone.load(vertx, "./wires.json", result -> {
+  private final RedstoneServer server;
 
-      if (result.failed()) {
-        logger.fatal("Failed to initialize Redstone", result.cause());
-        System.exit(0);
-        return;
-      }
-
-      Redstone redstone = result.result();
-
-      Router router = Router.router(vertx);
-
-      SessionHandler sessionHandler = SessionHandler.create(LocalSessionStore.create(vertx));
-      AuthHandler authHandler = ReactHtdigestAuthHandler.create(vertx, 
-        redstone.config().getString("http_auth", "httpauth"));
-
-      router.route().handler(sessionHandler);
-      router.route().handler(BodyHandler.create());
-
-      /**
-       * Inject the user into the session!
-       */
-      router.route().handler(rc -> {
-        Session session = rc.session();
-        Object userObj = session.get("user");
+  HttpServer(RedstoneServer server) {
+    this.server = server;
+  }
 
-        if (userObj != null) {
-          User user = (User) userObj;
-          rc.setUser(user);
+  @Override
+  public void start(Promise<Void> startPromise) {
+
+    Redstone redstone = server.redstone();
+
+    Router router = Router.router(vertx);
+
+    SessionHandler sessionHandler = SessionHandler.create(LocalSessionStore.create(vertx));
+    ReactHtdigestAuth auth = server.auth();
+    AuthHandler authHandler = server.authHandler();
+
+    /**
+     * Trip one or more hooks! Registered ahead of the session and body handlers
+     * so trips are parsed as they stream in.
+     */
+    router.post("/v1/trip").handler(server.tripHandler());
+
+    /**
+     * Trip a hook with a signed request. Only the headers are read.
+     */
+    if (server.signedTripHandler() != null) {
+      router.post("/v1/trip/:hook").handler(server.signedTripHandler());
+    }
+
+    /**
+     * Expose metrics to Prometheus. Scrapers authenticate with a bearer token
+     * if a metrics key is configured, otherwise as users.
+     */
+    String metricsKey = redstone.config().getString("metrics_key");
+
+    if (metricsKey != null) {
+      byte[] bearer = ("Bearer " + metricsKey).getBytes(StandardCharsets.UTF_8);
+      router.get("/v1/metrics").handler(rc -> {
+        String authorization = rc.request().getHeader("Authorization");
+        if (authorization == null || !MessageDigest.isEqual(bearer, authorization.getBytes(StandardCharsets.UTF_8))) {
+          rc.response().setStatusCode(401).end();
+          return;
         }
-
         rc.next();
       });
+    } else {
+      router.get("/v1/metrics").handler(authHandler);
+    }
 
-      /**
-       * Handle Login
-       */
-      router.get("/v1/login").handler(authHandler).handler(rc -> {
-        Session session = rc.session();
-        session.put("user", rc.user());
+    router.get("/v1/metrics").handler(rc -> {
+      PrometheusWriter writer = new PrometheusWriter();
+      server.metrics(writer);
 
-        rc.response().end("ok");
-      });
+      rc.response().putHeader("Content-Type", "text/plain; version=0.0.4").end(writer.toString());
+    });
 
-      /**
-       * Handle Logout
-       */
-      router.get("/v1/logout").handler(rc -> {
-        Session session = rc.session();
-        rc.clearUser();
-        session.put("user", null);
+    router.route().handler(sessionHandler);
+    router.route().handler(BodyHandler.create());
 
-        rc.response().end("ok");
-      });
+    /**
+     * Inject the user into the session!
+     */
+    router.route().handler(rc -> {
+      Session session = rc.session();
+      Object userObj = session.get("user");
 
-      /**
-       * Handle Re-authorization
-       */
-      router.get("/v1/auth").handler(authHandler).handler(rc -> {
-        rc.response().end(rc.user().principal().encode());
-      });
+      if (userObj != null) {
+        User user = (User) userObj;
+        rc.setUser(user);
+      }
 
-      /**
-       * Retrieve list of wires and meta data
-       */
-      router.get("/v1/wires").handler(authHandler).handler(rc -> {
-        JsonArray wires = new JsonArray();
+      rc.next();
+    });
 
-        redstone.wires().forEach(wire -> {
-          JsonObject wireDat = new JsonObject().put("id", wire.getId()).put("title", wire.getTitle()).put("active",
-              wire.active());
-          wires.add(wireDat);
-        });
+    /**
+     * Handle Login
+     */
+    router.get("/v1/login").handler(authHandler).handler(rc -> {
+      Session session = rc.session();
+      session.put("user", rc.user());
 
-        rc.response().end(wires.encode());
-      });
+      rc.response().end("ok");
+    });
 
+    /**
+     * Handle Logout
+     */
+    router.get("/v1/logout").handler(rc -> {
+      Session session = rc.session();
+      rc.clearUser();
+      session.put("user", null);
 
-      /**
-       * Retrieve wire data.
-       */
-      router.get("/v1/wires/:wireId").handler(rc -> {
-        String wireId = rc.request().getParam("wireId");
-        Wire wire = redstone.wire(wireId);
+      rc.response().end("ok");
+    });
 
-        if (wire != null) {
-          JsonObject wireDat = new JsonObject().put("id", wire.getId()).put("title", wire.getTitle()).put("active",
-              wire.active());
-          rc.response().end(wireDat.encode());
-          return;
-        }
+    /**
+     * Handle Re-authorization
+     */
+    router.get("/v1/auth").handler(authHandler).handler(rc -> {
+      rc.response().end(rc.user().principal().encode());
+    });
 
-        rc.response().setStatusCode(404).end();
-      });
+    /**
+     * Retrieve list of wires and meta data
+     */
+    WireResponses wireResponses = new WireResponses(redstone);
+    router.get("/v1/wires").handler(authHandler).handler(wireResponses::list);
+
+    /**
+     * Stream wire state changes as Server-Sent Events.
+     */
+    router.get("/v1/wires/stream").handler(authHandler).handler(new WireStream(vertx, server.wireFeed()));
+
+    /**
+     * Retrieve wire data.
+     */
+    router.get("/v1/wires/:wireId").handler(wireResponses::wire);
+
+    /**
+     * Activate a wire.
+     */
+    router.get("/v1/wires/:wireId/activate").handler(authHandler).handler(rc -> {
+      String wireId = rc.request().getParam("wireId");
+      Wire wire = redstone.wire(wireId);
+
+      if (wire != null) {
+        wire.activate();
+        rc.response().end("OK");
+        return;
+      }
+      rc.response().setStatusCode(404).end();
 
-      /**
-       * Activate a wire.
-       */
-      router.get("/v1/wires/:wireId/activate").handler(authHandler).handler(rc -> {
-        String wireId = rc.request().getParam("wireId");
-        Wire wire = redstone.wire(wireId);
+    });
 
-        if (wire != null) {
-          wire.activate();
-          rc.response().end("OK");
-          return;
-        }
-        rc.response().setStatusCode(404).end();
+    /**
+     * Disable a wire.
+     */
+    router.get("/v1/wires/:wireId/activate").handler(authHandler).handler(rc -> {
+      String wireId = rc.request().getParam("wireId");
+      Wire wire = redstone.wire(wireId);
 
-      });
+      if (wire != null) {
+        wire.activate();
+        rc.response().end("OK");
+        return;
+      }
+      rc.response().setStatusCode(404).end();
+    });
 
-      /**
-       * Disable a wire.
-       */
-      router.get("/v1/wires/:wireId/activate").handler(authHandler).handler(rc -> {
-        String wireId = rc.request().getParam("wireId");
-        Wire wire = redstone.wire(wireId);
+    /**
+     * Retrieve runtime statistics.
+     */
+    router.get("/v1/stats").handler(authHandler).handler(rc -> {
+      rc.response().putHeader("Content-Type", "application/json").end(redstone.stats().encode());
+    });
 
-        if (wire != null) {
-          wire.activate();
-          rc.response().end("OK");
+    /**
+     * Query and tail recent trip events.
+     */
+    router.get("/v1/events").handler(authHandler).handler(new EventsHandler(vertx, redstone.events()));
+
+    /**
+     * Reload the wires and users without restarting.
+     */
+    router.post("/v1/reload").handler(authHandler).handler(rc -> {
+      auth.reload(users -> {
+        if (users.failed()) {
+          rc.response().setStatusCode(500).end(users.cause().getMessage());
           return;
         }
-        rc.response().setStatusCode(404).end();
-      });
-
-      String tripKey = redstone.config().getString("trip_key", "redstone");
-
-      /**
-       * Trip a hook!
-       */
-      router.post("/v1/trip").handler(rc -> {
-        JsonObject body = rc.getBodyAsJson();
-
-        String tripHook = body.getString("hook", "hook");
-        String reqTripKey = body.getString("key", "error");
-
-        if (reqTripKey.equals(tripKey)) {
-          redstone.trip(tripHook);
-        }
-
-        rc.response().end("OK");
+        redstone.reload(rs -> {
+          if (rs.failed()) {
+            rc.response().setStatusCode(500).end(rs.cause().getMessage());
+            return;
+          }
+          rc.response().putHeader("Content-Type", "application/json").end(rs.result().encode());
+        });
       });
+    });
 
-      /**
-       * Serve the default React app.
-       */
-      router.get().handler(StaticHandler.create()).handler(ctx -> {
-        ctx.response().sendFile("webroot/index.html");
-      });
+    /**
+     * Serve the default React app.
+     */
+    router.get().handler(StaticHandler.create()).handler(ctx -> {
+      ctx.response().sendFile("webroot/index.html");
+    });
 
-      int http_port = redstone.config().getInteger("http_port", 8888);
+    int http_port = redstone.config().getInteger("http_port", 8888);
 
-      vertx.createHttpServer().requestHandler(router).listen(http_port, res -> {
-        if(res.failed()){
-          logger.fatal("Failed to start Redstone HTTP Server!", res.cause());
-          System.exit(0);
-          return;
-        }
-        logger.info("Redstone HTTP Server listening on port " + http_port + ".");
-      });
+    vertx.createHttpServer().requestHandler(router).listen(http_port, res -> {
+      if(res.failed()){
+        startPromise.fail(res.cause());
+        return;
+      }
+      logger.debug("Redstone HTTP Server instance listening on port " + http_port + ".");
+      startPromise.complete();
     });
   }
 }
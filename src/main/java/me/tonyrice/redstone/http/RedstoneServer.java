@@ -0,0 +1,185 @@
+package me.tonyrice.redstone.http;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.ext.web.handler.AuthHandler;
+import me.tonyrice.redstone.Redstone;
+import me.tonyrice.redstone.RedstoneVerticle;
+import me.tonyrice.redstone.http.auth.ReactHtdigestAuth;
+import me.tonyrice.redstone.http.auth.ReactHtdigestAuthHandler;
+import me.tonyrice.redstone.ingress.MqttTripServer;
+import me.tonyrice.redstone.ingress.TripSignatures;
+import me.tonyrice.redstone.ingress.UdpTripListener;
+import me.tonyrice.redstone.metrics.PrometheusWriter;
+
+/**
+ * Deploys Redstone and its HTTP API. The engine runs in a
+ * {@link RedstoneVerticle} of its own, and the API is served by one
+ * {@link HttpServer} instance per core sharing the port. Everything that must
+ * exist once, the users and their digest nonces, the trip handlers and their
+ * signature replay cache and the MQTT and UDP listeners, is set up here and
+ * shared with every instance.
+ */
+public class RedstoneServer extends AbstractVerticle {
+
+  public static void main(String[] args) {
+    Vertx vertx = Vertx.vertx();
+    vertx.deployVerticle(new RedstoneServer(), rs -> {
+      if (rs.failed()) {
+        System.exit(1);
+      }
+    });
+  }
+
+  private final Logger logger = LoggerFactory.getLogger(RedstoneServer.class);
+
+  private Redstone redstone;
+  private ReactHtdigestAuth auth;
+  private AuthHandler authHandler;
+  private TripHandler tripHandler;
+  private SignedTripHandler signedTripHandler;
+  private WireFeed wireFeed;
+  private MqttTripServer mqttServer;
+  private UdpTripListener udpListener;
+
+  @Override
+  public void start(Promise<Void> startPromise) {
+
+    logger.info("Initializing Redstone HTTP Server...");
+
+    vertx.deployVerticle(new RedstoneVerticle(), new DeploymentOptions().setConfig(config()), engine -> {
+
+      if (engine.failed()) {
+        logger.fatal("Failed to initialize Redstone", engine.cause());
+        startPromise.fail(engine.cause());
+        return;
+      }
+
+      redstone = RedstoneVerticle.engine(vertx);
+
+      /**
+       * A nonce issued by one instance must be accepted by all of them.
+       */
+      auth = new ReactHtdigestAuth(vertx, redstone.config().getString("http_auth", "httpauth"));
+      authHandler = ReactHtdigestAuthHandler.create(auth);
+
+      long watch = redstone.config().getLong("reload_watch_ms", (long) 0);
+      if (watch > 0) {
+        auth.watch(watch);
+      }
+
+      wireFeed = new WireFeed(redstone);
+
+      String tripKey = redstone.config().getString("trip_key", "redstone");
+      tripHandler = new TripHandler(redstone, tripKey);
+
+      /**
+       * Signed trips share one replay cache, whichever instance receives them.
+       */
+      String tripSecret = redstone.config().getString("trip_secret");
+      TripSignatures signatures = null;
+
+      if (tripSecret != null) {
+        signatures = new TripSignatures(tripSecret, redstone.config().getLong("trip_skew_ms", (long) 30000),
+          redstone.config().getInteger("trip_replay_size", 65536));
+        signedTripHandler = new SignedTripHandler(redstone, signatures);
+      }
+
+      /**
+       * Receive trips published by sensors over MQTT.
+       */
+      int mqttPort = redstone.config().getInteger("mqtt_port", 0);
+
+      if (mqttPort > 0) {
+        mqttServer = new MqttTripServer(vertx, redstone, tripKey,
+          redstone.config().getString("mqtt_topic", "redstone/trip/"));
+        mqttServer.listen(mqttPort, "0.0.0.0", res -> {
+          if (res.failed()) {
+            logger.error("Failed to start the Redstone MQTT endpoint!", res.cause());
+            return;
+          }
+          logger.info("Redstone MQTT endpoint listening on port " + mqttPort + ".");
+        });
+      }
+
+      /**
+       * Receive signed trips as single UDP datagrams.
+       */
+      int udpPort = redstone.config().getInteger("udp_port", 0);
+
+      if (udpPort > 0 && signatures == null) {
+        logger.error("Not listening for UDP trips, they require a trip secret.");
+      } else if (udpPort > 0) {
+        udpListener = new UdpTripListener(vertx, redstone, signatures);
+        udpListener.listen(udpPort, "0.0.0.0", res -> {
+          if (res.failed()) {
+            logger.error("Failed to listen for Redstone UDP trips!", res.cause());
+            return;
+          }
+          logger.info("Redstone listening for UDP trips on port " + udpPort + ".");
+        });
+      }
+
+      int instances = redstone.config().getInteger("http_instances", Runtime.getRuntime().availableProcessors());
+      int http_port = redstone.config().getInteger("http_port", 8888);
+
+      vertx.deployVerticle(() -> new HttpServer(this), new DeploymentOptions().setInstances(instances), res -> {
+        if (res.failed()) {
+          logger.fatal("Failed to start Redstone HTTP Server!", res.cause());
+          startPromise.fail(res.cause());
+          return;
+        }
+        logger.info("Redstone HTTP Server listening on port " + http_port + " with " + instances + " instances.");
+        startPromise.complete();
+      });
+    });
+  }
+
+  Redstone redstone() {
+    return redstone;
+  }
+
+  ReactHtdigestAuth auth() {
+    return auth;
+  }
+
+  AuthHandler authHandler() {
+    return authHandler;
+  }
+
+  TripHandler tripHandler() {
+    return tripHandler;
+  }
+
+  WireFeed wireFeed() {
+    return wireFeed;
+  }
+
+  /**
+   * Returns the handler of signed trips, or null without a trip secret.
+   */
+  SignedTripHandler signedTripHandler() {
+    return signedTripHandler;
+  }
+
+  /**
+   * Writes the metrics of the engine and of every way trips are received.
+   */
+  void metrics(PrometheusWriter writer) {
+    redstone.metrics(writer);
+    tripHandler.metrics(writer);
+    if (signedTripHandler != null) {
+      signedTripHandler.metrics(writer);
+    }
+    if (mqttServer != null) {
+      mqttServer.metrics(writer);
+    }
+    if (udpListener != null) {
+      udpListener.metrics(writer);
+    }
+  }
+}
@@ -0,0 +1,92 @@
+package me.tonyrice.redstone.http;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.vertx.core.Handler;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.ext.web.RoutingContext;
+import me.tonyrice.redstone.Redstone;
+import me.tonyrice.redstone.ingress.TripSignatures;
+import me.tonyrice.redstone.metrics.PrometheusWriter;
+
+/**
+ * Handles signed trips posted to /v1/trip/:hook. Nothing but the headers is
+ * read. A request carries its time in milliseconds in X-Redstone-Timestamp and
+ * the hex HMAC-SHA256 of "timestamp:hook" keyed with the trip secret in
+ * X-Redstone-Signature.
+ *
+ * Requests outside the allowed clock skew are rejected, and so is any signature
+ * already seen within it, so a captured request cannot be replayed.
+ */
+public class SignedTripHandler implements Handler<RoutingContext> {
+
+  private final Redstone redstone;
+  private final TripSignatures signatures;
+
+  private final LongAdder tripped = new LongAdder();
+  private final LongAdder ignored = new LongAdder();
+  private final LongAdder rejected = new LongAdder();
+  private final LongAdder replayed = new LongAdder();
+
+  public SignedTripHandler(Redstone redstone, TripSignatures signatures) {
+    this.redstone = redstone;
+    this.signatures = signatures;
+  }
+
+  @Override
+  public void handle(RoutingContext rc) {
+    HttpServerRequest request = rc.request();
+
+    String hook = request.getParam("hook");
+    String timestamp = request.getHeader("X-Redstone-Timestamp");
+    byte[] signature = TripSignatures.decode(request.getHeader("X-Redstone-Signature"));
+
+    long time;
+    try {
+      time = timestamp != null ? Long.parseLong(timestamp) : -1;
+    } catch (NumberFormatException e) {
+      time = -1;
+    }
+
+    if (hook == null || signature == null || time < 0) {
+      rejected.increment();
+      rc.response().setStatusCode(403).end();
+      return;
+    }
+
+    byte[] message = (timestamp + ":" + hook).getBytes(StandardCharsets.UTF_8);
+    int status = signatures.check(time, message, message.length, signature);
+
+    if (status == TripSignatures.REJECTED) {
+      rejected.increment();
+      rc.response().setStatusCode(403).end();
+      return;
+    }
+    if (status == TripSignatures.REPLAYED) {
+      replayed.increment();
+      rc.response().setStatusCode(409).end();
+      return;
+    }
+
+    if (redstone.handles(hook)) {
+      tripped.increment();
+    } else {
+      ignored.increment();
+    }
+    redstone.trip(hook);
+
+    rc.response().end("OK");
+  }
+
+  /**
+   * Writes the number of signed trips received by status.
+   */
+  public void metrics(PrometheusWriter writer) {
+    writer.type("redstone_http_signed_trips_total", "counter", "Signed trips received over HTTP by status.");
+    writer.sample("redstone_http_signed_trips_total", tripped.sum(), "status", "tripped");
+    writer.sample("redstone_http_signed_trips_total", ignored.sum(), "status", "ignored");
+    writer.sample("redstone_http_signed_trips_total", rejected.sum(), "status", "rejected");
+    writer.sample("redstone_http_signed_trips_total", replayed.sum(), "status", "replayed");
+  }
+}
@@ -0,0 +1,298 @@
+package me.tonyrice.redstone.http;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.parsetools.JsonEvent;
+import io.vertx.core.parsetools.JsonEventType;
+import io.vertx.core.parsetools.JsonParser;
+import io.vertx.ext.web.RoutingContext;
+import me.tonyrice.redstone.Redstone;
+import me.tonyrice.redstone.events.EventLog;
+import me.tonyrice.redstone.metrics.PrometheusWriter;
+
+/**
+ * Handles trips posted to /v1/trip. The body may be a single trip object, a JSON
+ * array of trips or a newline delimited stream of trips. Trips are parsed
+ * incrementally and handed to Redstone in the order they arrive.
+ *
+ * The trip key is checked once per request, either from the X-Trip-Key header,
+ * the key query parameter or the key of the first trip.
+ *
+ * With the wait query parameter the response is held back until the tripped
+ * hooks completed and carries the result of every wire that ran them.
+ *
+ * A trip may carry an event_id. A retried trip with the same id and hook is
+ * acknowledged as duplicate without running the hook again.
+ *
+ * Every trip is answered with the status Redstone returned for it: tripped,
+ * ignored, limited, dropped or duplicate, or invalid if it has no hook. Once
+ * trips were handed to Redstone, a malformed remainder of the body ends the
+ * results with an invalid entry rather than failing the request.
+ */
+public class TripHandler implements Handler<RoutingContext> {
+
+  private final Redstone redstone;
+  private final byte[] tripKey;
+
+  private final LongAdder tripped = new LongAdder();
+  private final LongAdder ignored = new LongAdder();
+  private final LongAdder limited = new LongAdder();
+  private final LongAdder dropped = new LongAdder();
+  private final LongAdder duplicate = new LongAdder();
+  private final LongAdder invalid = new LongAdder();
+  private final LongAdder rejected = new LongAdder();
+
+  public TripHandler(Redstone redstone, String tripKey) {
+    this.redstone = redstone;
+    this.tripKey = tripKey.getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public void handle(RoutingContext rc) {
+    HttpServerRequest request = rc.request();
+
+    String requestKey = request.getHeader("X-Trip-Key");
+    if (requestKey == null) {
+      requestKey = request.getParam("key");
+    }
+
+    if (requestKey != null && !matches(requestKey)) {
+      rejected.increment();
+      rc.response().setStatusCode(403).end();
+      return;
+    }
+
+    String contentType = request.getHeader("Content-Type");
+    boolean ndjson = contentType != null && contentType.startsWith("application/x-ndjson");
+
+    String wait = request.getParam("wait");
+    TripStream stream = new TripStream(request, rc.response(), requestKey != null, ndjson,
+        wait != null && !"false".equals(wait));
+
+    JsonParser parser = JsonParser.newParser(request).objectValueMode();
+    parser.handler(stream::handle);
+    parser.exceptionHandler(stream::fail);
+    parser.endHandler(v -> stream.end());
+  }
+
+  /**
+   * Writes the number of trips received over HTTP by status.
+   */
+  public void metrics(PrometheusWriter writer) {
+    writer.type("redstone_http_trips_total", "counter", "Trips received over HTTP by status.");
+    writer.sample("redstone_http_trips_total", tripped.sum(), "status", "tripped");
+    writer.sample("redstone_http_trips_total", ignored.sum(), "status", "ignored");
+    writer.sample("redstone_http_trips_total", limited.sum(), "status", "limited");
+    writer.sample("redstone_http_trips_total", dropped.sum(), "status", "dropped");
+    writer.sample("redstone_http_trips_total", duplicate.sum(), "status", "duplicate");
+    writer.sample("redstone_http_trips_total", invalid.sum(), "status", "invalid");
+    writer.sample("redstone_http_trips_total", rejected.sum(), "status", "rejected");
+  }
+
+  /**
+   * Compares a key with the trip key in constant time.
+   */
+  private boolean matches(Object key) {
+    return key instanceof String && MessageDigest.isEqual(((String) key).getBytes(StandardCharsets.UTF_8), tripKey);
+  }
+
+  /**
+   * The state of a single trip request.
+   */
+  private class TripStream {
+    private final HttpServerRequest request;
+    private final HttpServerResponse response;
+    private final boolean ndjson;
+    private final boolean wait;
+    private final Context context = Vertx.currentContext();
+    private final JsonArray results = new JsonArray();
+
+    private boolean authorized;
+    private boolean batch = false;
+    private boolean done = false;
+    private int count = 0;
+    private int pending = 0;
+
+    TripStream(HttpServerRequest request, HttpServerResponse response, boolean authorized, boolean ndjson,
+        boolean wait) {
+      this.request = request;
+      this.response = response;
+      this.authorized = authorized;
+      this.ndjson = ndjson;
+      this.wait = wait;
+
+      if (ndjson) {
+        response.setChunked(true).putHeader("Content-Type", "application/x-ndjson");
+      }
+    }
+
+    void handle(JsonEvent event) {
+      if (done) {
+        return;
+      }
+      if (event.type() == JsonEventType.START_ARRAY) {
+        batch = true;
+        return;
+      }
+      if (event.type() == JsonEventType.VALUE) {
+        trip(event.value());
+      }
+    }
+
+    void trip(Object value) {
+      JsonObject trip = value instanceof JsonObject ? (JsonObject) value : null;
+
+      if (!authorized) {
+        Object key = trip != null ? trip.getValue("key") : null;
+        if (!matches(key)) {
+          rejected.increment();
+          done = true;
+          response.setStatusCode(403).end();
+          return;
+        }
+        authorized = true;
+      }
+
+      Object hook = trip != null ? trip.getValue("hook") : null;
+      Object eventId = trip != null ? trip.getValue("event_id") : null;
+
+      if (++count > 1) {
+        batch = true;
+      }
+
+      JsonObject result = new JsonObject().put("hook", hook instanceof String ? hook : null);
+
+      if (!ndjson) {
+        results.add(result);
+      }
+
+      if (!(hook instanceof String)) {
+        invalid.increment();
+        write(result.put("status", "invalid"));
+        return;
+      }
+
+      Handler<AsyncResult<JsonArray>> completed = wait ? rs -> context.runOnContext(v -> completed(result, rs)) : null;
+
+      // Waiting trips complete on a later turn of this context.
+      String status = redstone.trip((String) hook, eventId instanceof String ? (String) eventId : null, completed);
+      result.put("status", status);
+
+      if (EventLog.DUPLICATE.equals(status)) {
+        duplicate.increment();
+        if (wait) {
+          result.put("results", new JsonArray());
+        }
+        write(result);
+        return;
+      }
+
+      if (EventLog.TRIPPED.equals(status)) {
+        tripped.increment();
+      } else if (EventLog.LIMITED.equals(status)) {
+        limited.increment();
+      } else if (EventLog.DROPPED.equals(status)) {
+        dropped.increment();
+      } else {
+        ignored.increment();
+      }
+
+      if (wait) {
+        pending++;
+      } else {
+        write(result);
+      }
+    }
+
+    /**
+     * Adds the results of the wires to the result of a trip once the hook
+     * completed.
+     */
+    private void completed(JsonObject result, AsyncResult<JsonArray> rs) {
+      pending--;
+      result.put("results", rs.succeeded() ? rs.result() : new JsonArray());
+      write(result);
+
+      if (done && pending == 0 && authorized && !response.ended()) {
+        finish();
+      }
+    }
+
+    private void write(JsonObject result) {
+      if (!ndjson || response.ended() || response.closed()) {
+        return;
+      }
+      response.write(result.encode() + "\n");
+      if (response.writeQueueFull()) {
+        request.pause();
+        response.drainHandler(v -> request.resume());
+      }
+    }
+
+    /**
+     * Answers a malformed body with a 400 unless trips were already handed to
+     * Redstone, which are answered along with an invalid entry.
+     */
+    void fail(Throwable cause) {
+      if (done) {
+        return;
+      }
+      done = true;
+      if (count == 0) {
+        response.setStatusCode(400).setChunked(false).end(cause.getMessage());
+        return;
+      }
+
+      invalid.increment();
+      batch = true;
+      JsonObject result = new JsonObject().putNull("hook").put("status", "invalid").put("error", cause.getMessage());
+      if (!ndjson) {
+        results.add(result);
+      }
+      write(result);
+
+      if (pending == 0) {
+        finish();
+      }
+    }
+
+    void end() {
+      if (done) {
+        return;
+      }
+      done = true;
+
+      if (!authorized) {
+        rejected.increment();
+        response.setStatusCode(403).setChunked(false).end();
+      } else if (pending == 0) {
+        finish();
+      }
+    }
+
+    private void finish() {
+      if (response.closed()) {
+        return;
+      }
+      if (ndjson) {
+        response.end();
+      } else if (!batch && count == 1 && !wait) {
+        response.end("OK");
+      } else if (!batch && count == 1) {
+        response.putHeader("Content-Type", "application/json").end(results.getJsonObject(0).encode());
+      } else {
+        response.putHeader("Content-Type", "application/json").end(results.encode());
+      }
+    }
+  }
+}
@@ -0,0 +1,68 @@
+package me.tonyrice.redstone.http;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import me.tonyrice.redstone.Redstone;
+
+/**
+ * Encodes the wire deltas of the engine once for every {@link WireStream}. The
+ * feed only listens to the engine while a stream has clients, and each delta is
+ * encoded to a single buffer handed to every such stream.
+ */
+final class WireFeed {
+
+  private final Redstone redstone;
+  private final Handler<JsonObject> listener = this::publish;
+  private final List<WireStream> streams = new CopyOnWriteArrayList<>();
+
+  WireFeed(Redstone redstone) {
+    this.redstone = redstone;
+  }
+
+  /**
+   * Starts feeding a stream that gained its first client.
+   */
+  synchronized void subscribe(WireStream stream) {
+    if (streams.isEmpty()) {
+      redstone.listen(listener);
+    }
+    streams.add(stream);
+  }
+
+  /**
+   * Stops feeding a stream that lost its last client.
+   */
+  synchronized void unsubscribe(WireStream stream) {
+    if (streams.remove(stream) && streams.isEmpty()) {
+      redstone.unlisten(listener);
+    }
+  }
+
+  /**
+   * Returns a "snapshot" event listing every wire.
+   */
+  Buffer snapshot() {
+    JsonArray wires = new JsonArray();
+    redstone.wires().forEach(wire -> {
+      wires.add(new JsonObject().put("id", wire.getId()).put("title", wire.getTitle())
+          .put("layer", wire.getLayer().getName()).put("active", wire.active()));
+    });
+    return event("snapshot", wires.encode());
+  }
+
+  private void publish(JsonObject delta) {
+    Buffer buffer = "reload".equals(delta.getString("type")) ? snapshot() : event("delta", delta.encode());
+    for (WireStream stream : streams) {
+      stream.publish(buffer);
+    }
+  }
+
+  private static Buffer event(String name, String data) {
+    return Buffer.buffer("event: " + name + "\ndata: " + data + "\n\n");
+  }
+}
@@ -0,0 +1,106 @@
+package me.tonyrice.redstone.http;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.RoutingContext;
+import me.tonyrice.redstone.Redstone;
+import me.tonyrice.redstone.Redstone.Wire;
+
+/**
+ * Serves /v1/wires and /v1/wires/:wireId from buffers encoded once per state
+ * version. Responses carry an ETag of the version, so clients revalidating with
+ * If-None-Match get a 304 until a wire is activated or deactivated or the wires
+ * are reloaded.
+ */
+public class WireResponses {
+
+  /**
+   * Sets ETags apart from those handed out before a restart, when versions
+   * count up from zero again.
+   */
+  private static final String EPOCH = Long.toString(System.currentTimeMillis(), 36);
+
+  private final Redstone redstone;
+
+  private volatile Snapshot snapshot;
+
+  public WireResponses(Redstone redstone) {
+    this.redstone = redstone;
+  }
+
+  /**
+   * Handles GET /v1/wires.
+   */
+  public void list(RoutingContext rc) {
+    Snapshot current = snapshot();
+    end(rc, current, current.list);
+  }
+
+  /**
+   * Handles GET /v1/wires/:wireId.
+   */
+  public void wire(RoutingContext rc) {
+    Snapshot current = snapshot();
+    Buffer body = current.wires.get(rc.request().getParam("wireId"));
+
+    if (body == null) {
+      rc.response().setStatusCode(404).end();
+      return;
+    }
+    end(rc, current, body);
+  }
+
+  private Snapshot snapshot() {
+    long version = redstone.version();
+    Snapshot current = snapshot;
+
+    if (current == null || current.version != version) {
+      current = new Snapshot(version, redstone);
+      snapshot = current;
+    }
+    return current;
+  }
+
+  private static void end(RoutingContext rc, Snapshot current, Buffer body) {
+    HttpServerResponse response = rc.response()
+        .putHeader("ETag", current.etag)
+        .putHeader("Cache-Control", "no-cache");
+
+    String match = rc.request().getHeader("If-None-Match");
+    if (match != null && match.contains(current.etag)) {
+      response.setStatusCode(304).end();
+      return;
+    }
+
+    response.putHeader("Content-Type", "application/json").end(body);
+  }
+
+  /**
+   * The encoded responses of one state version.
+   */
+  private static final class Snapshot {
+    final long version;
+    final String etag;
+    final Buffer list;
+    final Map<String, Buffer> wires = new HashMap<>();
+
+    Snapshot(long version, Redstone redstone) {
+      this.version = version;
+      this.etag = "\"" + EPOCH + "-" + version + "\"";
+
+      JsonArray list = new JsonArray();
+      for (Wire wire : redstone.wires()) {
+        JsonObject wireDat = new JsonObject().put("id", wire.getId()).put("title", wire.getTitle())
+            .put("layer", wire.getLayer().getName()).put("active", wire.active());
+        list.add(wireDat);
+        wires.put(wire.getId(), wireDat.toBuffer());
+      }
+      this.list = list.toBuffer();
+    }
+  }
+}
@@ -0,0 +1,133 @@
+package me.tonyrice.redstone.http;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.vertx.core.Context;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.ext.web.RoutingContext;
+
+/**
+ * Pushes wire state to the UI as Server-Sent Events. A client first receives a
+ * "snapshot" event listing every wire, followed by a "delta" event for every
+ * activation, deactivation and trip. Deltas are encoded once by the shared
+ * {@link WireFeed} and the same buffer is written to every client of every
+ * instance.
+ *
+ * A client whose connection cannot keep up stops receiving deltas until its
+ * write queue drains and is then sent a fresh snapshot instead, so slow clients
+ * never buffer an unbounded backlog.
+ *
+ * Comments are sent as heartbeats while the stream has clients, and a client
+ * whose connection fails is dropped.
+ */
+public class WireStream implements Handler<RoutingContext> {
+
+  private static final long HEARTBEAT_MS = 15000;
+  private static final Buffer HEARTBEAT = Buffer.buffer(":\n\n");
+
+  private final Vertx vertx;
+  private final WireFeed feed;
+  private final Context context;
+  private final long heartbeatMs;
+  private final List<Client> clients = new ArrayList<>();
+
+  private long heartbeat = -1;
+
+  WireStream(Vertx vertx, WireFeed feed) {
+    this(vertx, feed, HEARTBEAT_MS);
+  }
+
+  WireStream(Vertx vertx, WireFeed feed, long heartbeatMs) {
+    this.vertx = vertx;
+    this.feed = feed;
+    this.context = vertx.getOrCreateContext();
+    this.heartbeatMs = heartbeatMs;
+  }
+
+  @Override
+  public void handle(RoutingContext rc) {
+    HttpServerResponse response = rc.response()
+      .setChunked(true)
+      .putHeader("Content-Type", "text/event-stream")
+      .putHeader("Cache-Control", "no-cache")
+      .putHeader("X-Accel-Buffering", "no");
+
+    Client client = new Client(response);
+    clients.add(client);
+    if (clients.size() == 1) {
+      feed.subscribe(this);
+      heartbeat = vertx.setPeriodic(heartbeatMs, t -> broadcast(HEARTBEAT));
+    }
+    response.closeHandler(v -> drop(client));
+    response.exceptionHandler(e -> {
+      drop(client);
+      response.close();
+    });
+
+    client.send(feed.snapshot());
+  }
+
+  /**
+   * Returns the number of connected clients.
+   */
+  int clients() {
+    return clients.size();
+  }
+
+  private void drop(Client client) {
+    if (clients.remove(client) && clients.isEmpty()) {
+      feed.unsubscribe(this);
+      vertx.cancelTimer(heartbeat);
+      heartbeat = -1;
+    }
+  }
+
+  /**
+   * Writes an encoded event to every client, on the context of this stream.
+   */
+  void publish(Buffer buffer) {
+    if (Vertx.currentContext() != context) {
+      context.runOnContext(v -> publish(buffer));
+      return;
+    }
+    broadcast(buffer);
+  }
+
+  private void broadcast(Buffer buffer) {
+    for (int i = 0; i < clients.size(); i++) {
+      clients.get(i).send(buffer);
+    }
+  }
+
+  /**
+   * A connected client.
+   */
+  private class Client {
+    private final HttpServerResponse response;
+    private boolean lagging = false;
+
+    Client(HttpServerResponse response) {
+      this.response = response;
+    }
+
+    void send(Buffer buffer) {
+      if (lagging) {
+        return;
+      }
+
+      response.write(buffer);
+
+      if (response.writeQueueFull()) {
+        lagging = true;
+        response.drainHandler(v -> {
+          lagging = false;
+          send(feed.snapshot());
+        });
+      }
+    }
+  }
+}
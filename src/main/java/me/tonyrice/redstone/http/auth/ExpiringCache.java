@@ -0,0 +1,87 @@
+package me.tonyrice.redstone.http.auth;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A bounded cache expiring its entries in two generations. Entries are added to
+ * the current generation. Once the lifetime has passed or the generation is
+ * full, the previous generation is dropped as a whole and the current one takes
+ * its place, so expiring never walks the entries. An entry lives at least one
+ * lifetime, unless the cache fills up first, and about two at most.
+ */
+final class ExpiringCache<K, V> {
+
+    final private long lifetime;
+    final private int maxSize;
+
+    private volatile Map<K, V> current = new ConcurrentHashMap<>();
+    private volatile Map<K, V> previous = new ConcurrentHashMap<>();
+    private volatile long rotated = System.currentTimeMillis();
+
+    /**
+     * @param lifetime the lifetime of an entry in milliseconds
+     * @param maxSize  the number of entries kept at most
+     */
+    ExpiringCache(long lifetime, int maxSize) {
+        this.lifetime = lifetime;
+        this.maxSize = Math.max(2, maxSize);
+    }
+
+    V get(K key) {
+        expire();
+
+        V value = current.get(key);
+        return value != null ? value : previous.get(key);
+    }
+
+    void put(K key, V value) {
+        expire();
+
+        if (current.size() >= maxSize / 2) {
+            rotate();
+        }
+        current.put(key, value);
+    }
+
+    /**
+     * Returns the value of a key, adding a value if it has none.
+     */
+    V putIfAbsent(K key, V value) {
+        V existing = get(key);
+        if (existing != null) {
+            return existing;
+        }
+
+        if (current.size() >= maxSize / 2) {
+            rotate();
+        }
+        existing = current.putIfAbsent(key, value);
+        return existing != null ? existing : value;
+    }
+
+    void clear() {
+        synchronized (this) {
+            previous = new ConcurrentHashMap<>();
+            current = new ConcurrentHashMap<>();
+        }
+    }
+
+    private void expire() {
+        if (System.currentTimeMillis() - rotated >= lifetime) {
+            rotate();
+        }
+    }
+
+    private synchronized void rotate() {
+        long now = System.currentTimeMillis();
+        // Whoever rotates first lets the others off.
+        if (now - rotated < lifetime && current.size() < maxSize / 2) {
+            return;
+        }
+        // After a quiet spell the current generation may be past its lifetime too.
+        previous = now - rotated < lifetime * 2 ? current : new ConcurrentHashMap<>();
+        current = new ConcurrentHashMap<>();
+        rotated = now;
+    }
+}
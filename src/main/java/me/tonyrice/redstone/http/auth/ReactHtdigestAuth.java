@@ -1,29 +1,253 @@
 package me.tonyrice.redstone.http.auth;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
 import io.vertx.core.AsyncResult;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
 import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
 import io.vertx.ext.auth.User;
-import io.vertx.ext.auth.htdigest.impl.HtdigestAuthImpl;
+import io.vertx.ext.auth.htdigest.HtdigestAuth;
+import io.vertx.ext.auth.htdigest.impl.HtdigestUser;
 import io.vertx.ext.web.handler.impl.HttpStatusException;
 
-public class ReactHtdigestAuth extends HtdigestAuthImpl {
+/**
+ * Verifies digest credentials against an htdigest file. Every failure is
+ * answered with a 403 so browsers leave the login to the Redstone UI.
+ *
+ * Once credentials were verified, the parts of the digest that stay the same
+ * for a nonce are cached by the user, nonce, uri and client nonce, so later
+ * requests of the client, which only change the nonce count, cost a single MD5.
+ * The response is still checked on every request and nonce counts are checked
+ * by the handler. The file can be reloaded without a restart, which also
+ * empties the cache.
+ */
+public class ReactHtdigestAuth implements HtdigestAuth {
+
+    final private static ThreadLocal<MessageDigest> MD5 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    final private static char[] HEX = "0123456789abcdef".toCharArray();
+
+    final private Logger logger = LoggerFactory.getLogger(ReactHtdigestAuth.class);
+
+    final private Vertx vertx;
+    final private String htdigestFile;
+    final private ExpiringCache<String, Verified> verified;
+
+    private volatile Digests digests;
+    private long modified;
 
     public ReactHtdigestAuth(Vertx vertx, String htdigestFile) {
-        super(vertx, htdigestFile);
+        this(vertx, htdigestFile, 3600000, 1024);
+    }
+
+    /**
+     * @param cacheTime how long verified credentials are cached in milliseconds
+     * @param cacheSize the number of verified credentials cached at most
+     */
+    public ReactHtdigestAuth(Vertx vertx, String htdigestFile, long cacheTime, int cacheSize) {
+        this.vertx = vertx;
+        this.htdigestFile = htdigestFile;
+        this.verified = new ExpiringCache<>(cacheTime, cacheSize);
+        this.digests = parse(vertx.fileSystem().readFileBlocking(htdigestFile));
+    }
+
+    @Override
+    public String realm() {
+        return digests.realm;
+    }
+
+    /**
+     * Reads the htdigest file again and swaps the users in.
+     */
+    public void reload(Handler<AsyncResult<Void>> handler) {
+        vertx.fileSystem().readFile(htdigestFile, rs -> {
+            if (rs.failed()) {
+                handler.handle(Future.failedFuture(rs.cause()));
+                return;
+            }
+
+            try {
+                digests = parse(rs.result());
+            } catch (RuntimeException e) {
+                handler.handle(Future.failedFuture(e));
+                return;
+            }
+            verified.clear();
+
+            logger.info("Reloaded " + digests.users.size() + " users from \"" + htdigestFile + "\".");
+            handler.handle(Future.succeededFuture());
+        });
+    }
+
+    /**
+     * Reloads the htdigest file whenever it changes.
+     *
+     * @param interval how often the file is checked in milliseconds
+     */
+    public ReactHtdigestAuth watch(long interval) {
+        modified = vertx.fileSystem().propsBlocking(htdigestFile).lastModifiedTime();
+
+        vertx.setPeriodic(interval, t -> vertx.fileSystem().props(htdigestFile, rs -> {
+            if (rs.failed() || rs.result().lastModifiedTime() == modified) {
+                return;
+            }
+            modified = rs.result().lastModifiedTime();
+
+            reload(result -> {
+                if (result.failed()) {
+                    logger.error("Failed to reload \"" + htdigestFile + "\".", result.cause());
+                }
+            });
+        }));
+        return this;
     }
 
     @Override
     public void authenticate(JsonObject authInfo, Handler<AsyncResult<User>> handler) {
+        // Everything but the nonce count and the response, which change with every request.
+        String key = authInfo.getString("method") + ' ' + authInfo.getString("uri") + ' '
+                + authInfo.getString("username") + ' ' + authInfo.getString("realm") + ' '
+                + authInfo.getString("nonce") + ' ' + authInfo.getString("cnonce") + ' '
+                + authInfo.getString("qop") + ' ' + authInfo.getString("algorithm");
+
+        Verified cached = verified.get(key);
+        Digests current = digests;
+        Verified credentials = cached != null ? cached : prepare(current, authInfo);
+
+        if (credentials == null || !credentials.matches(authInfo)) {
+            handler.handle(Future.failedFuture(new HttpStatusException(403)));
+            return;
+        }
+        // Credentials verified against a file replaced meanwhile are not cached.
+        if (cached == null && current == digests) {
+            verified.put(key, credentials);
+        }
+
+        handler.handle(Future.succeededFuture(credentials.user));
+    }
+
+    /**
+     * Computes the parts of the expected response that do not depend on the
+     * nonce count.
+     *
+     * @return the parts, or null if the user, realm or qop is unknown
+     */
+    private static Verified prepare(Digests digests, JsonObject authInfo) {
+        String username = authInfo.getString("username");
+        String realm = authInfo.getString("realm");
+        String qop = authInfo.getString("qop");
+
+        String ha1 = username != null ? digests.users.get(username) : null;
+        if (ha1 == null || realm == null || !realm.equals(digests.realm)) {
+            return null;
+        }
+        if (qop != null && !"auth".equals(qop)) {
+            return null;
+        }
+
+        String nonce = authInfo.getString("nonce");
+        if ("MD5-sess".equals(authInfo.getString("algorithm"))) {
+            ha1 = md5(ha1 + ":" + nonce + ":" + authInfo.getString("cnonce"));
+        }
+        String ha2 = md5(authInfo.getString("method") + ":" + authInfo.getString("uri"));
+
+        if (qop == null) {
+            return new Verified(new HtdigestUser(username, realm), ha1 + ":" + nonce + ":", ha2, false);
+        }
+        return new Verified(new HtdigestUser(username, realm), ha1 + ":" + nonce + ":",
+                ":" + authInfo.getString("cnonce") + ":" + qop + ":" + ha2, true);
+    }
+
+    private static Digests parse(Buffer file) {
+        String realm = null;
+        Map<String, String> users = new HashMap<>();
+
+        for (String line : file.toString().split("\\r?\\n")) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] parts = line.split(":");
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("Malformed htdigest line for \"" + parts[0] + "\".");
+            }
+            if (realm == null) {
+                realm = parts[1];
+            } else if (!realm.equals(parts[1])) {
+                throw new IllegalArgumentException("Multiple realms in an htdigest file are not allowed.");
+            }
+            users.put(parts[0], parts[2]);
+        }
+
+        return new Digests(realm, users);
+    }
+
+    private static String md5(String payload) {
+        return hex(MD5.get().digest(payload.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    static String hex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+            hex[i * 2 + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * The user of verified credentials and the expected response around their
+     * nonce count.
+     */
+    private static final class Verified {
+        final User user;
+        final String prefix;
+        final String suffix;
+        final boolean counted;
+
+        Verified(User user, String prefix, String suffix, boolean counted) {
+            this.user = user;
+            this.prefix = prefix;
+            this.suffix = suffix;
+            this.counted = counted;
+        }
+
+        boolean matches(JsonObject authInfo) {
+            String response = authInfo.getString("response");
+            if (response == null) {
+                return false;
+            }
+            String digest = md5(counted ? prefix + authInfo.getString("nc") + suffix : prefix + suffix);
+            return MessageDigest.isEqual(digest.getBytes(StandardCharsets.US_ASCII),
+                    response.getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+
+    /**
+     * The realm and the HA1 of every user of an htdigest file.
+     */
+    private static final class Digests {
+        final String realm;
+        final Map<String, String> users;
 
-      super.authenticate(authInfo, rs -> {
-        if (rs.failed()) {
-          handler.handle(Future.failedFuture(new HttpStatusException(403)));
-        } else {
-          handler.handle(rs);
+        Digests(String realm, Map<String, String> users) {
+            this.realm = realm;
+            this.users = Collections.unmodifiableMap(users);
         }
-      });
     }
-}
\ No newline at end of file
+}
@@ -1,39 +1,284 @@
 package me.tonyrice.redstone.http.auth;
 
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
 import io.vertx.core.AsyncResult;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
 import io.vertx.core.json.JsonObject;
+import io.vertx.ext.auth.User;
 import io.vertx.ext.auth.htdigest.HtdigestAuth;
 import io.vertx.ext.web.RoutingContext;
+import io.vertx.ext.web.Session;
 import io.vertx.ext.web.handler.AuthHandler;
 import io.vertx.ext.web.handler.impl.DigestAuthHandlerImpl;
 import io.vertx.ext.web.handler.impl.HttpStatusException;
 
+/**
+ * A digest auth handler answering failures with a 403 and a fresh challenge, so
+ * browsers leave the login to the Redstone UI.
+ *
+ * Nonces carry their issue time and are signed with a key of this handler, so
+ * challenging a request stores nothing. Once a nonce is answered with valid
+ * credentials, the highest nonce count seen is kept in an {@link ExpiringCache}
+ * for at least the lifetime of the nonce, which rejects replayed requests using
+ * qop. The cache is bounded by time rather than size, since evicting the count
+ * of a nonce still valid would accept its requests again; only verified
+ * credentials add counts. The count only advances after the credentials were
+ * verified, so a forged request cannot lock the client holding the nonce out.
+ */
 public class ReactHtdigestAuthHandler extends DigestAuthHandlerImpl {
 
+    final private HtdigestAuth authProvider;
+    final private ExpiringCache<String, AtomicInteger> nonces;
+    final private long nonceLifetime;
+    final private SecureRandom random = new SecureRandom();
+    final private SecretKeySpec key;
+
     public static AuthHandler create(Vertx vertx, String filename) {
-        AuthHandler authHandler = new ReactHtdigestAuthHandler(new ReactHtdigestAuth(vertx, filename), 3600000);
+        return create(new ReactHtdigestAuth(vertx, filename));
+    }
+
+    public static AuthHandler create(ReactHtdigestAuth authProvider) {
+        AuthHandler authHandler = new ReactHtdigestAuthHandler(authProvider, 3600000);
         return authHandler;
     }
 
+    /**
+     * @param nonceExpireTimeout how long a nonce is valid at most in milliseconds.
+     *                           Nonces are valid for at least half of it.
+     */
     public ReactHtdigestAuthHandler(HtdigestAuth authProvider, long nonceExpireTimeout) {
-        super(authProvider, nonceExpireTimeout);
+        this(new Counting(authProvider, new ExpiringCache<>(nonceExpireTimeout / 2, Integer.MAX_VALUE)),
+                nonceExpireTimeout);
     }
 
+    private ReactHtdigestAuthHandler(Counting counting, long nonceExpireTimeout) {
+        super(counting, nonceExpireTimeout);
+        this.authProvider = counting.delegate;
+        this.nonces = counting.nonces;
+        this.nonceLifetime = nonceExpireTimeout / 2;
+
+        byte[] secret = new byte[32];
+        random.nextBytes(secret);
+        this.key = new SecretKeySpec(secret, "HmacSHA256");
+    }
 
     @Override
     public void parseCredentials(RoutingContext context, Handler<AsyncResult<JsonObject>> handler) {
+        JsonObject authInfo = credentials(context);
+
+        if (authInfo == null) {
+            context.response().putHeader("WWW-Authenticate", authenticateHeader(context));
+            handler.handle(Future.failedFuture(new HttpStatusException(403)));
+            return;
+        }
+
+        handler.handle(Future.succeededFuture(authInfo));
+    }
+
+    /**
+     * Parses the Authorization header and checks its nonce, nonce count and
+     * opaque value.
+     *
+     * @return the credentials, or null if they must be rejected
+     */
+    private JsonObject credentials(RoutingContext context) {
+        String authorization = context.request().getHeader("Authorization");
+
+        if (authorization == null || !authorization.regionMatches(true, 0, "Digest ", 0, 7)) {
+            return null;
+        }
+
+        JsonObject authInfo = parse(authorization, 7);
+        if (authInfo == null) {
+            return null;
+        }
+
+        String nonce = authInfo.getString("nonce");
+        if (!issued(nonce)) {
+            return null;
+        }
+
+        // The count is advanced by the provider once the credentials are verified.
+        if (authInfo.containsKey("qop")) {
+            int nc = count(authInfo);
+            AtomicInteger count = nonces.get(nonce);
+            if (nc <= 0 || count != null && nc <= count.get()) {
+                return null;
+            }
+        }
 
-      super.parseCredentials(context, rs -> {
-        if (rs.failed()) {
-          String authHeadher = super.authenticateHeader(context);
-          context.response().putHeader("WWW-Authenticate", authHeadher);
-          handler.handle(Future.failedFuture(new HttpStatusException(403)));
-        } else {
-          handler.handle(rs);
+        Session session = context.session();
+        if (session != null) {
+            String opaque = session.get("opaque");
+            if (opaque != null && !opaque.equals(authInfo.getString("opaque"))) {
+                return null;
+            }
         }
-      });
+
+        return authInfo.put("method", context.request().method().name());
+    }
+
+    @Override
+    protected String authenticateHeader(RoutingContext context) {
+        byte[] salt = new byte[8];
+        random.nextBytes(salt);
+        String issued = String.format("%016x", System.currentTimeMillis()) + ReactHtdigestAuth.hex(salt);
+        String nonce = issued + sign(issued);
+
+        byte[] bytes = new byte[16];
+
+        String opaque = null;
+        Session session = context.session();
+        if (session != null) {
+            opaque = session.get("opaque");
+        }
+        if (opaque == null) {
+            random.nextBytes(bytes);
+            opaque = ReactHtdigestAuth.hex(bytes);
+        }
+
+        return "Digest realm=\"" + authProvider.realm() + "\", qop=\"auth\", nonce=\"" + nonce + "\", opaque=\""
+                + opaque + "\"";
+    }
+
+    /**
+     * Returns true if a nonce was issued by this handler and did not expire yet.
+     */
+    private boolean issued(String nonce) {
+        if (nonce == null || nonce.length() != 64) {
+            return false;
+        }
+
+        String issued = nonce.substring(0, 32);
+        byte[] signature = nonce.substring(32).getBytes(StandardCharsets.US_ASCII);
+        if (!MessageDigest.isEqual(sign(issued).getBytes(StandardCharsets.US_ASCII), signature)) {
+            return false;
+        }
+
+        long age = System.currentTimeMillis() - Long.parseUnsignedLong(issued.substring(0, 16), 16);
+        return age >= 0 && age < nonceLifetime;
+    }
+
+    private String sign(String issued) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(key);
+            return ReactHtdigestAuth.hex(Arrays.copyOf(mac.doFinal(issued.getBytes(StandardCharsets.US_ASCII)), 16));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the nonce count of credentials using qop, or 0 if it is malformed.
+     */
+    private static int count(JsonObject authInfo) {
+        try {
+            return Integer.parseUnsignedInt(authInfo.getString("nc", ""), 16);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Verifies credentials with the users of a provider and only then advances
+     * the nonce count they answered.
+     */
+    private static final class Counting implements HtdigestAuth {
+        final private HtdigestAuth delegate;
+        final private ExpiringCache<String, AtomicInteger> nonces;
+
+        Counting(HtdigestAuth delegate, ExpiringCache<String, AtomicInteger> nonces) {
+            this.delegate = delegate;
+            this.nonces = nonces;
+        }
+
+        @Override
+        public String realm() {
+            return delegate.realm();
+        }
+
+        @Override
+        public void authenticate(JsonObject authInfo, Handler<AsyncResult<User>> handler) {
+            delegate.authenticate(authInfo, rs -> {
+                if (rs.succeeded() && authInfo.containsKey("qop") && !advance(authInfo)) {
+                    handler.handle(Future.failedFuture("The nonce count was already used."));
+                    return;
+                }
+                handler.handle(rs);
+            });
+        }
+
+        private boolean advance(JsonObject authInfo) {
+            int nc = count(authInfo);
+            AtomicInteger count = nonces.putIfAbsent(authInfo.getString("nonce"), new AtomicInteger());
+
+            int last;
+            do {
+                last = count.get();
+                if (nc <= last) {
+                    return false;
+                }
+            } while (!count.compareAndSet(last, nc));
+            return true;
+        }
+    }
+
+    /**
+     * Parses the comma separated, optionally quoted parameters of a header.
+     *
+     * @return the parameters, or null if the header is malformed
+     */
+    private static JsonObject parse(String header, int start) {
+        JsonObject params = new JsonObject();
+        int length = header.length();
+        int i = start;
+
+        while (i < length) {
+            while (i < length && (header.charAt(i) == ' ' || header.charAt(i) == ',')) {
+                i++;
+            }
+            if (i == length) {
+                break;
+            }
+
+            int equals = header.indexOf('=', i);
+            if (equals < 0) {
+                return null;
+            }
+            String name = header.substring(i, equals).trim();
+            i = equals + 1;
+
+            String value;
+            if (i < length && header.charAt(i) == '"') {
+                int end = header.indexOf('"', i + 1);
+                if (end < 0) {
+                    return null;
+                }
+                value = header.substring(i + 1, end);
+                i = end + 1;
+            } else {
+                int end = header.indexOf(',', i);
+                if (end < 0) {
+                    end = length;
+                }
+                value = header.substring(i, end).trim();
+                i = end;
+            }
+            params.put(name, value);
+        }
+
+        return params;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,123 @@
+package me.tonyrice.redstone.ingress;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.netty.handler.codec.mqtt.MqttConnectReturnCode;
+import io.netty.handler.codec.mqtt.MqttQoS;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.mqtt.MqttEndpoint;
+import io.vertx.mqtt.MqttServer;
+import io.vertx.mqtt.MqttServerOptions;
+import io.vertx.mqtt.MqttTopicSubscription;
+import io.vertx.mqtt.messages.MqttPublishMessage;
+import me.tonyrice.redstone.Redstone;
+import me.tonyrice.redstone.metrics.PrometheusWriter;
+
+/**
+ * An MQTT endpoint sensors publish trips to. A message published to the topic
+ * prefix followed by a hook id, e.g. redstone/trip/opened, trips that hook; the
+ * payload is ignored. Clients authenticate with the trip key as password when
+ * connecting and stay connected, so a trip costs a single small packet.
+ *
+ * Nothing is ever delivered to clients, so subscriptions are refused.
+ */
+public class MqttTripServer {
+
+    final private Logger logger = LoggerFactory.getLogger(MqttTripServer.class);
+
+    final private Redstone redstone;
+    final private byte[] tripKey;
+    final private String prefix;
+    final private MqttServer server;
+
+    final private LongAdder tripped = new LongAdder();
+    final private LongAdder ignored = new LongAdder();
+    final private LongAdder invalid = new LongAdder();
+    final private LongAdder rejected = new LongAdder();
+
+    /**
+     * @param prefix the topic prefix of trips, e.g. redstone/trip/
+     */
+    public MqttTripServer(Vertx vertx, Redstone redstone, String tripKey, String prefix) {
+        this.redstone = redstone;
+        this.tripKey = tripKey.getBytes(StandardCharsets.UTF_8);
+        this.prefix = prefix;
+        this.server = MqttServer.create(vertx, new MqttServerOptions());
+    }
+
+    public void listen(int port, String host, Handler<AsyncResult<Void>> handler) {
+        server.endpointHandler(this::connect).listen(port, host, rs -> {
+            handler.handle(rs.succeeded() ? Future.succeededFuture() : Future.failedFuture(rs.cause()));
+        });
+    }
+
+    private void connect(MqttEndpoint endpoint) {
+        String password = endpoint.auth() != null ? endpoint.auth().getPassword() : null;
+
+        if (password == null || !MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8), tripKey)) {
+            rejected.increment();
+            endpoint.reject(MqttConnectReturnCode.CONNECTION_REFUSED_BAD_USER_NAME_OR_PASSWORD);
+            return;
+        }
+
+        endpoint.publishHandler(message -> publish(endpoint, message));
+        endpoint.publishReleaseHandler(endpoint::publishComplete);
+
+        endpoint.subscribeHandler(subscribe -> {
+            List<MqttQoS> granted = new ArrayList<>();
+            for (MqttTopicSubscription subscription : subscribe.topicSubscriptions()) {
+                granted.add(MqttQoS.FAILURE);
+            }
+            endpoint.subscribeAcknowledge(subscribe.messageId(), granted);
+        });
+        endpoint.unsubscribeHandler(unsubscribe -> endpoint.unsubscribeAcknowledge(unsubscribe.messageId()));
+
+        endpoint.exceptionHandler(e -> logger.debug("MQTT client \"" + endpoint.clientIdentifier() + "\" failed: "
+                + e.getMessage()));
+
+        endpoint.accept(false);
+    }
+
+    private void publish(MqttEndpoint endpoint, MqttPublishMessage message) {
+        String topic = message.topicName();
+
+        if (topic.length() > prefix.length() && topic.startsWith(prefix)) {
+            String hook = topic.substring(prefix.length());
+            if (redstone.handles(hook)) {
+                tripped.increment();
+            } else {
+                ignored.increment();
+            }
+            redstone.trip(hook);
+        } else {
+            invalid.increment();
+        }
+
+        if (message.qosLevel() == MqttQoS.AT_LEAST_ONCE) {
+            endpoint.publishAcknowledge(message.messageId());
+        } else if (message.qosLevel() == MqttQoS.EXACTLY_ONCE) {
+            endpoint.publishReceived(message.messageId());
+        }
+    }
+
+    /**
+     * Writes the number of trips received over MQTT by status.
+     */
+    public void metrics(PrometheusWriter writer) {
+        writer.type("redstone_mqtt_trips_total", "counter",
+                "Trips received over MQTT by status, with refused connections as rejected.");
+        writer.sample("redstone_mqtt_trips_total", tripped.sum(), "status", "tripped");
+        writer.sample("redstone_mqtt_trips_total", ignored.sum(), "status", "ignored");
+        writer.sample("redstone_mqtt_trips_total", invalid.sum(), "status", "invalid");
+        writer.sample("redstone_mqtt_trips_total", rejected.sum(), "status", "rejected");
+    }
+}
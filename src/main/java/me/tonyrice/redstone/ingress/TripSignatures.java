@@ -0,0 +1,166 @@
+package me.tonyrice.redstone.ingress;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Verifies signed trips. A signed trip carries its time in milliseconds and the
+ * HMAC-SHA256 of "timestamp:hook" keyed with the trip secret.
+ *
+ * Trips outside the allowed clock skew are rejected, and so is any signature
+ * already seen within it, so a captured trip cannot be replayed. Signatures are
+ * remembered across every ingress sharing an instance.
+ */
+public final class TripSignatures {
+
+    public static final int OK = 0;
+    public static final int REJECTED = 1;
+    public static final int REPLAYED = 2;
+
+    public static final int SIGNATURE_LENGTH = 32;
+
+    final private static String ALGORITHM = "HmacSHA256";
+
+    final private long skew;
+    final private ThreadLocal<Mac> macs;
+    final private SignatureCache seen;
+
+    /**
+     * @param secret     the shared secret of the signatures
+     * @param skew       how far in milliseconds a timestamp may be off the server
+     *                   clock
+     * @param replaySize how many signatures are remembered to reject replays
+     */
+    public TripSignatures(String secret, long skew, int replaySize) {
+        this.skew = skew;
+        this.seen = new SignatureCache(replaySize);
+
+        SecretKeySpec key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+        this.macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance(ALGORITHM);
+                mac.init(key);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        macs.get();
+    }
+
+    /**
+     * Checks a signed trip.
+     *
+     * @param time      the time of the trip in milliseconds
+     * @param message   the signed bytes, i.e. "timestamp:hook" in UTF-8
+     * @param length    the number of signed bytes at the start of message
+     * @param signature the signature of the trip
+     * @return {@link #OK}, {@link #REJECTED} or {@link #REPLAYED}
+     */
+    public int check(long time, byte[] message, int length, byte[] signature) {
+        long now = System.currentTimeMillis();
+        if (time < 0 || Math.abs(now - time) > skew) {
+            return REJECTED;
+        }
+
+        Mac mac = macs.get();
+        mac.update(message, 0, length);
+        if (!MessageDigest.isEqual(mac.doFinal(), signature)) {
+            return REJECTED;
+        }
+
+        return seen.add(signature, now, time + skew) ? OK : REPLAYED;
+    }
+
+    /**
+     * Decodes a hex signature.
+     *
+     * @return the signature, or null if it is malformed
+     */
+    public static byte[] decode(String hex) {
+        return hex != null ? decode(hex.getBytes(StandardCharsets.US_ASCII), 0, hex.length()) : null;
+    }
+
+    /**
+     * Decodes a hex signature from a range of ASCII bytes.
+     *
+     * @return the signature, or null if it is malformed
+     */
+    public static byte[] decode(byte[] hex, int start, int end) {
+        if (end - start != SIGNATURE_LENGTH * 2) {
+            return null;
+        }
+
+        byte[] bytes = new byte[SIGNATURE_LENGTH];
+        for (int i = 0; i < bytes.length; i++) {
+            int high = Character.digit(hex[start + i * 2], 16);
+            int low = Character.digit(hex[start + i * 2 + 1], 16);
+            if (high < 0 || low < 0) {
+                return null;
+            }
+            bytes[i] = (byte) (high << 4 | low);
+        }
+        return bytes;
+    }
+
+    /**
+     * A fixed size open addressing table of the signatures accepted within the
+     * skew window. Signatures are HMACs, so their leading bytes hash well enough
+     * on their own. Once a neighbourhood is full of live signatures further
+     * trips are refused as replays rather than let through unchecked.
+     */
+    private static final class SignatureCache {
+
+        final private static int MAX_PROBE = 16;
+
+        final private byte[][] signatures;
+        final private long[] expires;
+        final private int mask;
+
+        SignatureCache(int capacity) {
+            int size = 16;
+            while (size < capacity) {
+                size <<= 1;
+            }
+            this.signatures = new byte[size][];
+            this.expires = new long[size];
+            this.mask = size - 1;
+        }
+
+        /**
+         * @return true if the signature was not seen before and is now recorded
+         */
+        synchronized boolean add(byte[] signature, long now, long expiry) {
+            int free = -1;
+            int index = (signature[0] & 0xff | (signature[1] & 0xff) << 8 | (signature[2] & 0xff) << 16) & mask;
+
+            for (int i = 0; i < MAX_PROBE; i++, index = (index + 1) & mask) {
+                byte[] slot = signatures[index];
+
+                if (slot == null) {
+                    if (free < 0) {
+                        free = index;
+                    }
+                    break;
+                }
+                if (now < expires[index] && MessageDigest.isEqual(slot, signature)) {
+                    return false;
+                }
+                if (free < 0 && now >= expires[index]) {
+                    free = index;
+                }
+            }
+
+            if (free < 0) {
+                return false;
+            }
+            signatures[free] = signature;
+            expires[free] = expiry;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package me.tonyrice.redstone.ingress;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.datagram.DatagramPacket;
+import io.vertx.core.datagram.DatagramSocket;
+import io.vertx.core.datagram.DatagramSocketOptions;
+import me.tonyrice.redstone.Redstone;
+import me.tonyrice.redstone.metrics.PrometheusWriter;
+
+/**
+ * Receives signed trips as single UDP datagrams, so a sensor can report an event
+ * in one packet without a connection. A datagram is the ASCII text
+ * "timestamp:hook:signature", signed like a trip posted to /v1/trip/:hook. No
+ * reply is sent.
+ */
+public class UdpTripListener {
+
+    final private Redstone redstone;
+    final private TripSignatures signatures;
+    final private DatagramSocket socket;
+
+    final private LongAdder tripped = new LongAdder();
+    final private LongAdder ignored = new LongAdder();
+    final private LongAdder invalid = new LongAdder();
+    final private LongAdder rejected = new LongAdder();
+    final private LongAdder replayed = new LongAdder();
+
+    public UdpTripListener(Vertx vertx, Redstone redstone, TripSignatures signatures) {
+        this.redstone = redstone;
+        this.signatures = signatures;
+        this.socket = vertx.createDatagramSocket(new DatagramSocketOptions());
+    }
+
+    public void listen(int port, String host, Handler<AsyncResult<Void>> handler) {
+        socket.handler(this::handle).listen(port, host, rs -> {
+            handler.handle(rs.succeeded() ? Future.succeededFuture() : Future.failedFuture(rs.cause()));
+        });
+    }
+
+    private void handle(DatagramPacket packet) {
+        byte[] data = packet.data().getBytes();
+
+        int length = data.length;
+        while (length > 0 && (data[length - 1] == '\n' || data[length - 1] == '\r')) {
+            length--;
+        }
+
+        int first = indexOf(data, length);
+        int last = lastIndexOf(data, length);
+        if (first < 1 || last <= first + 1) {
+            invalid.increment();
+            return;
+        }
+
+        long time = 0;
+        for (int i = 0; i < first; i++) {
+            int digit = data[i] - '0';
+            if (digit < 0 || digit > 9 || i >= 18) {
+                invalid.increment();
+                return;
+            }
+            time = time * 10 + digit;
+        }
+
+        byte[] signature = TripSignatures.decode(data, last + 1, length);
+        if (signature == null) {
+            invalid.increment();
+            return;
+        }
+
+        int status = signatures.check(time, data, last, signature);
+        if (status == TripSignatures.REJECTED) {
+            rejected.increment();
+            return;
+        }
+        if (status == TripSignatures.REPLAYED) {
+            replayed.increment();
+            return;
+        }
+
+        String hook = new String(data, first + 1, last - first - 1, StandardCharsets.UTF_8);
+        if (redstone.handles(hook)) {
+            tripped.increment();
+        } else {
+            ignored.increment();
+        }
+        redstone.trip(hook);
+    }
+
+    /**
+     * Writes the number of trips received over UDP by status.
+     */
+    public void metrics(PrometheusWriter writer) {
+        writer.type("redstone_udp_trips_total", "counter", "Trips received over UDP by status.");
+        writer.sample("redstone_udp_trips_total", tripped.sum(), "status", "tripped");
+        writer.sample("redstone_udp_trips_total", ignored.sum(), "status", "ignored");
+        writer.sample("redstone_udp_trips_total", invalid.sum(), "status", "invalid");
+        writer.sample("redstone_udp_trips_total", rejected.sum(), "status", "rejected");
+        writer.sample("redstone_udp_trips_total", replayed.sum(), "status", "replayed");
+    }
+
+    private static int indexOf(byte[] data, int length) {
+        for (int i = 0; i < length; i++) {
+            if (data[i] == ':') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int lastIndexOf(byte[] data, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (data[i] == ':') {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,719 @@
+package me.tonyrice.redstone.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+/**
+ * A write-ahead journal of the runtime state that would otherwise be lost on a
+ * restart: the active wire of every layer, whether its activation completed, the
+ * trips queued while it activates and every armed timer, repeat and schedule.
+ *
+ * Records are appended to a memory-mapped file, so appending is a plain memory
+ * copy and survives a crash of the process. The file is forced to disk in the
+ * background at most once per commit interval. Each record is laid out as
+ * [length][crc32][type][payload], with the length written last so a torn record
+ * ends the replay.
+ *
+ * The journal is compacted into a snapshot of the live state on open and by the
+ * background commit once it is half full, so the other half is the headroom of
+ * appends. While a compaction writes the new file, appends go to the old file
+ * and to a pending buffer copied behind the snapshot once it is done. Appending
+ * never waits for I/O: a record that does not fit is dropped from the file and
+ * the next commit compacts it back in from the live state.
+ */
+public class Journal {
+    final private static Logger logger = LoggerFactory.getLogger(Journal.class);
+
+    final private static byte ACTIVATE = 1;
+    final private static byte ACTIVATED = 2;
+    final private static byte DEACTIVATE = 3;
+    final private static byte TIMER_ARM = 5;
+    final private static byte TIMER_FIRE = 6;
+    final private static byte HOOK_CANCEL = 7;
+    final private static byte WIRE_TRIP_QUEUED = 8;
+
+    final private static int HEADER = 8;
+
+    /**
+     * The kind of a journaled timer.
+     */
+    public static final int DELAY = 0;
+    public static final int TIMER = 1;
+    public static final int REPEAT = 2;
+    public static final int SCHEDULE = 3;
+
+    final private static Journal DISABLED = new Journal();
+
+    final private Path path;
+    final private Map<String, byte[]> strings = new HashMap<>();
+    final private CRC32 crc = new CRC32();
+
+    final private State state = new State();
+    final private AtomicBoolean committing = new AtomicBoolean();
+
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private long nextKey = 1;
+    private boolean dirty = false;
+
+    /**
+     * True if a record did not fit, so the next commit compacts right away.
+     */
+    private boolean overflowed = false;
+
+    /**
+     * The records appended while a compaction writes the new file, or null.
+     */
+    private ByteBuffer pending;
+
+    private Journal() {
+        this.path = null;
+    }
+
+    private Journal(Path path, int capacity) {
+        this.path = path;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Opens the journal configured by the "journal" variable, replaying and
+     * compacting any existing file, or returns a disabled journal if none is
+     * configured. Must not be called on an event loop.
+     *
+     * @param vertx the Vert.x instance driving the commit timer
+     * @param config the configuration variables
+     */
+    public static Journal open(Vertx vertx, JsonObject config) throws IOException {
+        String file = config.getString("journal");
+        if (file == null || file.isEmpty()) {
+            return DISABLED;
+        }
+
+        Journal journal = new Journal(Paths.get(file), Math.max(4096, config.getInteger("journal_size", 4 << 20)));
+        journal.replay();
+        journal.compact(journal.state.copy());
+
+        long commit = Math.max(1, config.getLong("journal_commit_ms", (long) 50));
+        vertx.setPeriodic(commit, t -> {
+            if (journal.needsCommit() && journal.committing.compareAndSet(false, true)) {
+                vertx.executeBlocking(event -> {
+                    try {
+                        journal.commit();
+                    } finally {
+                        journal.committing.set(false);
+                    }
+                    event.complete();
+                }, false, null);
+            }
+        });
+
+        logger.info("Opened journal \"" + file + "\".");
+        return journal;
+    }
+
+    public boolean enabled() {
+        return path != null;
+    }
+
+    /**
+     * Returns the state replayed from the journal. Only meaningful right after
+     * {@link #open}.
+     */
+    public State state() {
+        return state;
+    }
+
+    public void activate(String wireId) {
+        if (path == null) {
+            return;
+        }
+        synchronized (this) {
+            append(ACTIVATE, wireId, null, 0, 0, 0, 0, 0);
+        }
+    }
+
+    public void activated(String wireId) {
+        if (path == null) {
+            return;
+        }
+        synchronized (this) {
+            append(ACTIVATED, wireId, null, 0, 0, 0, 0, 0);
+        }
+    }
+
+    public void deactivate(String wireId) {
+        if (path == null) {
+            return;
+        }
+        synchronized (this) {
+            append(DEACTIVATE, wireId, null, 0, 0, 0, 0, 0);
+        }
+    }
+
+    public void tripQueued(String wireId, String hookId) {
+        if (path == null) {
+            return;
+        }
+        synchronized (this) {
+            append(WIRE_TRIP_QUEUED, wireId, hookId, 0, 0, 0, 0, 0);
+        }
+    }
+
+    /**
+     * Records an armed timer.
+     *
+     * @param kind one of {@link #DELAY}, {@link #TIMER}, {@link #REPEAT} or
+     *             {@link #SCHEDULE}
+     * @param slot the slot of the armed plan or action within the hook plan
+     * @param deadline the first fire time in epoch milliseconds, or 0 for schedules
+     * @param period the period of repeats in milliseconds, otherwise 0
+     * @return the key of the timer, or 0 if the journal is disabled
+     */
+    public long armTimer(String wireId, String hookId, int kind, int slot, long deadline, long period) {
+        if (path == null) {
+            return 0;
+        }
+        synchronized (this) {
+            long key = nextKey++;
+            append(TIMER_ARM, wireId, hookId, key, kind, slot, deadline, period);
+            return key;
+        }
+    }
+
+    /**
+     * Records that a one-shot timer fired.
+     */
+    public void timerFired(long key) {
+        if (path == null || key == 0) {
+            return;
+        }
+        synchronized (this) {
+            append(TIMER_FIRE, null, null, key, 0, 0, 0, 0);
+        }
+    }
+
+    /**
+     * Records that every timer of a hook was cancelled.
+     */
+    public void hookCancelled(String wireId, String hookId) {
+        if (path == null) {
+            return;
+        }
+        synchronized (this) {
+            if (!state.armed(wireId, hookId)) {
+                return;
+            }
+            append(HOOK_CANCEL, wireId, hookId, 0, 0, 0, 0, 0);
+        }
+    }
+
+    private synchronized boolean needsCommit() {
+        return dirty || overflowed || buffer.position() > capacity / 2;
+    }
+
+    /**
+     * Forces appended records to disk, compacting the journal once it is more than
+     * half full or a record did not fit. Only the state is copied while holding
+     * the lock, appends continue while the file is forced or rewritten.
+     */
+    private void commit() {
+        MappedByteBuffer target;
+        State live = null;
+
+        synchronized (this) {
+            if (overflowed || buffer.position() > capacity / 2) {
+                live = state.copy();
+                pending = ByteBuffer.allocate(capacity / 2);
+                overflowed = false;
+            }
+            target = buffer;
+            dirty = false;
+        }
+
+        try {
+            if (live != null) {
+                compact(live);
+            } else {
+                target.force();
+            }
+        } catch (IOException e) {
+            logger.error("Failed to commit journal \"" + path + "\".", e);
+            synchronized (this) {
+                // Records only written to the pending buffer are in the live state.
+                if (pending != null && pending.position() > 0) {
+                    overflowed = true;
+                }
+                pending = null;
+                dirty = true;
+            }
+        }
+    }
+
+    private void append(byte type, String a, String b, long key, int kind, int slot, long deadline, long period) {
+        byte[] first = a != null ? bytes(a) : null;
+        byte[] second = b != null ? bytes(b) : null;
+
+        boolean written = write(buffer, crc, type, first, second, key, kind, slot, deadline, period);
+        if (pending != null) {
+            written = write(pending, crc, type, first, second, key, kind, slot, deadline, period);
+        }
+
+        if (!written) {
+            if (!overflowed) {
+                logger.error("Journal \"" + path + "\" is full, dropping records until the next commit.");
+            }
+            overflowed = true;
+        }
+        dirty = true;
+        apply(type, a, b, key, kind, slot, deadline, period);
+    }
+
+    /**
+     * Writes a record to a buffer.
+     *
+     * @return false if the record does not fit
+     */
+    private static boolean write(ByteBuffer buffer, CRC32 crc, byte type, byte[] first, byte[] second, long key,
+            int kind, int slot, long deadline, long period) {
+        int size = 1 + (first != null ? 2 + first.length : 0) + (second != null ? 2 + second.length : 0)
+                + (type == TIMER_ARM ? 32 : type == TIMER_FIRE ? 8 : 0);
+
+        if (buffer.remaining() < HEADER + size + 4) {
+            return false;
+        }
+
+        int start = buffer.position();
+        buffer.position(start + HEADER);
+        buffer.put(type);
+        if (first != null) {
+            buffer.putShort((short) first.length).put(first);
+        }
+        if (second != null) {
+            buffer.putShort((short) second.length).put(second);
+        }
+        if (type == TIMER_ARM) {
+            buffer.putLong(key).putInt(kind).putInt(slot).putLong(deadline).putLong(period);
+        } else if (type == TIMER_FIRE) {
+            buffer.putLong(key);
+        }
+        int end = buffer.position();
+
+        ByteBuffer record = buffer.duplicate();
+        record.position(start + HEADER).limit(end);
+        crc.reset();
+        crc.update(record);
+
+        // Terminate the log before publishing the length of this record.
+        buffer.putInt(end, 0);
+        buffer.putInt(start + 4, (int) crc.getValue());
+        buffer.putInt(start, size);
+        buffer.position(end);
+        return true;
+    }
+
+    private void apply(byte type, String a, String b, long key, int kind, int slot, long deadline, long period) {
+        switch (type) {
+        case ACTIVATE:
+            state.active.remove(a);
+            state.active.put(a, new Active());
+            break;
+        case ACTIVATED:
+            Active activated = state.active.get(a);
+            if (activated != null) {
+                activated.activated = true;
+                activated.queued.clear();
+            }
+            break;
+        case DEACTIVATE:
+            state.active.remove(a);
+            state.cancel(a);
+            break;
+        case WIRE_TRIP_QUEUED:
+            Active queued = state.active.get(a);
+            if (queued != null) {
+                queued.queued.add(b);
+            }
+            break;
+        case TIMER_ARM:
+            state.arm(new Timer(key, a, b, kind, slot, deadline, period));
+            nextKey = Math.max(nextKey, key + 1);
+            break;
+        case TIMER_FIRE:
+            state.fired(key);
+            break;
+        case HOOK_CANCEL:
+            state.cancel(a, b);
+            break;
+        }
+    }
+
+    private void replay() throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer log = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            int records = 0;
+
+            while (log.remaining() >= HEADER) {
+                int start = log.position();
+                int size = log.getInt();
+                int checksum = log.getInt();
+                if (size <= 0 || size > log.remaining()) {
+                    break;
+                }
+
+                ByteBuffer record = log.duplicate();
+                record.limit(start + HEADER + size);
+                crc.reset();
+                crc.update(record);
+                if ((int) crc.getValue() != checksum) {
+                    logger.warn("Journal \"" + path + "\" ends with a torn record.");
+                    break;
+                }
+
+                byte type = log.get();
+                String a = null;
+                String b = null;
+                long key = 0;
+                int kind = 0;
+                int slot = 0;
+                long deadline = 0;
+                long period = 0;
+
+                if (type != TIMER_FIRE) {
+                    a = string(log);
+                }
+                if (type == TIMER_ARM || type == HOOK_CANCEL || type == WIRE_TRIP_QUEUED) {
+                    b = string(log);
+                }
+                if (type == TIMER_ARM) {
+                    key = log.getLong();
+                    kind = log.getInt();
+                    slot = log.getInt();
+                    deadline = log.getLong();
+                    period = log.getLong();
+                } else if (type == TIMER_FIRE) {
+                    key = log.getLong();
+                }
+
+                apply(type, a, b, key, kind, slot, deadline, period);
+                log.position(start + HEADER + size);
+                records++;
+            }
+
+            logger.info("Replayed " + records + " journal records from \"" + path + "\".");
+        }
+    }
+
+    /**
+     * Rewrites the journal as a snapshot of the live state and atomically replaces
+     * the old file with it. Records appended meanwhile are copied from the pending
+     * buffer behind the snapshot before the new file takes over.
+     */
+    private void compact(State live) throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        CRC32 checksum = new CRC32();
+
+        int size;
+        synchronized (this) {
+            size = capacity;
+        }
+
+        FileChannel out;
+        MappedByteBuffer target;
+        while (true) {
+            Files.deleteIfExists(tmp);
+            out = FileChannel.open(tmp, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            target = out.map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+            if (snapshot(live, target, checksum) && target.position() <= size / 2) {
+                break;
+            }
+            out.close();
+            size *= 2;
+        }
+
+        target.force();
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        FileChannel old;
+        synchronized (this) {
+            if (pending != null) {
+                pending.flip();
+                if (target.remaining() >= pending.remaining() + 4) {
+                    dirty = pending.hasRemaining();
+                    target.put(pending);
+                    target.putInt(target.position(), 0);
+                } else {
+                    overflowed = true;
+                }
+                pending = null;
+            }
+            old = channel;
+            channel = out;
+            buffer = target;
+            capacity = size;
+        }
+
+        if (old != null) {
+            old.close();
+        }
+    }
+
+    /**
+     * Writes the records restoring a state.
+     *
+     * @return false if they do not fit
+     */
+    private static boolean snapshot(State live, ByteBuffer target, CRC32 checksum) {
+        for (Map.Entry<String, Active> active : live.active.entrySet()) {
+            byte[] wireId = active.getKey().getBytes(StandardCharsets.UTF_8);
+            if (!write(target, checksum, ACTIVATE, wireId, null, 0, 0, 0, 0, 0)) {
+                return false;
+            }
+            if (active.getValue().activated && !write(target, checksum, ACTIVATED, wireId, null, 0, 0, 0, 0, 0)) {
+                return false;
+            }
+            for (String hookId : active.getValue().queued) {
+                if (!write(target, checksum, WIRE_TRIP_QUEUED, wireId, hookId.getBytes(StandardCharsets.UTF_8), 0,
+                        0, 0, 0, 0)) {
+                    return false;
+                }
+            }
+        }
+        for (Timer timer : live.timers.values()) {
+            if (!write(target, checksum, TIMER_ARM, timer.wireId.getBytes(StandardCharsets.UTF_8),
+                    timer.hookId.getBytes(StandardCharsets.UTF_8), timer.key, timer.kind, timer.slot,
+                    timer.deadline, timer.period)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private byte[] bytes(String value) {
+        byte[] bytes = strings.get(value);
+        if (bytes == null) {
+            bytes = value.getBytes(StandardCharsets.UTF_8);
+            strings.put(value, bytes);
+        }
+        return bytes;
+    }
+
+    private static String string(ByteBuffer log) {
+        byte[] bytes = new byte[log.getShort() & 0xffff];
+        log.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The live state of a journal.
+     */
+    public static class State {
+        final private Map<String, Active> active = new LinkedHashMap<>();
+        final private Map<Long, Timer> timers = new LinkedHashMap<>();
+
+        /**
+         * The keys of the armed timers by wire and hook, so cancelling the timers of
+         * a hook or wire does not walk every timer.
+         */
+        final private Map<String, Map<String, Set<Long>>> armed = new HashMap<>();
+
+        /**
+         * Returns the ids of the active wires in the order they were activated.
+         */
+        public Collection<String> activeWires() {
+            return active.keySet();
+        }
+
+        /**
+         * Returns true if the activate hook of an active wire completed.
+         */
+        public boolean activated(String wireId) {
+            Active wire = active.get(wireId);
+            return wire != null && wire.activated;
+        }
+
+        /**
+         * Returns the hooks tripped while an active wire was activating.
+         */
+        public List<String> queued(String wireId) {
+            Active wire = active.get(wireId);
+            return wire != null ? wire.queued : Collections.emptyList();
+        }
+
+        public Collection<Timer> timers() {
+            return timers.values();
+        }
+
+        boolean armed(String wireId, String hookId) {
+            Map<String, Set<Long>> hooks = armed.get(wireId);
+            return hooks != null && hooks.containsKey(hookId);
+        }
+
+        void arm(Timer timer) {
+            timers.put(timer.key, timer);
+            armed.computeIfAbsent(timer.wireId, wireId -> new HashMap<>())
+                    .computeIfAbsent(timer.hookId, hookId -> new LinkedHashSet<>()).add(timer.key);
+        }
+
+        void fired(long key) {
+            Timer timer = timers.remove(key);
+            if (timer == null) {
+                return;
+            }
+            Map<String, Set<Long>> hooks = armed.get(timer.wireId);
+            Set<Long> keys = hooks.get(timer.hookId);
+            keys.remove(key);
+            if (keys.isEmpty()) {
+                hooks.remove(timer.hookId);
+                if (hooks.isEmpty()) {
+                    armed.remove(timer.wireId);
+                }
+            }
+        }
+
+        /**
+         * Removes the timers of a hook.
+         */
+        void cancel(String wireId, String hookId) {
+            Map<String, Set<Long>> hooks = armed.get(wireId);
+            Set<Long> keys = hooks != null ? hooks.remove(hookId) : null;
+            if (keys == null) {
+                return;
+            }
+            for (Long key : keys) {
+                timers.remove(key);
+            }
+            if (hooks.isEmpty()) {
+                armed.remove(wireId);
+            }
+        }
+
+        /**
+         * Removes the timers of a wire.
+         */
+        void cancel(String wireId) {
+            Map<String, Set<Long>> hooks = armed.remove(wireId);
+            if (hooks == null) {
+                return;
+            }
+            for (Set<Long> keys : hooks.values()) {
+                for (Long key : keys) {
+                    timers.remove(key);
+                }
+            }
+        }
+
+        /**
+         * Returns a copy of this state, sharing nothing mutable with it.
+         */
+        State copy() {
+            State copy = new State();
+            for (Map.Entry<String, Active> wire : active.entrySet()) {
+                copy.active.put(wire.getKey(), wire.getValue().copy());
+            }
+            for (Timer timer : timers.values()) {
+                copy.arm(timer);
+            }
+            return copy;
+        }
+    }
+
+    /**
+     * The journaled state of an active wire.
+     */
+    private static class Active {
+        private boolean activated;
+        final private List<String> queued = new ArrayList<>();
+
+        Active copy() {
+            Active copy = new Active();
+            copy.activated = activated;
+            copy.queued.addAll(queued);
+            return copy;
+        }
+    }
+
+    /**
+     * A journaled timer.
+     */
+    public static class Timer {
+        final private long key;
+        final private String wireId;
+        final private String hookId;
+        final private int kind;
+        final private int slot;
+        final private long deadline;
+        final private long period;
+
+        Timer(long key, String wireId, String hookId, int kind, int slot, long deadline, long period) {
+            this.key = key;
+            this.wireId = wireId;
+            this.hookId = hookId;
+            this.kind = kind;
+            this.slot = slot;
+            this.deadline = deadline;
+            this.period = period;
+        }
+
+        public long key() {
+            return key;
+        }
+
+        public String wireId() {
+            return wireId;
+        }
+
+        public String hookId() {
+            return hookId;
+        }
+
+        public int kind() {
+            return kind;
+        }
+
+        public int slot() {
+            return slot;
+        }
+
+        /**
+         * Returns the first fire time in epoch milliseconds, or 0 for schedules.
+         */
+        public long deadline() {
+            return deadline;
+        }
+
+        public long period() {
+            return period;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package me.tonyrice.redstone.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.AtomicHistogram;
+
+/**
+ * A latency histogram that can be recorded from any thread without locks or
+ * allocations. Values are kept in microseconds with two significant digits and
+ * clamped to a day. The backing histogram is allocated on the first recording,
+ * so hooks that are never tripped cost no memory.
+ */
+public final class LatencyHistogram {
+
+    final private static long MAX_MICROS = TimeUnit.DAYS.toMicros(1);
+
+    final private static double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+    final private LongAdder sum = new LongAdder();
+
+    private volatile AtomicHistogram histogram;
+
+    /**
+     * Records a latency measured with {@link System#nanoTime()}.
+     */
+    public void recordNanos(long nanos) {
+        long micros = Math.min(Math.max(0, nanos / 1000), MAX_MICROS);
+
+        AtomicHistogram histogram = this.histogram;
+        if (histogram == null) {
+            histogram = create();
+        }
+
+        histogram.recordValue(micros);
+        sum.add(micros);
+    }
+
+    /**
+     * Returns the number of recorded values.
+     */
+    public long count() {
+        AtomicHistogram histogram = this.histogram;
+        return histogram != null ? histogram.getTotalCount() : 0;
+    }
+
+    /**
+     * Writes the histogram as a Prometheus summary in seconds.
+     *
+     * @param labels alternating label names and values
+     */
+    public void write(PrometheusWriter writer, String name, String... labels) {
+        AtomicHistogram histogram = this.histogram;
+
+        for (double quantile : QUANTILES) {
+            long micros = histogram != null ? histogram.getValueAtPercentile(quantile * 100) : 0;
+            writer.sample(name, "quantile", Double.toString(quantile), micros / 1e6, labels);
+        }
+        writer.sample(name + "_sum", sum.sum() / 1e6, labels);
+        writer.sample(name + "_count", histogram != null ? histogram.getTotalCount() : 0, labels);
+    }
+
+    private synchronized AtomicHistogram create() {
+        if (histogram == null) {
+            histogram = new AtomicHistogram(MAX_MICROS, 2);
+        }
+        return histogram;
+    }
+}
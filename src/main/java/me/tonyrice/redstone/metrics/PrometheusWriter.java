@@ -0,0 +1,81 @@
+package me.tonyrice.redstone.metrics;
+
+/**
+ * Writes metrics in the Prometheus text exposition format. Samples of a metric
+ * must be written right after its {@link #type} line.
+ */
+public final class PrometheusWriter {
+
+    final private StringBuilder out = new StringBuilder(4096);
+
+    /**
+     * Starts a metric family.
+     *
+     * @param type one of counter, gauge or summary
+     */
+    public PrometheusWriter type(String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        return this;
+    }
+
+    /**
+     * Writes a sample.
+     *
+     * @param labels alternating label names and values
+     */
+    public PrometheusWriter sample(String name, double value, String... labels) {
+        return sample(name, null, null, value, labels);
+    }
+
+    /**
+     * Writes a sample with an extra label ahead of the given ones.
+     */
+    public PrometheusWriter sample(String name, String label, String labelValue, double value, String... labels) {
+        out.append(name);
+
+        boolean first = true;
+        if (label != null) {
+            out.append('{');
+            label(label, labelValue);
+            first = false;
+        }
+        for (int i = 0; i + 1 < labels.length; i += 2) {
+            out.append(first ? '{' : ',');
+            label(labels[i], labels[i + 1]);
+            first = false;
+        }
+        if (!first) {
+            out.append('}');
+        }
+
+        out.append(' ');
+        if (value == (long) value) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+        out.append('\n');
+        return this;
+    }
+
+    private void label(String name, String value) {
+        out.append(name).append("=\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '"') {
+                out.append('\\').append(c);
+            } else if (c == '\n') {
+                out.append("\\n");
+            } else {
+                out.append(c);
+            }
+        }
+        out.append('"');
+    }
+
+    @Override
+    public String toString() {
+        return out.toString();
+    }
+}
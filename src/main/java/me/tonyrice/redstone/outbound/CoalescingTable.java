@@ -0,0 +1,106 @@
+package me.tonyrice.redstone.outbound;
+
+/**
+ * A fixed size open addressing table remembering which outbound requests were
+ * sent recently. Keys are the compiled url strings of hook actions, so lookups
+ * usually succeed on reference equality and never allocate. Expired slots are
+ * reused in place.
+ *
+ * The table is split into independently locked stripes by the high bits of the
+ * hash, so event loops dispatching different urls rarely contend and the
+ * critical section never waits on anything but one stripe.
+ */
+final class CoalescingTable {
+
+    final private static int MAX_PROBE = 16;
+
+    final private Stripe[] stripes;
+    final private int shift;
+
+    CoalescingTable(int capacity) {
+        int size = 16;
+        while (size < capacity) {
+            size <<= 1;
+        }
+
+        int count = 1;
+        while (count < Runtime.getRuntime().availableProcessors() * 4 && size / (count * 2) >= MAX_PROBE) {
+            count <<= 1;
+        }
+
+        this.stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe(size / count);
+        }
+        this.shift = 32 - Integer.numberOfTrailingZeros(count);
+    }
+
+    /**
+     * Records a request unless an identical one was recorded within its window.
+     *
+     * @return true if the request should be sent, false if it is coalesced into an
+     *         earlier one
+     */
+    boolean acquire(String key, long now, long window) {
+        int hash = spread(key.hashCode());
+        Stripe stripe = shift < 32 ? stripes[hash >>> shift] : stripes[0];
+        return stripe.acquire(key, hash, now, window);
+    }
+
+    int capacity() {
+        return stripes.length * stripes[0].keys.length;
+    }
+
+    private static int spread(int hash) {
+        hash *= 0x9e3779b9;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * A part of the table with its own lock.
+     */
+    private static final class Stripe {
+        final private String[] keys;
+        final private long[] expires;
+        final private int mask;
+
+        Stripe(int size) {
+            this.keys = new String[size];
+            this.expires = new long[size];
+            this.mask = size - 1;
+        }
+
+        synchronized boolean acquire(String key, int hash, long now, long window) {
+            int free = -1;
+            int index = hash & mask;
+
+            for (int i = 0; i < MAX_PROBE; i++, index = (index + 1) & mask) {
+                String slot = keys[index];
+
+                if (slot == null) {
+                    if (free < 0) {
+                        free = index;
+                    }
+                    break;
+                }
+                if (slot == key || slot.equals(key)) {
+                    if (now < expires[index]) {
+                        return false;
+                    }
+                    expires[index] = now + window;
+                    return true;
+                }
+                if (free < 0 && now >= expires[index]) {
+                    free = index;
+                }
+            }
+
+            // A crowded neighbourhood simply lets the request through.
+            if (free >= 0) {
+                keys[free] = key;
+                expires[free] = now + window;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package me.tonyrice.redstone.outbound;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.client.WebClient;
+import me.tonyrice.redstone.metrics.LatencyHistogram;
+import me.tonyrice.redstone.outbound.OutboundDispatcher.OutboundRequest;
+
+/**
+ * The queue, concurrency limit and circuit breaker of a single host.
+ */
+final class HostQueue {
+
+    final private static int CLOSED = 0;
+    final private static int OPEN = 1;
+    final private static int HALF_OPEN = 2;
+
+    /**
+     * The labels of the response status counters, indexed by status / 100. The
+     * last counter counts requests failing without a response.
+     */
+    final static String[] STATUSES = { "other", "1xx", "2xx", "3xx", "4xx", "5xx", "error" };
+
+    final private OutboundDispatcher dispatcher;
+    final private WebClient webClient;
+
+    final String host;
+
+    final private int maxInFlight;
+    final private int maxQueued;
+    final private long timeout;
+    final private int retries;
+    final private long retryBase;
+    final private long retryMax;
+    final private int breakerFailures;
+    final private long breakerReset;
+
+    final private ArrayDeque<OutboundRequest> pending = new ArrayDeque<>();
+
+    final LatencyHistogram latency = new LatencyHistogram();
+    final LongAdder[] statuses = new LongAdder[STATUSES.length];
+
+    private int inFlight = 0;
+    private int state = CLOSED;
+    private int consecutiveFailures = 0;
+    private long openedAt = 0;
+    private boolean probing = false;
+
+    HostQueue(OutboundDispatcher dispatcher, String host, JsonObject options, WebClient webClient) {
+        this.dispatcher = dispatcher;
+        this.host = host;
+        this.webClient = webClient;
+
+        this.maxInFlight = Math.max(1, options.getInteger("max_in_flight", 8));
+        this.maxQueued = options.getInteger("max_queued", 1000);
+        this.timeout = options.getLong("timeout_ms", (long) 10000);
+        this.retries = options.getInteger("retries", 3);
+        this.retryBase = Math.max(1, options.getLong("retry_base_ms", (long) 250));
+        this.retryMax = options.getLong("retry_max_ms", (long) 10000);
+        this.breakerFailures = options.getInteger("breaker_failures", 5);
+        this.breakerReset = options.getLong("breaker_reset_ms", (long) 30000);
+
+        for (int i = 0; i < statuses.length; i++) {
+            statuses[i] = new LongAdder();
+        }
+    }
+
+    void submit(OutboundRequest request) {
+        boolean drop;
+        synchronized (this) {
+            if (state == OPEN && System.currentTimeMillis() - openedAt >= breakerReset) {
+                state = HALF_OPEN;
+            }
+
+            drop = state == OPEN || pending.size() >= maxQueued;
+            if (!drop) {
+                pending.add(request);
+            }
+        }
+
+        if (drop) {
+            drop(request);
+            return;
+        }
+
+        dispatcher.queued.increment();
+        drain();
+    }
+
+    synchronized JsonObject stats() {
+        return new JsonObject()
+                .put("queued", pending.size())
+                .put("in_flight", inFlight)
+                .put("circuit", state == CLOSED ? "closed" : state == OPEN ? "open" : "half_open");
+    }
+
+    synchronized int queued() {
+        return pending.size();
+    }
+
+    synchronized int inFlight() {
+        return inFlight;
+    }
+
+    private void drop(OutboundRequest request) {
+        dispatcher.dropped.increment();
+        request.fail("Dropped request to " + host + ".");
+    }
+
+    private void drain() {
+        while (true) {
+            OutboundRequest request;
+            boolean drop = false;
+            synchronized (this) {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                if (state == OPEN && System.currentTimeMillis() - openedAt >= breakerReset) {
+                    state = HALF_OPEN;
+                }
+                if (state == OPEN) {
+                    // Shed whatever is still waiting while the host is failing.
+                    drop = true;
+                } else if (inFlight >= maxInFlight) {
+                    return;
+                } else if (state == HALF_OPEN) {
+                    // Only a single probe is let through until the host recovers.
+                    if (probing) {
+                        return;
+                    }
+                    probing = true;
+                }
+                request = pending.poll();
+                if (!drop) {
+                    inFlight++;
+                }
+            }
+
+            if (drop) {
+                drop(request);
+            } else {
+                send(request);
+            }
+        }
+    }
+
+    private void send(OutboundRequest request) {
+        long start = System.nanoTime();
+
+        webClient.getAbs(request.url).timeout(timeout).send(rs -> {
+            latency.recordNanos(System.nanoTime() - start);
+            if (rs.failed()) {
+                statuses[statuses.length - 1].increment();
+            } else {
+                int status = rs.result().statusCode() / 100;
+                statuses[status > 0 && status < 6 ? status : 0].increment();
+            }
+
+            boolean success = rs.succeeded() && rs.result().statusCode() < 500 && rs.result().statusCode() != 429;
+
+            synchronized (this) {
+                inFlight--;
+                probing = false;
+
+                if (success) {
+                    consecutiveFailures = 0;
+                    state = CLOSED;
+                } else if (++consecutiveFailures >= breakerFailures || state == HALF_OPEN) {
+                    state = OPEN;
+                    openedAt = System.currentTimeMillis();
+                }
+            }
+
+            if (success) {
+                dispatcher.succeeded.increment();
+                request.complete(rs.result().statusCode());
+            } else if (request.attempt < retries && !isOpen()) {
+                dispatcher.retried.increment();
+                dispatcher.vertx().setTimer(backoff(request.attempt++), t -> retry(request));
+            } else {
+                dispatcher.failed.increment();
+                request.fail(rs.failed() ? rs.cause().getMessage() : "Status " + rs.result().statusCode() + ".");
+            }
+
+            drain();
+        });
+    }
+
+    private void retry(OutboundRequest request) {
+        boolean drop;
+        synchronized (this) {
+            drop = state == OPEN;
+            if (!drop) {
+                pending.addFirst(request);
+            }
+        }
+
+        if (drop) {
+            drop(request);
+            return;
+        }
+        drain();
+    }
+
+    private synchronized boolean isOpen() {
+        return state == OPEN;
+    }
+
+    private long backoff(int attempt) {
+        long delay = Math.min(retryMax, retryBase << Math.min(attempt, 20));
+        // Equal jitter keeps at least half of the delay.
+        return Math.max(1, delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1));
+    }
+}
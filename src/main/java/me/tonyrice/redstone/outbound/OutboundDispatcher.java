@@ -0,0 +1,221 @@
+package me.tonyrice.redstone.outbound;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.client.WebClient;
+import io.vertx.ext.web.client.WebClientOptions;
+import me.tonyrice.redstone.metrics.PrometheusWriter;
+
+/**
+ * Sends the outbound GET requests of hooks. Requests are queued per host with a
+ * bounded number of requests in flight, retried with jittered exponential
+ * backoff and shed by a per-host circuit breaker while a host keeps failing.
+ *
+ * The dispatcher is configured with the "_config_outbound" object. Any option may
+ * be overridden for a single host in its "hosts" object.
+ */
+public class OutboundDispatcher {
+
+    /**
+     * The status passed to handlers of requests coalesced into an earlier one.
+     */
+    public static final int COALESCED = 0;
+
+    final private Vertx vertx;
+    final private JsonObject options;
+    final private WebClient webClient;
+
+    final private Map<String, HostQueue> hosts = new ConcurrentHashMap<>();
+    final private Map<String, HostQueue> urls = new ConcurrentHashMap<>();
+    final private CoalescingTable coalescing;
+
+    final LongAdder queued = new LongAdder();
+    final LongAdder succeeded = new LongAdder();
+    final LongAdder retried = new LongAdder();
+    final LongAdder failed = new LongAdder();
+    final LongAdder dropped = new LongAdder();
+    final LongAdder coalesced = new LongAdder();
+
+    public OutboundDispatcher(Vertx vertx, JsonObject options) {
+        this(vertx, options, null);
+    }
+
+    /**
+     * @param webClient the client used for every host, or null to create pooled
+     *                  clients from the options
+     */
+    public OutboundDispatcher(Vertx vertx, JsonObject options, WebClient webClient) {
+        this.vertx = vertx;
+        this.options = options;
+        this.webClient = webClient != null ? webClient : WebClient.create(vertx, clientOptions(options));
+        this.coalescing = new CoalescingTable(options.getInteger("coalesce_table_size", 4096));
+    }
+
+    /**
+     * Queues a GET request.
+     *
+     * @param url the absolute url
+     * @param handler called with the response status once the request completed,
+     *                failed for good or was dropped
+     */
+    public void dispatch(String url, Handler<AsyncResult<Integer>> handler) {
+        dispatch(url, 0, handler);
+    }
+
+    /**
+     * Queues a GET request unless an identical request was queued within the
+     * coalescing window, in which case the handler is called with
+     * {@link #COALESCED} right away.
+     *
+     * @param url the absolute url
+     * @param coalesce the coalescing window in milliseconds, or 0 for none
+     * @param handler called with the response status once the request completed,
+     *                failed for good or was dropped
+     */
+    public void dispatch(String url, long coalesce, Handler<AsyncResult<Integer>> handler) {
+        if (coalesce > 0 && !coalescing.acquire(url, System.currentTimeMillis(), coalesce)) {
+            coalesced.increment();
+            handler.handle(Future.succeededFuture(COALESCED));
+            return;
+        }
+
+        HostQueue host = urls.get(url);
+        if (host == null) {
+            host = urls.computeIfAbsent(url, u -> hosts.computeIfAbsent(hostOf(u), this::createQueue));
+        }
+        host.submit(new OutboundRequest(url, handler));
+    }
+
+    /**
+     * Returns the request counters, totals and per host.
+     */
+    public JsonObject stats() {
+        long inFlight = 0;
+        long waiting = 0;
+        JsonObject hostStats = new JsonObject();
+
+        for (HostQueue host : hosts.values()) {
+            JsonObject stats = host.stats();
+            inFlight += stats.getLong("in_flight");
+            waiting += stats.getLong("queued");
+            hostStats.put(host.host, stats);
+        }
+
+        return new JsonObject()
+                .put("queued", waiting)
+                .put("in_flight", inFlight)
+                .put("total_queued", queued.sum())
+                .put("succeeded", succeeded.sum())
+                .put("retried", retried.sum())
+                .put("failed", failed.sum())
+                .put("dropped", dropped.sum())
+                .put("coalesced", coalesced.sum())
+                .put("hosts", hostStats);
+    }
+
+    /**
+     * Writes the request counters and per host latencies and queue gauges.
+     */
+    public void metrics(PrometheusWriter writer) {
+        writer.type("redstone_outbound_requests_total", "counter", "Outbound request attempts by host and status.");
+        for (HostQueue host : hosts.values()) {
+            for (int i = 0; i < HostQueue.STATUSES.length; i++) {
+                writer.sample("redstone_outbound_requests_total", host.statuses[i].sum(), "host", host.host, "status",
+                        HostQueue.STATUSES[i]);
+            }
+        }
+
+        writer.type("redstone_outbound_latency_seconds", "summary", "Outbound request latency by host.");
+        for (HostQueue host : hosts.values()) {
+            host.latency.write(writer, "redstone_outbound_latency_seconds", "host", host.host);
+        }
+
+        writer.type("redstone_outbound_queued", "gauge", "Outbound requests waiting for a connection by host.");
+        for (HostQueue host : hosts.values()) {
+            writer.sample("redstone_outbound_queued", host.queued(), "host", host.host);
+        }
+
+        writer.type("redstone_outbound_in_flight", "gauge", "Outbound requests in flight by host.");
+        for (HostQueue host : hosts.values()) {
+            writer.sample("redstone_outbound_in_flight", host.inFlight(), "host", host.host);
+        }
+
+        writer.type("redstone_outbound_retried_total", "counter", "Outbound requests retried.");
+        writer.sample("redstone_outbound_retried_total", retried.sum());
+        writer.type("redstone_outbound_dropped_total", "counter", "Outbound requests dropped.");
+        writer.sample("redstone_outbound_dropped_total", dropped.sum());
+        writer.type("redstone_outbound_coalesced_total", "counter", "Outbound requests coalesced into an earlier one.");
+        writer.sample("redstone_outbound_coalesced_total", coalesced.sum());
+    }
+
+    Vertx vertx() {
+        return vertx;
+    }
+
+    private HostQueue createQueue(String host) {
+        JsonObject hostOptions = options.getJsonObject("hosts", new JsonObject()).getJsonObject(host);
+        if (hostOptions == null) {
+            return new HostQueue(this, host, options, webClient);
+        }
+
+        JsonObject merged = options.copy().mergeIn(hostOptions);
+        WebClient client = hostOptions.containsKey("max_pool_size") ? WebClient.create(vertx, clientOptions(merged))
+                : webClient;
+        return new HostQueue(this, host, merged, client);
+    }
+
+    private static WebClientOptions clientOptions(JsonObject options) {
+        return new WebClientOptions()
+                .setMaxPoolSize(options.getInteger("max_pool_size", 5))
+                .setKeepAlive(options.getBoolean("keep_alive", true))
+                .setPipelining(options.getBoolean("pipelining", false))
+                .setPipeliningLimit(options.getInteger("pipelining_limit", 10))
+                .setConnectTimeout(options.getInteger("connect_timeout_ms", 5000))
+                .setIdleTimeout(options.getInteger("idle_timeout_s", 60))
+                .setMaxWaitQueueSize(options.getInteger("max_queued", 1000));
+    }
+
+    private static String hostOf(String url) {
+        try {
+            URI uri = URI.create(url);
+            int port = uri.getPort();
+            if (port < 0) {
+                port = "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+            }
+            return uri.getHost() + ":" + port;
+        } catch (IllegalArgumentException e) {
+            return url;
+        }
+    }
+
+    /**
+     * A request waiting in or travelling through a host queue.
+     */
+    static final class OutboundRequest {
+        final String url;
+        final Handler<AsyncResult<Integer>> handler;
+
+        int attempt = 0;
+
+        OutboundRequest(String url, Handler<AsyncResult<Integer>> handler) {
+            this.url = url;
+            this.handler = handler;
+        }
+
+        void complete(int status) {
+            handler.handle(Future.succeededFuture(status));
+        }
+
+        void fail(String message) {
+            handler.handle(Future.failedFuture(message));
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package me.tonyrice.redstone.schedule;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * A schedule defined by a five field cron expression
+ * ("minute hour day-of-month month day-of-week"). Fields accept "*", values,
+ * ranges, lists and steps, and month and day names. When both the day of month
+ * and the day of week are restricted either one matching is sufficient.
+ */
+final class CronSchedule extends Schedule {
+
+    final private static String[] MONTHS = { "jan", "feb", "mar", "apr", "may", "jun", "jul", "aug", "sep", "oct",
+            "nov", "dec" };
+    final private static String[] DAYS = { "sun", "mon", "tue", "wed", "thu", "fri", "sat" };
+
+    final private long minutes;
+    final private long hours;
+    final private long daysOfMonth;
+    final private long months;
+    final private long daysOfWeek;
+
+    final private boolean dayOfMonthRestricted;
+    final private boolean dayOfWeekRestricted;
+
+    CronSchedule(ZoneId zone, String expression) {
+        super(zone);
+
+        String[] fields = macro(expression.trim()).split("\\s+");
+        if (fields.length != 5) {
+            throw new IllegalArgumentException("Invalid cron expression \"" + expression + "\".");
+        }
+
+        this.minutes = parse(fields[0], 0, 59, null);
+        this.hours = parse(fields[1], 0, 23, null);
+        this.daysOfMonth = parse(fields[2], 1, 31, null);
+        this.months = parse(fields[3], 1, 12, MONTHS);
+
+        long dow = parse(fields[4], 0, 7, DAYS);
+        // Both 0 and 7 are Sunday.
+        this.daysOfWeek = (dow | (dow >>> 7)) & 0x7f;
+
+        this.dayOfMonthRestricted = !fields[2].startsWith("*");
+        this.dayOfWeekRestricted = !fields[4].startsWith("*");
+    }
+
+    @Override
+    LocalDateTime next(LocalDateTime after) {
+        LocalDateTime time = after.truncatedTo(ChronoUnit.MINUTES).plusMinutes(1);
+        int lastYear = time.getYear() + 8;
+
+        while (time.getYear() <= lastYear) {
+            if (!has(months, time.getMonthValue())) {
+                time = time.withDayOfMonth(1).toLocalDate().atStartOfDay().plusMonths(1);
+                continue;
+            }
+            if (!dayMatches(time)) {
+                time = time.toLocalDate().atStartOfDay().plusDays(1);
+                continue;
+            }
+            int hour = next(hours, time.getHour(), 23);
+            if (hour < 0) {
+                time = time.toLocalDate().atStartOfDay().plusDays(1);
+                continue;
+            }
+            if (hour != time.getHour()) {
+                time = time.withHour(hour).withMinute(0);
+            }
+            int minute = next(minutes, time.getMinute(), 59);
+            if (minute < 0) {
+                time = time.withMinute(0).plusHours(1);
+                continue;
+            }
+            return time.withMinute(minute);
+        }
+        return null;
+    }
+
+    private boolean dayMatches(LocalDateTime time) {
+        boolean dayOfMonth = has(daysOfMonth, time.getDayOfMonth());
+        boolean dayOfWeek = has(daysOfWeek, time.getDayOfWeek().getValue() % 7);
+
+        if (dayOfMonthRestricted && dayOfWeekRestricted) {
+            return dayOfMonth || dayOfWeek;
+        }
+        return dayOfMonth && dayOfWeek;
+    }
+
+    private static boolean has(long mask, int value) {
+        return (mask & (1L << value)) != 0;
+    }
+
+    /**
+     * Returns the first value in the mask that is at least from and at most to, or
+     * -1.
+     */
+    private static int next(long mask, int from, int to) {
+        long remaining = mask >>> from;
+        if (remaining == 0) {
+            return -1;
+        }
+        int value = from + Long.numberOfTrailingZeros(remaining);
+        return value <= to ? value : -1;
+    }
+
+    private static String macro(String expression) {
+        switch (expression.toLowerCase()) {
+        case "@yearly":
+        case "@annually":
+            return "0 0 1 1 *";
+        case "@monthly":
+            return "0 0 1 * *";
+        case "@weekly":
+            return "0 0 * * 0";
+        case "@daily":
+        case "@midnight":
+            return "0 0 * * *";
+        case "@hourly":
+            return "0 * * * *";
+        default:
+            return expression;
+        }
+    }
+
+    private static long parse(String field, int min, int max, String[] names) {
+        long mask = 0;
+
+        for (String part : field.split(",")) {
+            int step = 1;
+            int slash = part.indexOf('/');
+            if (slash >= 0) {
+                step = Integer.parseInt(part.substring(slash + 1));
+                part = part.substring(0, slash);
+            }
+
+            int from;
+            int to;
+            if (part.equals("*")) {
+                from = min;
+                to = max;
+            } else {
+                int dash = part.indexOf('-');
+                if (dash > 0) {
+                    from = value(part.substring(0, dash), min, names);
+                    to = value(part.substring(dash + 1), min, names);
+                } else {
+                    from = value(part, min, names);
+                    to = slash >= 0 ? max : from;
+                }
+            }
+
+            if (from < min || to > max || from > to || step < 1) {
+                throw new IllegalArgumentException("Invalid cron field \"" + field + "\".");
+            }
+
+            for (int value = from; value <= to; value += step) {
+                mask |= 1L << value;
+            }
+        }
+        return mask;
+    }
+
+    private static int value(String value, int min, String[] names) {
+        if (names != null) {
+            for (int i = 0; i < names.length; i++) {
+                if (names[i].equalsIgnoreCase(value)) {
+                    return i + min;
+                }
+            }
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cron value \"" + value + "\".");
+        }
+    }
+}
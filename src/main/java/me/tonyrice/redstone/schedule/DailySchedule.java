@@ -0,0 +1,86 @@
+package me.tonyrice.redstone.schedule;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+
+import io.vertx.core.json.JsonArray;
+
+/**
+ * A schedule firing at one or more times of day, optionally restricted to a set
+ * of days of the week.
+ */
+final class DailySchedule extends Schedule {
+
+    final private static int ALL_DAYS = 0x7f;
+
+    /**
+     * The sorted fire times as seconds of the day.
+     */
+    final private int[] times;
+
+    /**
+     * A mask of the days this schedule fires on, bit 0 being Monday.
+     */
+    final private int days;
+
+    DailySchedule(ZoneId zone, JsonArray times, JsonArray days) {
+        super(zone);
+
+        if (times.isEmpty()) {
+            throw new IllegalArgumentException("A schedule requires at least one time.");
+        }
+
+        int[] seconds = new int[times.size()];
+        for (int i = 0; i < seconds.length; i++) {
+            seconds[i] = LocalTime.parse(times.getString(i)).toSecondOfDay();
+        }
+        Arrays.sort(seconds);
+        this.times = seconds;
+
+        int mask = 0;
+        for (Object day : days) {
+            mask |= parseDays(day.toString());
+        }
+        this.days = mask == 0 ? ALL_DAYS : mask;
+    }
+
+    @Override
+    LocalDateTime next(LocalDateTime after) {
+        LocalDate date = after.toLocalDate();
+        int second = after.toLocalTime().toSecondOfDay();
+
+        for (int i = 0; i <= 7; i++) {
+            if ((days & (1 << (date.getDayOfWeek().getValue() - 1))) != 0) {
+                for (int time : times) {
+                    if (i > 0 || time > second) {
+                        return date.atTime(LocalTime.ofSecondOfDay(time));
+                    }
+                }
+            }
+            date = date.plusDays(1);
+        }
+        return null;
+    }
+
+    private static int parseDays(String day) {
+        switch (day.toLowerCase()) {
+        case "daily":
+            return ALL_DAYS;
+        case "weekdays":
+            return 0x1f;
+        case "weekends":
+            return 0x60;
+        default:
+            for (DayOfWeek dayOfWeek : DayOfWeek.values()) {
+                if (dayOfWeek.name().toLowerCase().startsWith(day.toLowerCase()) && day.length() >= 3) {
+                    return 1 << (dayOfWeek.getValue() - 1);
+                }
+            }
+            throw new IllegalArgumentException("Unknown day \"" + day + "\".");
+        }
+    }
+}
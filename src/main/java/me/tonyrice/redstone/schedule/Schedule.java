@@ -0,0 +1,86 @@
+package me.tonyrice.redstone.schedule;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * A recurring point in wall-clock time. Schedules are evaluated in local time of
+ * their zone: a local time that falls into a daylight saving gap fires at the
+ * shifted instant, and a local time repeated by an overlap only fires once.
+ */
+public abstract class Schedule {
+
+    final private ZoneId zone;
+
+    Schedule(ZoneId zone) {
+        this.zone = zone;
+    }
+
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    /**
+     * Returns the first local date time strictly after the given one matching this
+     * schedule, or null if there is none.
+     */
+    abstract LocalDateTime next(LocalDateTime after);
+
+    /**
+     * Returns the epoch millis of the first fire time strictly after the given
+     * epoch millis, or -1 if this schedule never fires again.
+     */
+    public long nextFire(long after) {
+        LocalDateTime cursor = Instant.ofEpochMilli(after).atZone(zone).toLocalDateTime();
+
+        // An overlap can map a local time onto an instant that has already passed.
+        for (int i = 0; i < 4; i++) {
+            LocalDateTime next = next(cursor);
+            if (next == null) {
+                return -1;
+            }
+
+            long fire = ZonedDateTime.ofLocal(next, zone, null).toInstant().toEpochMilli();
+            if (fire > after) {
+                return fire;
+            }
+            cursor = next;
+        }
+        return -1;
+    }
+
+    /**
+     * Parses a schedule configuration. Either a "cron" expression or one or more
+     * "when" times (optionally restricted to "days") must be present. The "zone"
+     * key overrides the given default zone.
+     *
+     * @throws IllegalArgumentException if the configuration is invalid
+     */
+    public static Schedule parse(JsonObject config, ZoneId defaultZone) {
+        ZoneId zone = defaultZone;
+        if (config.containsKey("zone")) {
+            zone = ZoneId.of(config.getString("zone"));
+        }
+
+        if (config.containsKey("cron")) {
+            return new CronSchedule(zone, config.getString("cron"));
+        }
+
+        Object when = config.getValue("when");
+        if (when == null) {
+            throw new IllegalArgumentException("A schedule requires either \"when\" or \"cron\".");
+        }
+
+        JsonArray times = when instanceof JsonArray ? (JsonArray) when : new JsonArray().add(when);
+        Object days = config.getValue("days");
+        JsonArray dayList = days == null ? new JsonArray() : days instanceof JsonArray ? (JsonArray) days
+                : new JsonArray().add(days);
+
+        return new DailySchedule(zone, times, dayList);
+    }
+}
@@ -0,0 +1,248 @@
+package me.tonyrice.redstone.schedule;
+
+import java.util.TreeSet;
+
+import io.vertx.core.Handler;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import me.tonyrice.redstone.timer.Timeout;
+import me.tonyrice.redstone.timer.TimerGroup;
+import me.tonyrice.redstone.timer.TimingWheel;
+
+/**
+ * Keeps every armed schedule in a single index sorted by next fire time. Only the
+ * earliest entry is armed on the timing wheel, so any number of schedules costs
+ * one timer. Fire times are re-checked against the wall clock when the timer
+ * fires, so clock adjustments never cause a schedule to fire early.
+ */
+public class ScheduleIndex {
+    final private Logger logger = LoggerFactory.getLogger(ScheduleIndex.class);
+
+    /**
+     * The longest the index sleeps before re-checking the wall clock.
+     */
+    final private static long MAX_SLEEP = 60000;
+
+    final private TimingWheel timingWheel;
+    final private TimerGroup timers;
+
+    final private TreeSet<Entry> entries = new TreeSet<>((a, b) -> {
+        int cmp = Long.compare(a.nextFire, b.nextFire);
+        return cmp != 0 ? cmp : Long.compare(a.sequence, b.sequence);
+    });
+
+    private long sequence = 0;
+    private Timeout timeout;
+    private long armedFor = Long.MAX_VALUE;
+
+    public ScheduleIndex(TimingWheel timingWheel) {
+        this.timingWheel = timingWheel;
+        this.timers = timingWheel.group();
+    }
+
+    public Group group() {
+        return new Group();
+    }
+
+    /**
+     * Returns the number of armed schedules.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Arms a schedule.
+     *
+     * @param group the group the entry is cancelled with
+     * @param schedule the schedule
+     * @param repeat true to keep the entry armed after it fired
+     * @param handler called every time the schedule fires
+     * @return the entry, or null if the schedule never fires
+     */
+    public Entry add(Group group, Schedule schedule, boolean repeat, Handler<Entry> handler) {
+        long nextFire = schedule.nextFire(System.currentTimeMillis());
+        if (nextFire < 0) {
+            return null;
+        }
+
+        Entry entry = new Entry(group, schedule, repeat, handler);
+
+        synchronized (this) {
+            entry.nextFire = nextFire;
+            entry.sequence = sequence++;
+            entries.add(entry);
+            group.link(entry);
+            arm();
+        }
+        return entry;
+    }
+
+    synchronized boolean cancel(Entry entry) {
+        if (!entries.remove(entry)) {
+            return false;
+        }
+        entry.group.unlink(entry);
+        arm();
+        return true;
+    }
+
+    synchronized int cancelAll(Group group) {
+        int cancelled = 0;
+        Entry entry = group.head;
+        while (entry != null) {
+            Entry next = entry.groupNext;
+            entries.remove(entry);
+            entry.groupPrev = null;
+            entry.groupNext = null;
+            cancelled++;
+            entry = next;
+        }
+        group.head = null;
+        group.size = 0;
+        arm();
+        return cancelled;
+    }
+
+    /**
+     * Re-arms the wheel timer for the earliest entry. Must hold the lock.
+     */
+    private void arm() {
+        long next = entries.isEmpty() ? Long.MAX_VALUE : entries.first().nextFire;
+        if (next == armedFor) {
+            return;
+        }
+
+        if (timeout != null) {
+            timeout.cancel();
+            timeout = null;
+        }
+
+        armedFor = next;
+        if (next == Long.MAX_VALUE) {
+            return;
+        }
+
+        long delay = Math.min(MAX_SLEEP, Math.max(1, next - System.currentTimeMillis()));
+        timeout = timingWheel.setTimer(timers, delay, t -> fire());
+    }
+
+    private void fire() {
+        long now = System.currentTimeMillis();
+        Entry fired = null;
+
+        synchronized (this) {
+            timeout = null;
+            armedFor = Long.MAX_VALUE;
+
+            while (!entries.isEmpty() && entries.first().nextFire <= now) {
+                Entry entry = entries.pollFirst();
+
+                long nextFire = entry.repeat ? entry.schedule.nextFire(Math.max(now, entry.nextFire)) : -1;
+                if (nextFire < 0) {
+                    entry.group.unlink(entry);
+                } else {
+                    entry.nextFire = nextFire;
+                    entry.sequence = sequence++;
+                    entries.add(entry);
+                }
+
+                entry.nextFired = fired;
+                fired = entry;
+            }
+
+            arm();
+        }
+
+        while (fired != null) {
+            Entry entry = fired;
+            fired = entry.nextFired;
+            entry.nextFired = null;
+
+            try {
+                entry.handler.handle(entry);
+            } catch (RuntimeException e) {
+                logger.error("Schedule handler failed.", e);
+            }
+        }
+    }
+
+    /**
+     * A schedule armed on the index.
+     */
+    public final class Entry {
+        final private Group group;
+        final private Schedule schedule;
+        final private boolean repeat;
+        final private Handler<Entry> handler;
+
+        private long nextFire;
+        private long sequence;
+
+        private Entry groupPrev;
+        private Entry groupNext;
+        private Entry nextFired;
+
+        Entry(Group group, Schedule schedule, boolean repeat, Handler<Entry> handler) {
+            this.group = group;
+            this.schedule = schedule;
+            this.repeat = repeat;
+            this.handler = handler;
+        }
+
+        public boolean cancel() {
+            return ScheduleIndex.this.cancel(this);
+        }
+
+        /**
+         * Returns the epoch millis this entry fires next.
+         */
+        public long nextFire() {
+            synchronized (ScheduleIndex.this) {
+                return nextFire;
+            }
+        }
+    }
+
+    /**
+     * A set of schedule entries owned by the same hook and cancelled together.
+     */
+    public final class Group {
+        private Entry head;
+        private int size;
+
+        public int size() {
+            synchronized (ScheduleIndex.this) {
+                return size;
+            }
+        }
+
+        public int cancelAll() {
+            return ScheduleIndex.this.cancelAll(this);
+        }
+
+        void link(Entry entry) {
+            entry.groupPrev = null;
+            entry.groupNext = head;
+            if (head != null) {
+                head.groupPrev = entry;
+            }
+            head = entry;
+            size++;
+        }
+
+        void unlink(Entry entry) {
+            if (entry.groupPrev != null) {
+                entry.groupPrev.groupNext = entry.groupNext;
+            } else {
+                head = entry.groupNext;
+            }
+            if (entry.groupNext != null) {
+                entry.groupNext.groupPrev = entry.groupPrev;
+            }
+            entry.groupPrev = null;
+            entry.groupNext = null;
+            size--;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package me.tonyrice.redstone.timer;
+
+import io.vertx.core.Handler;
+
+/**
+ * A handle to a timer armed on a {@link TimingWheel}.
+ */
+public final class Timeout {
+
+    static final int PENDING = 0;
+    static final int FIRING = 1;
+    static final int DONE = 2;
+    static final int CANCELLED = 3;
+
+    final TimingWheel wheel;
+    final TimerGroup group;
+    final Handler<Timeout> handler;
+
+    /**
+     * The period in ticks of a repeating timer, or 0 for a one-shot timer.
+     */
+    final long periodTicks;
+
+    long deadlineTick;
+    int state = PENDING;
+
+    Timeout bucketPrev;
+    Timeout bucketNext;
+
+    Timeout groupPrev;
+    Timeout groupNext;
+
+    Timeout nextFired;
+
+    Timeout(TimingWheel wheel, TimerGroup group, Handler<Timeout> handler, long periodTicks) {
+        this.wheel = wheel;
+        this.group = group;
+        this.handler = handler;
+        this.periodTicks = periodTicks;
+    }
+
+    /**
+     * Cancels this timer.
+     *
+     * @return true if the timer was still pending
+     */
+    public boolean cancel() {
+        return wheel.cancel(this);
+    }
+
+    public boolean isCancelled() {
+        synchronized (wheel) {
+            return state == CANCELLED;
+        }
+    }
+
+    /**
+     * Returns the remaining time until this timer fires in milliseconds.
+     */
+    public long remaining() {
+        return wheel.remaining(this);
+    }
+}
@@ -0,0 +1,59 @@
+package me.tonyrice.redstone.timer;
+
+/**
+ * A set of timers that are owned by the same hook and cancelled together. Fired
+ * one-shot timers leave the group automatically.
+ */
+public final class TimerGroup {
+
+    final TimingWheel wheel;
+
+    Timeout head;
+    int size;
+
+    TimerGroup(TimingWheel wheel) {
+        this.wheel = wheel;
+    }
+
+    /**
+     * Returns the number of armed timers in this group.
+     */
+    public int size() {
+        synchronized (wheel) {
+            return size;
+        }
+    }
+
+    /**
+     * Cancels every armed timer in this group.
+     *
+     * @return the number of cancelled timers
+     */
+    public int cancelAll() {
+        return wheel.cancelAll(this);
+    }
+
+    void link(Timeout timeout) {
+        timeout.groupPrev = null;
+        timeout.groupNext = head;
+        if (head != null) {
+            head.groupPrev = timeout;
+        }
+        head = timeout;
+        size++;
+    }
+
+    void unlink(Timeout timeout) {
+        if (timeout.groupPrev != null) {
+            timeout.groupPrev.groupNext = timeout.groupNext;
+        } else {
+            head = timeout.groupNext;
+        }
+        if (timeout.groupNext != null) {
+            timeout.groupNext.groupPrev = timeout.groupPrev;
+        }
+        timeout.groupPrev = null;
+        timeout.groupNext = null;
+        size--;
+    }
+}
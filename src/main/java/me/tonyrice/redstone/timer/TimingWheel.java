@@ -0,0 +1,348 @@
+package me.tonyrice.redstone.timer;
+
+import java.util.concurrent.TimeUnit;
+
+import io.vertx.core.Context;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+/**
+ * A hashed timing wheel driving every Redstone timer from a single Vert.x timer.
+ * Arming and cancelling a timer is O(1). Timers are kept in intrusive lists per
+ * wheel bucket and per {@link TimerGroup}, so a group can be cancelled in bulk
+ * and fired timers are unlinked without any extra bookkeeping.
+ *
+ * The wheel does not tick on every bucket. It sleeps until the earliest
+ * deadline of the armed timers, found by walking the buckets ahead of it, and
+ * is woken early only if a timer is armed with an earlier deadline. A sparse
+ * wheel so wakes once per due timer, and not at all while none is armed.
+ * Handlers are called on the context the wheel was created with.
+ */
+public class TimingWheel {
+    final private Logger logger = LoggerFactory.getLogger(TimingWheel.class);
+
+    final private Vertx vertx;
+    final private Context context;
+
+    final private long tickNanos;
+    final private long tickMillis;
+    final private Timeout[] buckets;
+    final private int mask;
+    final private long startTime = System.nanoTime();
+
+    private long tick = 0;
+    private int size = 0;
+    private boolean running = false;
+
+    // The tick the wheel wakes at, and the wake-up which is current.
+    private long wakeTick = Long.MAX_VALUE;
+    private long wake = 0;
+    private long wakeTimer = -1;
+    private long wakeups = 0;
+
+    /**
+     * @param vertx the Vert.x instance
+     * @param tickMillis the resolution of the wheel in milliseconds
+     * @param wheelSize the number of buckets, rounded up to a power of two
+     */
+    public TimingWheel(Vertx vertx, long tickMillis, int wheelSize) {
+        this.vertx = vertx;
+        this.context = vertx.getOrCreateContext();
+        this.tickMillis = Math.max(1, tickMillis);
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(this.tickMillis);
+
+        int buckets = 1;
+        while (buckets < wheelSize) {
+            buckets <<= 1;
+        }
+        this.buckets = new Timeout[buckets];
+        this.mask = buckets - 1;
+    }
+
+    public TimerGroup group() {
+        return new TimerGroup(this);
+    }
+
+    /**
+     * Arms a one-shot timer.
+     */
+    public Timeout setTimer(TimerGroup group, long delay, Handler<Timeout> handler) {
+        return arm(group, delay, 0, handler);
+    }
+
+    /**
+     * Arms a repeating timer.
+     */
+    public Timeout setPeriodic(TimerGroup group, long period, Handler<Timeout> handler) {
+        return arm(group, period, Math.max(1, ticks(period)), handler);
+    }
+
+    /**
+     * Arms a repeating timer firing first after the given delay.
+     */
+    public Timeout setPeriodic(TimerGroup group, long delay, long period, Handler<Timeout> handler) {
+        return arm(group, delay, Math.max(1, ticks(period)), handler);
+    }
+
+    /**
+     * Returns the number of armed timers.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Returns how often the wheel woke up to fire timers.
+     */
+    public synchronized long wakeups() {
+        return wakeups;
+    }
+
+    private Timeout arm(TimerGroup group, long delay, long periodTicks, Handler<Timeout> handler) {
+        Timeout timeout = new Timeout(this, group, handler, periodTicks);
+
+        long wake = 0;
+        long wakeTick = 0;
+        synchronized (this) {
+            if (!running) {
+                // Nothing has been processed while idle, skip straight to now.
+                tick = currentTick();
+            }
+
+            long deadline = elapsed() + TimeUnit.MILLISECONDS.toNanos(delay);
+            timeout.deadlineTick = Math.max(tick + 1, (deadline + tickNanos - 1) / tickNanos);
+
+            link(timeout);
+            group.link(timeout);
+            size++;
+
+            if (!running || timeout.deadlineTick < this.wakeTick) {
+                wakeTick = timeout.deadlineTick;
+                wake = plan(wakeTick);
+            }
+        }
+
+        if (wake != 0) {
+            schedule(wake, wakeTick);
+        }
+
+        return timeout;
+    }
+
+    synchronized boolean cancel(Timeout timeout) {
+        if (timeout.state == Timeout.FIRING) {
+            timeout.state = Timeout.CANCELLED;
+            return true;
+        }
+        if (timeout.state != Timeout.PENDING) {
+            return false;
+        }
+        unlink(timeout);
+        timeout.group.unlink(timeout);
+        timeout.state = Timeout.CANCELLED;
+        size--;
+        return true;
+    }
+
+    synchronized int cancelAll(TimerGroup group) {
+        int cancelled = 0;
+        Timeout timeout = group.head;
+        while (timeout != null) {
+            Timeout next = timeout.groupNext;
+            if (timeout.state == Timeout.PENDING) {
+                unlink(timeout);
+                size--;
+            }
+            timeout.state = Timeout.CANCELLED;
+            timeout.groupPrev = null;
+            timeout.groupNext = null;
+            cancelled++;
+            timeout = next;
+        }
+        group.head = null;
+        group.size = 0;
+        return cancelled;
+    }
+
+    synchronized long remaining(Timeout timeout) {
+        if (timeout.state != Timeout.PENDING) {
+            return 0;
+        }
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(timeout.deadlineTick * tickNanos - elapsed()));
+    }
+
+    /**
+     * Makes the wheel wake at a tick, replacing any earlier wake-up. Must be
+     * called with the lock held.
+     *
+     * @return the wake-up to pass to {@link #schedule(long, long)}
+     */
+    private long plan(long deadlineTick) {
+        running = true;
+        wakeTick = deadlineTick;
+        return ++wake;
+    }
+
+    /**
+     * Sets the Vert.x timer of a wake-up unless a later call replaced it, and
+     * cancels the timer of the one it replaced.
+     */
+    private void schedule(long wake, long deadlineTick) {
+        if (Vertx.currentContext() != context) {
+            context.runOnContext(v -> schedule(wake, deadlineTick));
+            return;
+        }
+
+        long delay = (deadlineTick * tickNanos - elapsed() + 999999) / 1000000;
+        long timer = vertx.setTimer(Math.max(1, delay), t -> wake(wake));
+
+        long stale;
+        synchronized (this) {
+            if (wake == this.wake) {
+                stale = wakeTimer;
+                wakeTimer = timer;
+            } else {
+                stale = timer;
+            }
+        }
+        if (stale >= 0) {
+            vertx.cancelTimer(stale);
+        }
+    }
+
+    private void wake(long wake) {
+        synchronized (this) {
+            if (wake != this.wake) {
+                return;
+            }
+            wakeTimer = -1;
+            wakeups++;
+        }
+        advance();
+    }
+
+    private void advance() {
+        Timeout fired = null;
+
+        synchronized (this) {
+            long target = currentTick();
+            long steps = Math.min(target - tick, buckets.length);
+
+            for (long i = 1; i <= steps; i++) {
+                int index = (int) ((tick + i) & mask);
+                Timeout timeout = buckets[index];
+                while (timeout != null) {
+                    Timeout next = timeout.bucketNext;
+                    if (timeout.deadlineTick <= target) {
+                        unlink(timeout);
+                        if (timeout.periodTicks > 0) {
+                            timeout.deadlineTick = Math.max(target + 1, timeout.deadlineTick + timeout.periodTicks);
+                            link(timeout);
+                        } else {
+                            timeout.group.unlink(timeout);
+                            timeout.state = Timeout.FIRING;
+                            size--;
+                        }
+                        timeout.nextFired = fired;
+                        fired = timeout;
+                    }
+                    timeout = next;
+                }
+            }
+            tick = Math.max(tick, target);
+        }
+
+        while (fired != null) {
+            Timeout timeout = fired;
+            fired = timeout.nextFired;
+            timeout.nextFired = null;
+
+            boolean run;
+            synchronized (this) {
+                run = timeout.state != Timeout.CANCELLED;
+                if (timeout.state == Timeout.FIRING) {
+                    timeout.state = Timeout.DONE;
+                }
+            }
+
+            if (run) {
+                try {
+                    timeout.handler.handle(timeout);
+                } catch (RuntimeException e) {
+                    logger.error("Timer handler failed.", e);
+                }
+            }
+        }
+
+        long wake;
+        long next;
+        synchronized (this) {
+            if (size == 0) {
+                running = false;
+                wakeTick = Long.MAX_VALUE;
+                this.wake++;
+                return;
+            }
+            next = next();
+            wake = plan(next);
+        }
+        schedule(wake, next);
+    }
+
+    /**
+     * Returns the earliest deadline of the armed timers. Buckets are walked from
+     * the current tick, so a timer due in this rotation of the wheel ends the
+     * walk at its bucket. Must be called with the lock held.
+     */
+    private long next() {
+        long earliest = Long.MAX_VALUE;
+        for (int i = 1; i <= buckets.length; i++) {
+            Timeout timeout = buckets[(int) ((tick + i) & mask)];
+            while (timeout != null) {
+                if (timeout.deadlineTick <= tick + i) {
+                    return timeout.deadlineTick;
+                }
+                earliest = Math.min(earliest, timeout.deadlineTick);
+                timeout = timeout.bucketNext;
+            }
+        }
+        return earliest;
+    }
+
+    private void link(Timeout timeout) {
+        int index = (int) (timeout.deadlineTick & mask);
+        timeout.bucketPrev = null;
+        timeout.bucketNext = buckets[index];
+        if (buckets[index] != null) {
+            buckets[index].bucketPrev = timeout;
+        }
+        buckets[index] = timeout;
+    }
+
+    private void unlink(Timeout timeout) {
+        if (timeout.bucketPrev != null) {
+            timeout.bucketPrev.bucketNext = timeout.bucketNext;
+        } else {
+            buckets[(int) (timeout.deadlineTick & mask)] = timeout.bucketNext;
+        }
+        if (timeout.bucketNext != null) {
+            timeout.bucketNext.bucketPrev = timeout.bucketPrev;
+        }
+        timeout.bucketPrev = null;
+        timeout.bucketNext = null;
+    }
+
+    private long ticks(long millis) {
+        return (TimeUnit.MILLISECONDS.toNanos(millis) + tickNanos - 1) / tickNanos;
+    }
+
+    private long currentTick() {
+        return elapsed() / tickNanos;
+    }
+
+    private long elapsed() {
+        return System.nanoTime() - startTime;
+    }
+}
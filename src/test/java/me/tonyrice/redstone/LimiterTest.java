@@ -0,0 +1,102 @@
+package me.tonyrice.redstone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import io.vertx.core.json.JsonObject;
+
+public class LimiterTest {
+
+    final private static long START = TimeUnit.SECONDS.toNanos(1000);
+
+    @Test
+    public void limitsOnlyConfiguredHooks() {
+        assertNull(limiter(new JsonObject()));
+    }
+
+    @Test
+    public void throttlesWithinTheWindow() {
+        Limiter limiter = limiter(new JsonObject().put("throttle_ms", 100));
+
+        assertEquals(Limiter.PASS, limiter.admit(START));
+        assertEquals(Limiter.THROTTLED, limiter.admit(START + millis(50)));
+        assertEquals(Limiter.THROTTLED, limiter.admit(START + millis(99)));
+        assertEquals(Limiter.PASS, limiter.admit(START + millis(100)));
+        assertEquals(Limiter.THROTTLED, limiter.admit(START + millis(150)));
+        assertEquals(3, limiter.throttled.sum());
+    }
+
+    @Test
+    public void limitsTheRateWithBursts() {
+        // Two trips a second with bursts of three.
+        Limiter limiter = limiter(new JsonObject().put("rate", 2).put("burst", 3));
+
+        assertEquals(Limiter.PASS, limiter.admit(START));
+        assertEquals(Limiter.PASS, limiter.admit(START));
+        assertEquals(Limiter.PASS, limiter.admit(START));
+        assertEquals(Limiter.LIMITED, limiter.admit(START));
+
+        // A token is added every 500 ms.
+        assertEquals(Limiter.LIMITED, limiter.admit(START + millis(499)));
+        assertEquals(Limiter.PASS, limiter.admit(START + millis(500)));
+        assertEquals(Limiter.LIMITED, limiter.admit(START + millis(500)));
+
+        // An idle bucket fills up to the burst and no further.
+        long idle = START + TimeUnit.SECONDS.toNanos(60);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(Limiter.PASS, limiter.admit(idle));
+        }
+        assertEquals(Limiter.LIMITED, limiter.admit(idle));
+        assertEquals(4, limiter.limited.sum());
+    }
+
+    @Test
+    public void burstsDefaultToTheRate() {
+        Limiter limiter = limiter(new JsonObject().put("rate", 0.5));
+
+        assertEquals(Limiter.PASS, limiter.admit(START));
+        assertEquals(Limiter.LIMITED, limiter.admit(START + millis(1999)));
+        assertEquals(Limiter.PASS, limiter.admit(START + millis(2000)));
+    }
+
+    @Test
+    public void debouncesUntilQuiet() {
+        Limiter limiter = limiter(new JsonObject().put("debounce_ms", 100));
+
+        // Only the first trip arms the timer, later ones push the window back.
+        assertTrue(limiter.debounce(START));
+        assertFalse(limiter.debounce(START + millis(50)));
+        assertEquals(50, limiter.settle(START + millis(100)));
+        assertFalse(limiter.debounce(START + millis(120)));
+        assertEquals(70, limiter.settle(START + millis(150)));
+        assertEquals(0, limiter.settle(START + millis(220)));
+
+        // Two of the three trips were suppressed, the last one ran.
+        assertEquals(2, limiter.debounced.sum());
+        assertTrue(limiter.debounce(START + millis(300)));
+    }
+
+    @Test
+    public void resetsACancelledDebounce() {
+        Limiter limiter = limiter(new JsonObject().put("debounce_ms", 100));
+
+        assertTrue(limiter.debounce(START));
+        assertFalse(limiter.debounce(START + millis(10)));
+        limiter.reset();
+        assertTrue(limiter.debounce(START + millis(20)));
+    }
+
+    private static Limiter limiter(JsonObject hook) {
+        return Limiter.of(HookPlan.compile(hook, new JsonObject()));
+    }
+
+    private static long millis(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+}
@@ -0,0 +1,89 @@
+package me.tonyrice.redstone;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+public class PlanTest {
+
+    @Test
+    public void resolvesActionsOnce() {
+        Plan plan = Plan.compile(new JsonObject()
+                .put("_config_ifttt_key", "secret")
+                .put("_config_coalesce_ms", 500)
+                .put("away", new JsonObject()
+                        .put("title", "Away")
+                        .put("layer", "security")
+                        .put("opened", new JsonObject()
+                                .put("http_get", new JsonArray().add("http://siren/on").add("http://lights/on"))
+                                .put("ifttt", "door_opened")
+                                .put("timer", new JsonObject().put("delay", 1000).put("wire", "home"))
+                                .put("hook", new JsonObject().put("kill_timers", "motion")))));
+
+        assertEquals("secret", plan.config.getString("ifttt_key"));
+        WirePlan away = plan.wires.get("away");
+        assertEquals("Away", away.title);
+        assertEquals("security", away.layer);
+        assertEquals(1, away.hooks.size());
+
+        HookPlan opened = away.hooks.get("opened");
+        assertEquals(5, opened.actions.length);
+        assertEquals(Action.Kind.TIMER, opened.actions[0].kind);
+        assertEquals(1000, opened.actions[0].delay);
+        assertEquals(Action.Kind.WIRE, opened.actions[0].child.actions[0].kind);
+        assertEquals("home", opened.actions[0].child.actions[0].target);
+        assertSame(opened.actions[0], opened.node(opened.actions[0].slot));
+
+        assertEquals("http://siren/on", opened.actions[1].target);
+        assertEquals("http://lights/on", opened.actions[2].target);
+        assertEquals(500, opened.actions[1].coalesce);
+        assertEquals("https://maker.ifttt.com/trigger/door_opened/with/key/secret", opened.actions[3].target);
+        assertEquals("door_opened", opened.actions[3].name);
+
+        assertEquals(Action.Kind.INLINE_HOOK, opened.actions[4].kind);
+        assertArrayEquals(new String[] { "motion" }, opened.actions[4].child.actions[0].targets);
+    }
+
+    @Test
+    public void sharesThePlansOfAliases() {
+        Plan plan = Plan.compile(new JsonObject()
+                .put("_alias_siren", new JsonObject().put("http_get", "http://siren/on"))
+                .put("away", new JsonObject().put("opened", "siren").put("closed", "unknown"))
+                .put("night", new JsonObject().put("opened", "siren")));
+
+        assertEquals(2, plan.wires.size());
+        assertSame(plan.wires.get("away").hooks.get("opened"), plan.wires.get("night").hooks.get("opened"));
+        // Aliases that do not exist are no hooks.
+        assertFalse(plan.wires.get("away").hooks.containsKey("closed"));
+    }
+
+    @Test
+    public void allowsHooksTrippingThemselves() {
+        Plan plan = Plan.compile(new JsonObject().put("away", new JsonObject()
+                .put("opened", new JsonObject().put("hook", "opened"))
+                .put("motion", new JsonObject().put("hook", new JsonObject().put("hook", "motion")))));
+
+        assertEquals(2, plan.wires.get("away").hooks.size());
+    }
+
+    @Test
+    public void rejectsHooksTrippingEachOther() {
+        try {
+            Plan.compile(new JsonObject().put("away", new JsonObject()
+                    .put("opened", new JsonObject().put("hook", "motion"))
+                    .put("motion", new JsonObject().put("hook", "closed"))
+                    .put("closed", new JsonObject().put("hook", "opened"))));
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().endsWith("opened -> motion -> closed -> opened."));
+        }
+    }
+}
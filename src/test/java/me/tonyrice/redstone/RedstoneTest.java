@@ -0,0 +1,346 @@
+package me.tonyrice.redstone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import me.tonyrice.redstone.events.EventLog;
+
+public class RedstoneTest {
+
+    private Vertx vertx;
+    private File wires;
+
+    @Before
+    public void setUp() throws IOException {
+        vertx = Vertx.vertx();
+        wires = File.createTempFile("wires", ".json");
+    }
+
+    @After
+    public void tearDown() {
+        vertx.close();
+        wires.delete();
+    }
+
+    @Test
+    public void dropsDebouncedTripsOfDeactivatedWires() throws Exception {
+        Redstone redstone = create(new JsonObject()
+                .put("_config_default_wire", "away")
+                .put("away", new JsonObject().put("motion", new JsonObject().put("debounce_ms", 100)))
+                .put("home", new JsonObject()));
+        Redstone.Wire away = redstone.wire("away");
+        await(() -> away.active());
+
+        redstone.trip("motion");
+        redstone.wire("home").activate();
+        await(() -> !away.active());
+
+        Thread.sleep(300);
+        assertEquals(0, runs(redstone, "motion"));
+
+        // The cancelled debounce does not keep later trips from arming a new one.
+        away.activate();
+        await(() -> away.active());
+        redstone.trip("motion");
+        redstone.trip("motion");
+        await(() -> runs(redstone, "motion") == 1);
+
+        Thread.sleep(200);
+        assertEquals(1, runs(redstone, "motion"));
+    }
+
+    @Test
+    public void runsTripsOnTheEventLoopOfTheirLayer() throws Exception {
+        Redstone redstone = create(new JsonObject()
+                .put("_config_default_wire", "away")
+                .put("away", new JsonObject().put("opened", new JsonObject().put("wire", "home")))
+                .put("home", new JsonObject()));
+        await(() -> redstone.wire("away").active());
+
+        List<Context> contexts = new CopyOnWriteArrayList<>();
+        List<Boolean> eventLoop = new CopyOnWriteArrayList<>();
+        redstone.listen(delta -> {
+            if ("activate".equals(delta.getString("type"))) {
+                contexts.add(Vertx.currentContext());
+                eventLoop.add(Context.isOnEventLoopThread());
+            }
+        });
+
+        redstone.trip("opened");
+        await(() -> !contexts.isEmpty());
+        assertSame(redstone.wire("away").getLayer().context(), contexts.get(0));
+        assertTrue(eventLoop.get(0));
+    }
+
+    @Test
+    public void runsBlockingHooksOnWorkers() throws Exception {
+        Redstone redstone = create(new JsonObject()
+                .put("_config_default_wire", "away")
+                .put("away", new JsonObject().put("opened", new JsonObject().put("blocking", true)
+                        .put("wire", "home")))
+                .put("home", new JsonObject()));
+        await(() -> redstone.wire("away").active());
+
+        List<Boolean> worker = new CopyOnWriteArrayList<>();
+        redstone.listen(delta -> {
+            if ("activate".equals(delta.getString("type"))) {
+                worker.add(Context.isOnWorkerThread());
+            }
+        });
+
+        redstone.trip("opened");
+        await(() -> !worker.isEmpty());
+        assertTrue(worker.get(0));
+        await(() -> redstone.wire("home").active());
+    }
+
+    @Test
+    public void dropsTripsBeyondTheMailboxSize() throws Exception {
+        Redstone redstone = create(new JsonObject()
+                .put("_config_default_wire", "away")
+                .put("_config_mailbox_size", 2)
+                .put("away", new JsonObject().put("opened", new JsonObject())));
+        await(() -> redstone.wire("away").active());
+
+        // The first trip holds the layer while the next ones pile up in the mailbox.
+        CountDownLatch handling = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        redstone.listen(delta -> {
+            if ("trip".equals(delta.getString("type")) && handling.getCount() > 0) {
+                handling.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        assertEquals(EventLog.TRIPPED, redstone.trip("opened", null, null));
+        assertTrue(handling.await(5, TimeUnit.SECONDS));
+        assertEquals(EventLog.TRIPPED, redstone.trip("opened", null, null));
+        assertEquals(EventLog.TRIPPED, redstone.trip("opened", null, null));
+        assertEquals(EventLog.DROPPED, redstone.trip("opened", null, null));
+
+        release.countDown();
+        await(() -> runs(redstone, "opened") == 3);
+        assertEquals(1, redstone.events().query(-1, 100, null, "opened", EventLog.TRIP, EventLog.DROPPED)
+                .getJsonArray("events").size());
+
+        // The drained mailbox takes trips again.
+        assertEquals(EventLog.TRIPPED, redstone.trip("opened", null, null));
+        await(() -> runs(redstone, "opened") == 4);
+    }
+
+    @Test
+    public void runsLayersConcurrently() throws Exception {
+        Redstone redstone = create(new JsonObject()
+                .put("_config_default_wire", new JsonArray().add("armed").add("lights_on"))
+                .put("armed", new JsonObject().put("layer", "security").put("opened", new JsonObject()))
+                .put("lights_on", new JsonObject().put("layer", "lighting").put("opened", new JsonObject())));
+        await(() -> redstone.wire("armed").active() && redstone.wire("lights_on").active());
+
+        Context security = redstone.wire("armed").getLayer().context();
+        Context lighting = redstone.wire("lights_on").getLayer().context();
+        assertNotSame(security, lighting);
+
+        // The security layer blocks until the lighting layer handled the same trip.
+        CountDownLatch lit = new CountDownLatch(1);
+        List<Boolean> overlapped = new CopyOnWriteArrayList<>();
+        redstone.listen(delta -> {
+            if (!"trip".equals(delta.getString("type"))) {
+                return;
+            }
+            if ("lighting".equals(delta.getString("layer"))) {
+                lit.countDown();
+                return;
+            }
+            try {
+                overlapped.add(lit.await(2, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                overlapped.add(false);
+            }
+        });
+
+        redstone.trip("opened");
+        await(() -> !overlapped.isEmpty());
+        assertTrue(overlapped.get(0));
+    }
+
+    @Test
+    public void runsTimersOnTheirLayer() throws Exception {
+        Redstone redstone = create(new JsonObject()
+                .put("_config_default_wire", "armed")
+                .put("armed", new JsonObject().put("layer", "security")
+                        .put("leave", new JsonObject().put("timer", new JsonObject().put("delay", 20)
+                                .put("wire", "disarmed"))))
+                .put("disarmed", new JsonObject().put("layer", "security")));
+        await(() -> redstone.wire("armed").active());
+
+        List<Context> contexts = new CopyOnWriteArrayList<>();
+        redstone.listen(delta -> {
+            if ("activate".equals(delta.getString("type"))) {
+                contexts.add(Vertx.currentContext());
+            }
+        });
+
+        redstone.trip("leave");
+        await(() -> !contexts.isEmpty());
+        assertTrue(redstone.wire("disarmed").active());
+        assertSame(redstone.wire("armed").getLayer().context(), contexts.get(0));
+    }
+
+    @Test
+    public void closesItsLayers() throws Exception {
+        Redstone redstone = create(new JsonObject()
+                .put("armed", new JsonObject().put("layer", "security"))
+                .put("lights_on", new JsonObject().put("layer", "lighting")));
+        int deployed = vertx.deploymentIDs().size();
+        assertEquals(2, redstone.layers().size());
+
+        redstone.close();
+        assertTrue(redstone.layers().isEmpty());
+        await(() -> vertx.deploymentIDs().size() == deployed - 2);
+    }
+
+    @Test
+    public void reloadsKeepingTheActiveWireAndItsTimers() throws Exception {
+        JsonObject leave = new JsonObject().put("timer", new JsonObject().put("delay", 300).put("wire", "home"));
+        Redstone redstone = load(new JsonObject()
+                .put("_config_default_wire", "away")
+                .put("away", new JsonObject().put("leave", leave).put("opened", new JsonObject()))
+                .put("home", new JsonObject().put("arrived", new JsonObject())));
+        Redstone.Wire away = redstone.wire("away");
+        await(() -> away.active());
+        redstone.trip("leave");
+
+        write(new JsonObject()
+                .put("_config_default_wire", "away")
+                .put("away", new JsonObject().put("leave", leave.copy())
+                        .put("opened", new JsonObject().put("wire", "home"))
+                        .put("closed", new JsonObject()))
+                .put("home", new JsonObject())
+                .put("night", new JsonObject().put("dark", new JsonObject())));
+        JsonObject diff = reload(redstone).result();
+
+        assertEquals(new JsonArray().add("away.closed").add("night.dark"), sorted(diff.getJsonArray("added")));
+        assertEquals(new JsonArray().add("home.arrived"), diff.getJsonArray("removed"));
+        assertEquals(new JsonArray().add("away.opened"), diff.getJsonArray("changed"));
+        assertEquals(new JsonArray().add("away.leave"), diff.getJsonArray("unchanged"));
+
+        // The wire object survives the swap and the timer armed before still fires.
+        assertSame(away, redstone.wire("away"));
+        assertTrue(away.active());
+        assertNotNull(redstone.wire("night"));
+        await(() -> redstone.wire("home").active());
+    }
+
+    @Test
+    public void reloadsWithoutTheActiveWire() throws Exception {
+        Redstone redstone = load(new JsonObject()
+                .put("_config_default_wire", "home")
+                .put("away", new JsonObject().put("leave", new JsonObject().put("timer",
+                        new JsonObject().put("delay", 300).put("wire", "night"))))
+                .put("home", new JsonObject().put("go", new JsonObject().put("wire", "away")))
+                .put("night", new JsonObject()));
+        await(() -> redstone.wire("home").active());
+        redstone.trip("go");
+        await(() -> redstone.wire("away").active());
+        redstone.trip("leave");
+
+        write(new JsonObject()
+                .put("_config_default_wire", "home")
+                .put("home", new JsonObject().put("go", new JsonObject().put("wire", "away")))
+                .put("night", new JsonObject()));
+        JsonObject diff = reload(redstone).result();
+        assertEquals(new JsonArray().add("away.leave"), diff.getJsonArray("removed"));
+
+        // The default wire takes over and the timer of the removed wire is cancelled.
+        assertNull(redstone.wire("away"));
+        await(() -> redstone.wire("home").active());
+        Thread.sleep(500);
+        assertTrue(redstone.wire("home").active());
+        assertFalse(redstone.wire("night").active());
+    }
+
+    @Test
+    public void keepsTheWiresOfAFailedReload() throws Exception {
+        Redstone redstone = load(new JsonObject()
+                .put("_config_default_wire", "away")
+                .put("away", new JsonObject().put("opened", new JsonObject())));
+        await(() -> redstone.wire("away").active());
+
+        Files.write(wires.toPath(), "{".getBytes(StandardCharsets.UTF_8));
+        assertTrue(reload(redstone).failed());
+        assertTrue(redstone.wire("away").active());
+        assertEquals(EventLog.TRIPPED, redstone.trip("opened", null, null));
+    }
+
+    Redstone create(JsonObject wireData) throws IOException {
+        return Redstone.create(vertx, wireData, null);
+    }
+
+    private Redstone load(JsonObject wireData) throws Exception {
+        write(wireData);
+        CompletableFuture<AsyncResult<Redstone>> loaded = new CompletableFuture<>();
+        Redstone.load(vertx, wires.getPath(), loaded::complete);
+        return loaded.get(5, TimeUnit.SECONDS).result();
+    }
+
+    private void write(JsonObject wireData) throws IOException {
+        Files.write(wires.toPath(), wireData.encode().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static AsyncResult<JsonObject> reload(Redstone redstone) throws Exception {
+        CompletableFuture<AsyncResult<JsonObject>> reloaded = new CompletableFuture<>();
+        redstone.reload(reloaded::complete);
+        return reloaded.get(5, TimeUnit.SECONDS);
+    }
+
+    private static JsonArray sorted(JsonArray ids) {
+        List<Object> list = ids.copy().getList();
+        list.sort(null);
+        return new JsonArray(list);
+    }
+
+    /**
+     * Returns the number of times a hook ran its actions.
+     */
+    static int runs(Redstone redstone, String hookId) {
+        return redstone.events().query(-1, Integer.MAX_VALUE, null, hookId, EventLog.RUN, EventLog.OK)
+                .getJsonArray("events").size();
+    }
+
+    static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue("Timed out waiting for a condition.", System.nanoTime() < deadline);
+            Thread.sleep(5);
+        }
+    }
+}
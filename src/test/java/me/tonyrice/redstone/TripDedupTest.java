@@ -0,0 +1,84 @@
+package me.tonyrice.redstone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import io.vertx.core.json.JsonObject;
+
+public class TripDedupTest {
+
+    @Test
+    public void acknowledgesRetriedTrips() {
+        TripDedup dedup = new TripDedup(1024, 60000);
+
+        assertFalse(dedup.duplicate("opened", "1"));
+        assertTrue(dedup.duplicate("opened", "1"));
+        assertFalse(dedup.duplicate("closed", "1"));
+        assertFalse(dedup.duplicate("opened", "2"));
+
+        JsonObject stats = dedup.stats();
+        assertEquals(3, (int) stats.getInteger("entries"));
+        assertEquals(1, (long) stats.getLong("hits"));
+        assertEquals(3, (long) stats.getLong("misses"));
+    }
+
+    @Test
+    public void forgetsRejectedTrips() {
+        TripDedup dedup = new TripDedup(1024, 60000);
+
+        assertFalse(dedup.duplicate("opened", "1"));
+        dedup.forget("opened", "1");
+        assertEquals(0, (int) dedup.stats().getInteger("entries"));
+
+        assertFalse(dedup.duplicate("opened", "1"));
+        assertTrue(dedup.duplicate("opened", "1"));
+    }
+
+    @Test
+    public void expiresIdsAfterTheWindow() throws InterruptedException {
+        TripDedup dedup = new TripDedup(1024, 1000);
+
+        assertFalse(dedup.duplicate("opened", "1"));
+        assertTrue(dedup.duplicate("opened", "1"));
+
+        Thread.sleep(2100);
+        assertEquals(0, (int) dedup.stats().getInteger("entries"));
+        assertFalse(dedup.duplicate("opened", "1"));
+        assertTrue(dedup.duplicate("opened", "1"));
+        assertEquals(1, (int) dedup.stats().getInteger("entries"));
+    }
+
+    @Test
+    public void letsTripsThroughOnceCrowded() {
+        TripDedup dedup = new TripDedup(16, 60000);
+
+        for (int i = 0; i < 64; i++) {
+            assertFalse(dedup.duplicate("opened", Integer.toString(i)));
+        }
+
+        JsonObject stats = dedup.stats();
+        assertEquals(16, (int) stats.getInteger("entries"));
+        assertEquals(48, (long) stats.getLong("overflows"));
+        assertEquals(16 * 12, (long) stats.getLong("memory_bytes"));
+    }
+
+    @Test
+    public void findsIdsPastCollisions() {
+        TripDedup dedup = new TripDedup(64, 60000);
+
+        for (int i = 0; i < 48; i++) {
+            dedup.duplicate("opened", Integer.toString(i));
+        }
+        int remembered = 0;
+        for (int i = 0; i < 48; i++) {
+            if (dedup.duplicate("opened", Integer.toString(i))) {
+                remembered++;
+            }
+        }
+        assertEquals(remembered, (int) dedup.stats().getInteger("entries"));
+        assertTrue(remembered > 40);
+    }
+}
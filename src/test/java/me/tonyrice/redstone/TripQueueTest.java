@@ -0,0 +1,104 @@
+package me.tonyrice.redstone;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import me.tonyrice.redstone.events.EventLog;
+
+public class TripQueueTest {
+
+    private final List<String> dropped = new ArrayList<>();
+    private final List<String> released = new ArrayList<>();
+
+    private TripQueue queue(int capacity, int policy) {
+        return new TripQueue(capacity, policy, (hookId, handler) -> dropped.add(hookId));
+    }
+
+    private void drain(TripQueue queue) {
+        queue.drain(Integer.MAX_VALUE, (hookId, handler, count) -> released.add(hookId + "x" + count));
+    }
+
+    @Test
+    public void dropsOldestTrips() {
+        TripQueue queue = queue(3, TripQueue.DROP_OLDEST);
+        for (String hookId : Arrays.asList("a", "b", "c", "d", "e")) {
+            assertEquals(EventLog.QUEUED, queue.offer(hookId, Redstone.NOOP));
+        }
+        drain(queue);
+
+        assertEquals(Arrays.asList("a", "b"), dropped);
+        assertEquals(Arrays.asList("cx1", "dx1", "ex1"), released);
+        assertEquals(2, queue.droppedTrips.sum());
+    }
+
+    @Test
+    public void dropsNewestTrips() {
+        TripQueue queue = queue(3, TripQueue.DROP_NEWEST);
+        for (String hookId : Arrays.asList("a", "b", "c")) {
+            assertEquals(EventLog.QUEUED, queue.offer(hookId, Redstone.NOOP));
+        }
+        assertEquals(EventLog.DROPPED, queue.offer("d", Redstone.NOOP));
+        drain(queue);
+
+        assertEquals(Arrays.asList("d"), dropped);
+        assertEquals(Arrays.asList("ax1", "bx1", "cx1"), released);
+    }
+
+    @Test
+    public void coalescesTripsOfQueuedHooks() {
+        TripQueue queue = queue(2, TripQueue.COALESCE);
+        assertEquals(EventLog.QUEUED, queue.offer("a", Redstone.NOOP));
+        assertEquals(EventLog.QUEUED, queue.offer("b", Redstone.NOOP));
+        assertEquals(EventLog.COALESCED, queue.offer("a", Redstone.NOOP));
+        assertEquals(EventLog.DROPPED, queue.offer("c", Redstone.NOOP));
+
+        queue.drain(1, (hookId, handler, count) -> released.add(hookId + "x" + count));
+        assertEquals(EventLog.QUEUED, queue.offer("a", Redstone.NOOP));
+        assertEquals(EventLog.COALESCED, queue.offer("b", Redstone.NOOP));
+        drain(queue);
+
+        assertEquals(Arrays.asList("ax2", "bx2", "ax1"), released);
+        assertEquals(2, queue.coalescedTrips.sum());
+    }
+
+    @Test
+    public void coalescesAcrossGrowthAndWrapping() {
+        TripQueue queue = queue(100, TripQueue.COALESCE);
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 90; i++) {
+                queue.offer("hook" + i, Redstone.NOOP);
+            }
+            for (int i = 0; i < 90; i += 3) {
+                assertEquals(EventLog.COALESCED, queue.offer("hook" + i, Redstone.NOOP));
+            }
+            released.clear();
+            queue.drain(45, (hookId, handler, count) -> released.add(hookId + "x" + count));
+            assertEquals(45, released.size());
+        }
+        assertEquals(45, queue.size());
+
+        released.clear();
+        drain(queue);
+        assertEquals(45, released.size());
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void completesCombinedHandlers() {
+        TripQueue queue = queue(4, TripQueue.COALESCE);
+        List<String> completed = new ArrayList<>();
+        queue.offer("a", result -> completed.add("first"));
+        queue.offer("a", result -> completed.add("second"));
+        queue.clear();
+
+        assertEquals(Arrays.asList("a"), dropped);
+        queue.offer("b", result -> completed.add("third"));
+        queue.drain(1, (hookId, handler, count) -> handler.handle(null));
+        assertEquals(Arrays.asList("third"), completed);
+    }
+}
@@ -0,0 +1,107 @@
+package me.tonyrice.redstone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+public class WireFileTest {
+
+    private Path wires;
+    private Path snapshot;
+
+    @Before
+    public void setUp() throws IOException {
+        wires = File.createTempFile("wires", ".json").toPath();
+        snapshot = WireFile.snapshotOf(wires);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(wires);
+        Files.deleteIfExists(snapshot);
+    }
+
+    @Test
+    public void loadsFromTheSnapshotOnceWritten() throws IOException {
+        JsonObject wireData = new JsonObject()
+                .put("_config_snapshot", true)
+                .put("_config_timer_tick_ms", 10)
+                .put("_config_trip_dedup_ms", 60000000000L)
+                .put("_config_trip_cache_release_rate", 2.5)
+                .put("away", new JsonObject().put("title", "Away \u00e9")
+                        .put("opened", new JsonObject().put("wire", "home").put("blocking", false)
+                                .put("http", new JsonArray().add("http://siren").addNull())));
+        write(wireData);
+
+        WireFile parsed = WireFile.read(wires.toString());
+        assertFalse(parsed.fromSnapshot);
+        assertEquals(wireData, parsed.wireData);
+        assertTrue(Files.exists(snapshot));
+
+        WireFile loaded = WireFile.read(wires.toString());
+        assertTrue(loaded.fromSnapshot);
+        assertEquals(wireData, loaded.wireData);
+        assertEquals(2.5, loaded.wireData.getDouble("_config_trip_cache_release_rate"), 0.0);
+        assertEquals(60000000000L, (long) loaded.wireData.getLong("_config_trip_dedup_ms"));
+    }
+
+    @Test
+    public void ignoresAStaleSnapshot() throws IOException {
+        write(new JsonObject().put("_config_snapshot", true).put("away", new JsonObject().put("title", "Away")));
+        WireFile.read(wires.toString());
+        FileTime modified = Files.getLastModifiedTime(wires);
+
+        // Same size and modification time, so only the checksum tells them apart.
+        JsonObject changed = new JsonObject().put("_config_snapshot", true)
+                .put("away", new JsonObject().put("title", "Gone"));
+        write(changed);
+        Files.setLastModifiedTime(wires, modified);
+
+        WireFile read = WireFile.read(wires.toString());
+        assertFalse(read.fromSnapshot);
+        assertEquals(changed, read.wireData);
+        assertTrue(WireFile.read(wires.toString()).fromSnapshot);
+    }
+
+    @Test
+    public void parsesTheFileIfTheSnapshotIsCorrupt() throws IOException {
+        JsonObject wireData = new JsonObject().put("_config_snapshot", true).put("away", new JsonObject());
+        write(wireData);
+        WireFile.read(wires.toString());
+
+        Files.write(snapshot, new byte[] { 1, 2, 3 });
+        WireFile read = WireFile.read(wires.toString());
+        assertFalse(read.fromSnapshot);
+        assertEquals(wireData, read.wireData);
+    }
+
+    @Test
+    public void removesTheSnapshotOnceDisabled() throws IOException {
+        write(new JsonObject().put("_config_snapshot", true).put("away", new JsonObject()));
+        WireFile.read(wires.toString());
+        assertTrue(Files.exists(snapshot));
+
+        write(new JsonObject().put("away", new JsonObject()).put("home", new JsonObject()));
+        WireFile read = WireFile.read(wires.toString());
+        assertFalse(read.fromSnapshot);
+        assertFalse(Files.exists(snapshot));
+    }
+
+    private void write(JsonObject wireData) throws IOException {
+        Files.write(wires, wireData.encodePrettily().getBytes(StandardCharsets.UTF_8));
+    }
+}
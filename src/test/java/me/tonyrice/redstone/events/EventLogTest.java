@@ -0,0 +1,205 @@
+package me.tonyrice.redstone.events;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+public class EventLogTest {
+
+    @Test
+    public void returnsTheNewestMatchingEvents() {
+        EventLog log = new EventLog(10);
+        assertEquals(16, log.capacity());
+
+        log.record("away", "opened", EventLog.TRIP, null, EventLog.TRIPPED, 0, 0);
+        log.record("away", null, "http", "http://siren", EventLog.OK, 200, 2000000);
+        log.record("home", "opened", EventLog.TRIP, null, EventLog.IGNORED, 0, 0);
+        assertEquals(3, log.head());
+
+        JsonObject all = log.query(-1, 10, null, null, null, null);
+        JsonArray events = all.getJsonArray("events");
+        assertEquals(3, events.size());
+        assertEquals(2, (long) all.getLong("next"));
+        assertEquals(0, (long) all.getLong("missed"));
+
+        JsonObject http = events.getJsonObject(1);
+        assertEquals(1, (long) http.getLong("seq"));
+        assertEquals("http://siren", http.getString("target"));
+        assertEquals(200, (int) http.getInteger("status"));
+        assertEquals(2.0, http.getDouble("latency_ms"), 0.0);
+        assertFalse(events.getJsonObject(0).containsKey("status"));
+
+        JsonArray away = log.query(-1, 10, "away", null, null, null).getJsonArray("events");
+        assertEquals(2, away.size());
+
+        JsonArray trips = log.query(-1, 10, null, "opened", EventLog.TRIP, EventLog.IGNORED).getJsonArray("events");
+        assertEquals(1, trips.size());
+        assertEquals("home", trips.getJsonObject(0).getString("wire"));
+
+        // Without a cursor the limit keeps the newest events.
+        JsonArray newest = log.query(-1, 2, null, null, null, null).getJsonArray("events");
+        assertEquals(2, newest.size());
+        assertEquals(1, (long) newest.getJsonObject(0).getLong("seq"));
+        assertEquals(2, (long) newest.getJsonObject(1).getLong("seq"));
+    }
+
+    @Test
+    public void continuesFromACursor() {
+        EventLog log = new EventLog(16);
+        for (int i = 0; i < 10; i++) {
+            log.record("wire", "hook" + i, EventLog.TRIP, null, EventLog.TRIPPED, 0, 0);
+        }
+
+        // With a cursor the limit keeps the oldest events, so nothing is skipped.
+        JsonObject first = log.query(3, 4, null, null, null, null);
+        JsonArray events = first.getJsonArray("events");
+        assertEquals(4, events.size());
+        assertEquals("hook4", events.getJsonObject(0).getString("hook"));
+        assertEquals(7, (long) first.getLong("next"));
+
+        JsonObject rest = log.query(first.getLong("next"), 100, null, null, null, null);
+        assertEquals(2, rest.getJsonArray("events").size());
+        assertEquals(9, (long) rest.getLong("next"));
+
+        JsonObject empty = log.query(rest.getLong("next"), 100, null, null, null, null);
+        assertTrue(empty.getJsonArray("events").isEmpty());
+        assertEquals(9, (long) empty.getLong("next"));
+    }
+
+    @Test
+    public void countsOverwrittenEventsAsMissed() {
+        EventLog log = new EventLog(16);
+        for (int i = 0; i < 40; i++) {
+            log.record("wire", "hook" + i, EventLog.TRIP, null, EventLog.TRIPPED, 0, 0);
+        }
+
+        JsonArray newest = log.query(-1, 100, null, null, null, null).getJsonArray("events");
+        assertEquals(16, newest.size());
+        assertEquals("hook24", newest.getJsonObject(0).getString("hook"));
+        assertEquals("hook39", newest.getJsonObject(15).getString("hook"));
+
+        JsonObject behind = log.query(4, 100, null, null, null, null);
+        assertEquals(19, (long) behind.getLong("missed"));
+        assertEquals(16, behind.getJsonArray("events").size());
+        assertEquals(39, (long) behind.getLong("next"));
+    }
+
+    @Test
+    public void skipsSlotsHeldTooLong() throws Exception {
+        EventLog log = new EventLog(16);
+        log.record("wire", "hook0", EventLog.TRIP, null, EventLog.TRIPPED, 0, 0);
+
+        // A writer stalled in the next slot makes the event recorded there give up.
+        Field slots = EventLog.class.getDeclaredField("slots");
+        slots.setAccessible(true);
+        Object slot = ((Object[]) slots.get(log))[1];
+        Field version = slot.getClass().getDeclaredField("version");
+        version.setAccessible(true);
+        version.setLong(slot, 1);
+
+        log.record("wire", "hook1", EventLog.TRIP, null, EventLog.TRIPPED, 0, 0);
+        log.record("wire", "hook2", EventLog.TRIP, null, EventLog.TRIPPED, 0, 0);
+        version.setLong(slot, 2);
+
+        JsonObject page = log.query(0, 100, null, null, null, null);
+        assertEquals(1, (long) page.getLong("missed"));
+        assertEquals(1, page.getJsonArray("events").size());
+        assertEquals("hook2", page.getJsonArray("events").getJsonObject(0).getString("hook"));
+        assertEquals(2, (long) page.getLong("next"));
+    }
+
+    @Test
+    public void readersNeverSeeTornEvents() throws InterruptedException {
+        int writers = 4;
+        int perWriter = 200000;
+        EventLog log = new EventLog(16384);
+        log.record("start", "start", EventLog.TRIP, null, EventLog.TRIPPED, 0, 0);
+
+        AtomicBoolean done = new AtomicBoolean();
+        List<String> failures = new CopyOnWriteArrayList<>();
+        CountDownLatch finished = new CountDownLatch(writers);
+
+        for (int w = 0; w < writers; w++) {
+            String wire = "wire" + w;
+            new Thread(() -> {
+                for (int i = 1; i <= perWriter; i++) {
+                    // Every field is derived from the same counter so a torn copy shows.
+                    log.record(wire, wire, EventLog.RUN, Integer.toString(i), EventLog.OK, i, i);
+                }
+                finished.countDown();
+            }).start();
+        }
+
+        Thread[] readers = new Thread[2];
+        long[] seen = new long[readers.length];
+        for (int r = 0; r < readers.length; r++) {
+            int reader = r;
+            readers[r] = new Thread(() -> {
+                // Starts behind the first event, so every later one is read or missed.
+                long next = 0;
+                long count = 1;
+                boolean last = false;
+                while (!last) {
+                    last = done.get();
+                    JsonObject page = log.query(next, 256, null, null, null, null);
+                    long previous = next;
+
+                    for (Object object : page.getJsonArray("events")) {
+                        JsonObject event = (JsonObject) object;
+                        long seq = event.getLong("seq");
+                        if (seq <= previous) {
+                            failures.add("Out of order " + seq + " after " + previous);
+                        }
+                        previous = seq;
+                        if (!consistent(event)) {
+                            failures.add("Torn " + event.encode());
+                        }
+                        count++;
+                    }
+                    count += page.getLong("missed");
+                    next = page.getLong("next");
+                    if (last && next < log.head() - 1) {
+                        last = false;
+                    }
+                }
+                seen[reader] = count;
+            });
+            readers[r].start();
+        }
+
+        finished.await();
+        done.set(true);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        assertTrue(failures.toString(), failures.isEmpty());
+        long total = 1 + (long) writers * perWriter;
+        assertEquals(total, log.head());
+        for (long count : seen) {
+            // Every event was either read or counted as missed.
+            assertEquals(total, count);
+        }
+    }
+
+    private static boolean consistent(JsonObject event) {
+        if (event.getString("wire").equals("start")) {
+            return true;
+        }
+        int status = event.getInteger("status");
+        return event.getString("wire").equals(event.getString("hook"))
+                && event.getString("target").equals(Integer.toString(status))
+                && event.getDouble("latency_ms") == status / 1e6;
+    }
+}
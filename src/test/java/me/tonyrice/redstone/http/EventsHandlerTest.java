@@ -0,0 +1,80 @@
+package me.tonyrice.redstone.http;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.Router;
+import me.tonyrice.redstone.events.EventLog;
+
+public class EventsHandlerTest {
+
+  private Vertx vertx;
+  private EventLog events;
+  private HttpServer server;
+  private HttpClient client;
+
+  @Before
+  public void setUp() throws Exception {
+    vertx = Vertx.vertx();
+    events = new EventLog(16);
+
+    Router router = Router.router(vertx);
+    router.get("/v1/events").handler(new EventsHandler(vertx, events));
+
+    CompletableFuture<HttpServer> listening = new CompletableFuture<>();
+    vertx.createHttpServer().requestHandler(router).listen(0, rs -> listening.complete(rs.result()));
+    server = listening.get(5, TimeUnit.SECONDS);
+    client = vertx.createHttpClient();
+  }
+
+  @After
+  public void tearDown() {
+    vertx.close();
+  }
+
+  @Test
+  public void filtersEvents() throws Exception {
+    events.record("away", "opened", EventLog.TRIP, null, EventLog.TRIPPED, 0, 0);
+    events.record("away", "motion", EventLog.TRIP, null, EventLog.TRIPPED, 0, 0);
+
+    JsonArray all = get("").getJsonArray("events");
+    assertEquals(2, all.size());
+
+    JsonArray motion = get("?hook=motion").getJsonArray("events");
+    assertEquals(1, motion.size());
+    assertEquals("motion", motion.getJsonObject(0).getString("hook"));
+  }
+
+  @Test
+  public void addsUpMissedEventsWhileWaiting() throws Exception {
+    for (int i = 0; i < 40; i++) {
+      events.record("away", "motion", EventLog.TRIP, null, EventLog.TRIPPED, 0, 0);
+    }
+
+    // The first poll misses 23 events and finds no opened trip, a later one finds it.
+    vertx.setTimer(300, id -> events.record("away", "opened", EventLog.TRIP, null, EventLog.TRIPPED, 0, 0));
+    JsonObject result = get("?after=0&hook=opened&wait_ms=5000");
+
+    assertEquals(1, result.getJsonArray("events").size());
+    assertEquals(23, (long) result.getLong("missed"));
+    assertEquals(40, (long) result.getLong("next"));
+  }
+
+  private JsonObject get(String query) throws Exception {
+    CompletableFuture<JsonObject> response = new CompletableFuture<>();
+    client.getNow(server.actualPort(), "localhost", "/v1/events" + query,
+        rs -> rs.bodyHandler(buffer -> response.complete(buffer.toJsonObject())));
+    return response.get(10, TimeUnit.SECONDS);
+  }
+}
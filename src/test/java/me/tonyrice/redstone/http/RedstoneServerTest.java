@@ -0,0 +1,188 @@
+package me.tonyrice.redstone.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.json.JsonObject;
+import me.tonyrice.redstone.RedstoneVerticle;
+
+public class RedstoneServerTest {
+
+  private static final Pattern NONCE = Pattern.compile("nonce=\"([0-9a-f]+)\"");
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Vertx vertx;
+  private HttpClient client;
+  private int port;
+
+  @Before
+  public void setUp() throws Exception {
+    vertx = Vertx.vertx();
+    client = vertx.createHttpClient();
+    try (ServerSocket socket = new ServerSocket(0)) {
+      port = socket.getLocalPort();
+    }
+  }
+
+  @After
+  public void tearDown() {
+    vertx.close();
+  }
+
+  @Test
+  public void requiresAUserForMetricsWithoutAKey() throws Exception {
+    deploy(new JsonObject());
+
+    Response challenge = get("/v1/metrics", null);
+    assertEquals(403, challenge.status);
+    assertNotNull(challenge.authenticate);
+
+    Response metrics = get("/v1/metrics", digest(challenge.authenticate, "/v1/metrics"));
+    assertEquals(200, metrics.status);
+    assertTrue(metrics.body.contains("redstone_http_trips_total"));
+  }
+
+  @Test
+  public void requiresTheMetricsKeyIfConfigured() throws Exception {
+    deploy(new JsonObject().put("_config_metrics_key", "scraper"));
+
+    assertEquals(401, get("/v1/metrics", null).status);
+    assertEquals(401, get("/v1/metrics", "Bearer wrong").status);
+    assertEquals(200, get("/v1/metrics", "Bearer scraper").status);
+  }
+
+  @Test
+  public void sharesTheEngineWhileDeployed() throws Exception {
+    String deploymentId = deploy(new JsonObject());
+    assertNotNull(RedstoneVerticle.engine(vertx));
+    assertEquals(200, get("/v1/wires/home", null).status);
+
+    CompletableFuture<Void> undeployed = new CompletableFuture<>();
+    vertx.undeploy(deploymentId, rs -> undeployed.complete(null));
+    undeployed.get(10, TimeUnit.SECONDS);
+    assertNull(RedstoneVerticle.engine(vertx));
+    assertTrue(vertx.deploymentIDs().isEmpty());
+  }
+
+  @Test
+  public void failsToStartIfThePortIsTaken() throws Exception {
+    try (ServerSocket taken = new ServerSocket(port)) {
+      deploy(new JsonObject());
+      fail("Deployed on a port already taken.");
+    } catch (ExecutionException e) {
+      // The start failed rather than exiting the process.
+    }
+    await(() -> RedstoneVerticle.engine(vertx) == null && vertx.deploymentIDs().isEmpty());
+  }
+
+  /**
+   * Deploys the server with a single wire, a user test:secret and the given
+   * configuration.
+   */
+  private String deploy(JsonObject config) throws Exception {
+    File users = folder.newFile("httpauth");
+    Files.write(users.toPath(), ("test:redstone:" + md5("test:redstone:secret") + "\n")
+        .getBytes(StandardCharsets.UTF_8));
+
+    File wires = folder.newFile("wires.json");
+    Files.write(wires.toPath(), config
+        .put("_config_http_port", port)
+        .put("_config_http_instances", 1)
+        .put("_config_http_auth", users.getPath())
+        .put("_config_default_wire", "home")
+        .put("home", new JsonObject().put("opened", new JsonObject()))
+        .encode().getBytes(StandardCharsets.UTF_8));
+
+    CompletableFuture<String> deployed = new CompletableFuture<>();
+    vertx.deployVerticle(new RedstoneServer(), new DeploymentOptions().setConfig(
+        new JsonObject().put("wires", wires.getPath())), rs -> {
+          if (rs.succeeded()) {
+            deployed.complete(rs.result());
+          } else {
+            deployed.completeExceptionally(rs.cause());
+          }
+        });
+    return deployed.get(10, TimeUnit.SECONDS);
+  }
+
+  private static void await(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (!condition.getAsBoolean()) {
+      assertTrue("Timed out waiting for a condition.", System.nanoTime() < deadline);
+      Thread.sleep(5);
+    }
+  }
+
+  private Response get(String uri, String authorization) throws Exception {
+    CompletableFuture<Response> response = new CompletableFuture<>();
+    HttpClientRequest request = client.get(port, "localhost", uri, rs -> rs.bodyHandler(
+        buffer -> response.complete(new Response(rs.statusCode(), rs.getHeader("WWW-Authenticate"),
+            buffer.toString()))));
+    if (authorization != null) {
+      request.putHeader("Authorization", authorization);
+    }
+    request.end();
+    return response.get(5, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Answers a digest challenge as the user test:secret.
+   */
+  private static String digest(String challenge, String uri) throws Exception {
+    Matcher matcher = NONCE.matcher(challenge);
+    assertTrue(matcher.find());
+    String nonce = matcher.group(1);
+
+    String response = md5(md5("test:redstone:secret") + ":" + nonce + ":00000001:c0ffee:auth:" + md5("GET:" + uri));
+    return "Digest username=\"test\", realm=\"redstone\", nonce=\"" + nonce + "\", uri=\"" + uri
+        + "\", qop=auth, nc=00000001, cnonce=\"c0ffee\", response=\"" + response + "\"";
+  }
+
+  private static String md5(String value) throws NoSuchAlgorithmException {
+    StringBuilder hex = new StringBuilder();
+    for (byte b : MessageDigest.getInstance("MD5").digest(value.getBytes(StandardCharsets.UTF_8))) {
+      hex.append(String.format("%02x", b));
+    }
+    return hex.toString();
+  }
+
+  private static final class Response {
+    final int status;
+    final String authenticate;
+    final String body;
+
+    Response(int status, String authenticate, String body) {
+      this.status = status;
+      this.authenticate = authenticate;
+      this.body = body;
+    }
+  }
+}
@@ -0,0 +1,115 @@
+package me.tonyrice.redstone.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.Router;
+import me.tonyrice.redstone.Redstone;
+import me.tonyrice.redstone.ingress.TripSignatures;
+
+public class SignedTripHandlerTest {
+
+  private Vertx vertx;
+  private Redstone redstone;
+  private HttpServer server;
+  private HttpClient client;
+
+  @Before
+  public void setUp() throws Exception {
+    vertx = Vertx.vertx();
+    redstone = Redstone.create(vertx, new JsonObject()
+        .put("_config_default_wire", "away")
+        .put("away", new JsonObject().put("opened", new JsonObject().put("wire", "home")))
+        .put("home", new JsonObject()), null);
+    await(() -> redstone.wire("away").active());
+
+    Router router = Router.router(vertx);
+    router.post("/v1/trip/:hook").handler(new SignedTripHandler(redstone, new TripSignatures("secret", 60000, 64)));
+
+    CompletableFuture<HttpServer> listening = new CompletableFuture<>();
+    vertx.createHttpServer().requestHandler(router).listen(0, rs -> listening.complete(rs.result()));
+    server = listening.get(5, TimeUnit.SECONDS);
+    client = vertx.createHttpClient();
+  }
+
+  @After
+  public void tearDown() {
+    vertx.close();
+  }
+
+  @Test
+  public void tripsSignedHooksOnce() throws Exception {
+    String timestamp = Long.toString(System.currentTimeMillis());
+    String signature = sign("secret", timestamp + ":opened");
+
+    assertEquals(200, post("opened", timestamp, signature));
+    await(() -> redstone.wire("home").active());
+
+    // A captured request is refused when sent again.
+    assertEquals(409, post("opened", timestamp, signature));
+  }
+
+  @Test
+  public void rejectsInvalidSignatures() throws Exception {
+    String timestamp = Long.toString(System.currentTimeMillis());
+
+    assertEquals(403, post("opened", timestamp, sign("other", timestamp + ":opened")));
+    assertEquals(403, post("opened", timestamp, sign("secret", timestamp + ":closed")));
+    assertEquals(403, post("opened", timestamp, "abc"));
+    assertEquals(403, post("opened", null, sign("secret", timestamp + ":opened")));
+    assertEquals(403, post("opened", "soon", sign("secret", "soon:opened")));
+
+    String stale = Long.toString(System.currentTimeMillis() - 120000);
+    assertEquals(403, post("opened", stale, sign("secret", stale + ":opened")));
+
+    Thread.sleep(100);
+    assertTrue(redstone.wire("away").active());
+  }
+
+  private int post(String hook, String timestamp, String signature) throws Exception {
+    CompletableFuture<Integer> status = new CompletableFuture<>();
+    HttpClientRequest request = client.post(server.actualPort(), "localhost", "/v1/trip/" + hook,
+        rs -> status.complete(rs.statusCode()));
+    if (timestamp != null) {
+      request.putHeader("X-Redstone-Timestamp", timestamp);
+    }
+    request.putHeader("X-Redstone-Signature", signature).end();
+    return status.get(10, TimeUnit.SECONDS);
+  }
+
+  private static String sign(String secret, String message) throws Exception {
+    Mac mac = Mac.getInstance("HmacSHA256");
+    mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+
+    StringBuilder hex = new StringBuilder();
+    for (byte b : mac.doFinal(message.getBytes(StandardCharsets.UTF_8))) {
+      hex.append(String.format("%02x", b));
+    }
+    return hex.toString();
+  }
+
+  private static void await(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (!condition.getAsBoolean()) {
+      assertTrue("Timed out waiting for a condition.", System.nanoTime() < deadline);
+      Thread.sleep(5);
+    }
+  }
+}
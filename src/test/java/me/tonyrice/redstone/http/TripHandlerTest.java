@@ -0,0 +1,201 @@
+package me.tonyrice.redstone.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.Router;
+import me.tonyrice.redstone.Redstone;
+
+public class TripHandlerTest {
+
+  private Vertx vertx;
+  private Redstone redstone;
+  private HttpServer server;
+  private HttpClient client;
+
+  @Before
+  public void setUp() throws Exception {
+    vertx = Vertx.vertx();
+    client = vertx.createHttpClient();
+    start(new JsonObject());
+  }
+
+  /**
+   * Serves trips of a new Redstone instance with the given configuration.
+   */
+  private void start(JsonObject config) throws Exception {
+    redstone = Redstone.create(vertx, config
+        .put("_config_default_wire", "away")
+        .put("away", new JsonObject()
+            .put("opened", new JsonObject())
+            .put("motion", new JsonObject().put("throttle_ms", 60000))), null);
+    await(() -> redstone.wire("away").active());
+
+    Router router = Router.router(vertx);
+    router.post("/v1/trip").handler(new TripHandler(redstone, "NOTSECURE"));
+
+    CompletableFuture<HttpServer> listening = new CompletableFuture<>();
+    vertx.createHttpServer().requestHandler(router).listen(0, rs -> listening.complete(rs.result()));
+    server = listening.get(5, TimeUnit.SECONDS);
+  }
+
+  @After
+  public void tearDown() {
+    vertx.close();
+  }
+
+  @Test
+  public void answersASingleTrip() throws Exception {
+    Response ok = post("?key=NOTSECURE", null, "{\"hook\":\"opened\"}");
+    assertEquals(200, ok.status);
+    assertEquals("OK", ok.body);
+
+    assertEquals(403, post("?key=WRONG", null, "{\"hook\":\"opened\"}").status);
+    assertEquals(403, post("", null, "{\"hook\":\"opened\"}").status);
+    assertEquals(400, post("?key=NOTSECURE", null, "{\"hook\":").status);
+  }
+
+  @Test
+  public void answersEveryTripOfAnArray() throws Exception {
+    Response response = post("", null, "[{\"hook\":\"opened\",\"key\":\"NOTSECURE\"},{\"hook\":\"unknown\"},"
+        + "{\"hook\":\"motion\"},{\"hook\":\"motion\"},{\"nohook\":true}]");
+    assertEquals(200, response.status);
+
+    JsonArray results = new JsonArray(response.body);
+    assertEquals(5, results.size());
+    assertEquals("tripped", status(results, 0));
+    assertEquals("ignored", status(results, 1));
+    assertEquals("tripped", status(results, 2));
+    assertEquals("limited", status(results, 3));
+    assertEquals("invalid", status(results, 4));
+  }
+
+  @Test
+  public void checksTheKeyOfTheFirstTripOnly() throws Exception {
+    assertEquals(403, post("", null, "[{\"hook\":\"opened\"},{\"hook\":\"opened\",\"key\":\"NOTSECURE\"}]").status);
+    assertEquals(403, post("", null, "[{\"hook\":\"opened\",\"key\":\"WRONG\"}]").status);
+    assertEquals(403, post("", null, "[]").status);
+  }
+
+  @Test
+  public void streamsNewlineDelimitedTrips() throws Exception {
+    Response response = post("", "application/x-ndjson",
+        "{\"hook\":\"opened\",\"key\":\"NOTSECURE\",\"event_id\":\"1\"}\n{\"hook\":\"opened\",\"event_id\":\"1\"}\n"
+            + "{\"hook\":\"opened\",\"event_id\":\"2\"}\n");
+    assertEquals(200, response.status);
+
+    String[] lines = response.body.split("\n");
+    assertEquals(3, lines.length);
+    assertEquals("tripped", new JsonObject(lines[0]).getString("status"));
+    assertEquals("duplicate", new JsonObject(lines[1]).getString("status"));
+    assertEquals("tripped", new JsonObject(lines[2]).getString("status"));
+  }
+
+  @Test
+  public void answersTripsBeforeAMalformedRemainder() throws Exception {
+    Response response = post("?key=NOTSECURE", null, "[{\"hook\":\"opened\"},{\"hook\":");
+    assertEquals(200, response.status);
+
+    JsonArray results = new JsonArray(response.body);
+    assertEquals(2, results.size());
+    assertEquals("tripped", status(results, 0));
+    assertEquals("invalid", status(results, 1));
+
+    Response stream = post("?key=NOTSECURE", "application/x-ndjson", "{\"hook\":\"opened\"}\n{\"hook\":");
+    String[] lines = stream.body.split("\n");
+    assertEquals(2, lines.length);
+    assertEquals("invalid", new JsonObject(lines[1]).getString("status"));
+  }
+
+  @Test
+  public void waitsForTheHooks() throws Exception {
+    Response response = post("?key=NOTSECURE&wait=true", null, "{\"hook\":\"opened\"}");
+    assertEquals(200, response.status);
+
+    JsonObject result = new JsonObject(response.body);
+    assertEquals("tripped", result.getString("status"));
+    JsonArray results = result.getJsonArray("results");
+    assertEquals(1, results.size());
+    assertEquals("away", results.getJsonObject(0).getString("wire"));
+
+    JsonArray batch = new JsonArray(post("?key=NOTSECURE&wait=true", null,
+        "[{\"hook\":\"unknown\"},{\"hook\":\"opened\"}]").body);
+    assertEquals("ignored", status(batch, 0));
+    assertTrue(batch.getJsonObject(0).getJsonArray("results").isEmpty());
+    assertEquals(1, batch.getJsonObject(1).getJsonArray("results").size());
+  }
+
+  @Test
+  public void reportsTripsDroppedByAFullMailbox() throws Exception {
+    // Holds the wire in its first trip, so the mailbox of one trip fills up.
+    start(new JsonObject().put("_config_mailbox_size", 1));
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicBoolean held = new AtomicBoolean();
+    redstone.listen(delta -> {
+      if ("trip".equals(delta.getString("type")) && held.compareAndSet(false, true)) {
+        try {
+          release.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    });
+
+    JsonArray results = new JsonArray(post("?key=NOTSECURE", null,
+        "[{\"hook\":\"opened\"},{\"hook\":\"opened\"},{\"hook\":\"opened\"}]").body);
+    release.countDown();
+
+    assertEquals("tripped", status(results, 0));
+    assertEquals("dropped", status(results, 2));
+  }
+
+  private Response post(String query, String contentType, String body) throws Exception {
+    CompletableFuture<Response> response = new CompletableFuture<>();
+    HttpClientRequest request = client.post(server.actualPort(), "localhost", "/v1/trip" + query,
+        rs -> rs.bodyHandler(buffer -> response.complete(new Response(rs.statusCode(), buffer))));
+    if (contentType != null) {
+      request.putHeader("Content-Type", contentType);
+    }
+    request.end(body);
+    return response.get(5, TimeUnit.SECONDS);
+  }
+
+  private static String status(JsonArray results, int index) {
+    return results.getJsonObject(index).getString("status");
+  }
+
+  private static void await(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (!condition.getAsBoolean()) {
+      assertTrue("Timed out waiting for a condition.", System.nanoTime() < deadline);
+      Thread.sleep(5);
+    }
+  }
+
+  private static final class Response {
+    final int status;
+    final String body;
+
+    Response(int status, Buffer body) {
+      this.status = status;
+      this.body = body.toString();
+    }
+  }
+}
@@ -0,0 +1,121 @@
+package me.tonyrice.redstone.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.Router;
+import me.tonyrice.redstone.Redstone;
+
+public class WireResponsesTest {
+
+  private Vertx vertx;
+  private Redstone redstone;
+  private HttpServer server;
+  private HttpClient client;
+
+  @Before
+  public void setUp() throws Exception {
+    vertx = Vertx.vertx();
+    redstone = Redstone.create(vertx, new JsonObject()
+        .put("_config_default_wire", "away")
+        .put("away", new JsonObject().put("title", "Away"))
+        .put("home", new JsonObject().put("title", "Home")), null);
+    await(() -> redstone.wire("away").active());
+
+    WireResponses responses = new WireResponses(redstone);
+    Router router = Router.router(vertx);
+    router.get("/v1/wires").handler(responses::list);
+    router.get("/v1/wires/:wireId").handler(responses::wire);
+
+    CompletableFuture<HttpServer> listening = new CompletableFuture<>();
+    vertx.createHttpServer().requestHandler(router).listen(0, rs -> listening.complete(rs.result()));
+    server = listening.get(5, TimeUnit.SECONDS);
+    client = vertx.createHttpClient();
+  }
+
+  @After
+  public void tearDown() {
+    vertx.close();
+  }
+
+  @Test
+  public void answersRevalidationsWithNotModified() throws Exception {
+    Response first = get("/v1/wires", null);
+    assertEquals(200, first.status);
+    assertNotNull(first.etag);
+    assertEquals(2, first.body.toJsonArray().size());
+
+    Response again = get("/v1/wires", first.etag);
+    assertEquals(304, again.status);
+    assertEquals(first.etag, again.etag);
+    assertEquals(0, again.body.length());
+
+    // The detail of a wire shares the version of the listing.
+    Response away = get("/v1/wires/away", first.etag);
+    assertEquals(304, away.status);
+    assertEquals(200, get("/v1/wires/away", "\"other\"").status);
+    assertEquals(404, get("/v1/wires/night", null).status);
+  }
+
+  @Test
+  public void changesTheETagOnActivation() throws Exception {
+    Response before = get("/v1/wires/home", null);
+    assertFalse(before.body.toJsonObject().getBoolean("active"));
+
+    redstone.wire("home").activate();
+    await(() -> redstone.wire("home").active());
+
+    Response after = get("/v1/wires/home", before.etag);
+    assertEquals(200, after.status);
+    assertNotEquals(before.etag, after.etag);
+    assertTrue(after.body.toJsonObject().getBoolean("active"));
+  }
+
+  private Response get(String uri, String etag) throws Exception {
+    CompletableFuture<Response> response = new CompletableFuture<>();
+    HttpClientRequest request = client.get(server.actualPort(), "localhost", uri,
+        rs -> rs.bodyHandler(body -> response.complete(new Response(rs.statusCode(), rs.getHeader("ETag"), body))));
+    if (etag != null) {
+      request.putHeader("If-None-Match", etag);
+    }
+    request.end();
+    return response.get(10, TimeUnit.SECONDS);
+  }
+
+  private static void await(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (!condition.getAsBoolean()) {
+      assertTrue("Timed out waiting for a condition.", System.nanoTime() < deadline);
+      Thread.sleep(5);
+    }
+  }
+
+  private static class Response {
+    final int status;
+    final String etag;
+    final Buffer body;
+
+    Response(int status, String etag, Buffer body) {
+      this.status = status;
+      this.etag = etag;
+      this.body = body;
+    }
+  }
+}
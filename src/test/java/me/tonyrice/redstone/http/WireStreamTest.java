@@ -0,0 +1,92 @@
+package me.tonyrice.redstone.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.Router;
+import me.tonyrice.redstone.Redstone;
+
+public class WireStreamTest {
+
+  private Vertx vertx;
+  private Redstone redstone;
+  private Context context;
+  private WireStream stream;
+  private HttpServer server;
+
+  @Before
+  public void setUp() throws Exception {
+    vertx = Vertx.vertx();
+    redstone = Redstone.create(vertx, new JsonObject()
+        .put("_config_default_wire", "home")
+        .put("home", new JsonObject())
+        .put("away", new JsonObject()), null);
+    await(() -> redstone.wire("home").active());
+
+    // The stream is used on the context it was created on, as in the server.
+    context = vertx.getOrCreateContext();
+    CompletableFuture<HttpServer> listening = new CompletableFuture<>();
+    context.runOnContext(v -> {
+      stream = new WireStream(vertx, new WireFeed(redstone), 50);
+      Router router = Router.router(vertx);
+      router.get("/v1/wires/stream").handler(stream);
+      vertx.createHttpServer().requestHandler(router).listen(0, rs -> listening.complete(rs.result()));
+    });
+    server = listening.get(5, TimeUnit.SECONDS);
+  }
+
+  @After
+  public void tearDown() {
+    vertx.close();
+  }
+
+  @Test
+  public void streamsSnapshotsDeltasAndHeartbeats() throws Exception {
+    StringBuffer received = new StringBuffer();
+    CompletableFuture<HttpClientResponse> connected = new CompletableFuture<>();
+    vertx.createHttpClient().getNow(server.actualPort(), "localhost", "/v1/wires/stream", rs -> {
+      rs.handler(buffer -> received.append(buffer.toString()));
+      connected.complete(rs);
+    });
+    HttpClientResponse response = connected.get(5, TimeUnit.SECONDS);
+
+    assertEquals("text/event-stream", response.getHeader("Content-Type"));
+    await(() -> received.indexOf("event: snapshot\ndata: ") >= 0);
+    assertEquals(1, clients());
+
+    redstone.wire("away").activate();
+    await(() -> received.indexOf("event: delta\ndata: {\"type\":\"activate\",\"wire\":\"away\"") >= 0);
+    await(() -> received.indexOf(":\n\n") >= 0);
+
+    // A client closing its connection is dropped along with the heartbeat.
+    response.request().connection().close();
+    await(() -> clients() == 0);
+  }
+
+  private int clients() {
+    CompletableFuture<Integer> clients = new CompletableFuture<>();
+    context.runOnContext(v -> clients.complete(stream.clients()));
+    return clients.join();
+  }
+
+  private static void await(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (!condition.getAsBoolean()) {
+      assertTrue("Timed out waiting for a condition.", System.nanoTime() < deadline);
+      Thread.sleep(5);
+    }
+  }
+}
@@ -0,0 +1,162 @@
+package me.tonyrice.redstone.http.auth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.auth.User;
+import io.vertx.ext.web.Router;
+
+public class ReactHtdigestAuthTest {
+
+    final private static Pattern NONCE = Pattern.compile("nonce=\"([0-9a-f]+)\"");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Vertx vertx;
+    private ReactHtdigestAuth auth;
+    private HttpServer server;
+    private HttpClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        vertx = Vertx.vertx();
+        File file = folder.newFile("htdigest");
+        Files.write(file.toPath(), ("test:redstone:" + md5("test:redstone:secret") + "\n")
+                .getBytes(StandardCharsets.UTF_8));
+        auth = new ReactHtdigestAuth(vertx, file.getPath());
+
+        Router router = Router.router(vertx);
+        router.route().handler(ReactHtdigestAuthHandler.create(auth));
+        router.route().handler(context -> context.response().end("ok"));
+
+        CompletableFuture<HttpServer> listening = new CompletableFuture<>();
+        vertx.createHttpServer().requestHandler(router).listen(0, rs -> listening.complete(rs.result()));
+        server = listening.get(5, TimeUnit.SECONDS);
+        client = vertx.createHttpClient();
+    }
+
+    @After
+    public void tearDown() {
+        vertx.close();
+    }
+
+    @Test
+    public void verifiesEveryNonceCount() throws Exception {
+        String nonce = "0123456789abcdef0123456789abcdef";
+
+        assertNotNull(authenticate(credentials("secret", nonce, "00000001")));
+        assertNotNull(authenticate(credentials("secret", nonce, "00000002")));
+
+        // The cached credentials still check the response of every count.
+        JsonObject forged = credentials("secret", nonce, "00000003").put("nc", "00000004");
+        assertNull(authenticate(forged));
+        assertNull(authenticate(credentials("wrong", nonce, "00000005")));
+        assertNull(authenticate(credentials("secret", nonce, "00000006").put("uri", "/other")));
+        assertNotNull(authenticate(credentials("secret", nonce, "00000007")));
+    }
+
+    @Test
+    public void rejectsReplayedNonceCounts() throws Exception {
+        Response challenge = get(null);
+        assertEquals(403, challenge.status);
+        String nonce = nonce(challenge.authenticate);
+
+        assertEquals(200, get(header(nonce, "00000001", "secret")).status);
+        Response replayed = get(header(nonce, "00000001", "secret"));
+        assertEquals(403, replayed.status);
+        assertNotNull(nonce(replayed.authenticate));
+
+        assertEquals(200, get(header(nonce, "00000002", "secret")).status);
+    }
+
+    @Test
+    public void rejectsForgedCountsWithoutAdvancing() throws Exception {
+        String nonce = nonce(get(null).authenticate);
+
+        assertEquals(200, get(header(nonce, "00000001", "secret")).status);
+        assertEquals(403, get(header(nonce, "7fffffff", "wrong")).status);
+        assertEquals(200, get(header(nonce, "00000002", "secret")).status);
+    }
+
+    @Test
+    public void rejectsNoncesItDidNotIssue() throws Exception {
+        String nonce = nonce(get(null).authenticate);
+        String tampered = (nonce.charAt(0) == '0' ? '1' : '0') + nonce.substring(1);
+
+        assertEquals(403, get(header(tampered, "00000001", "secret")).status);
+        assertEquals(403, get(header("0123456789abcdef", "00000001", "secret")).status);
+    }
+
+    private User authenticate(JsonObject authInfo) throws Exception {
+        CompletableFuture<User> user = new CompletableFuture<>();
+        auth.authenticate(authInfo, rs -> user.complete(rs.succeeded() ? rs.result() : null));
+        return user.get(5, TimeUnit.SECONDS);
+    }
+
+    private static JsonObject credentials(String password, String nonce, String nc) throws Exception {
+        String ha1 = md5("test:redstone:" + password);
+        String ha2 = md5("GET:/");
+        return new JsonObject().put("method", "GET").put("uri", "/").put("username", "test")
+                .put("realm", "redstone").put("nonce", nonce).put("nc", nc).put("cnonce", "c0ffee")
+                .put("qop", "auth").put("response", md5(ha1 + ":" + nonce + ":" + nc + ":c0ffee:auth:" + ha2));
+    }
+
+    private static String header(String nonce, String nc, String password) throws Exception {
+        JsonObject credentials = credentials(password, nonce, nc);
+        return "Digest username=\"test\", realm=\"redstone\", nonce=\"" + nonce + "\", uri=\"/\", qop=auth, nc="
+                + nc + ", cnonce=\"c0ffee\", response=\"" + credentials.getString("response") + "\"";
+    }
+
+    private Response get(String authorization) throws Exception {
+        CompletableFuture<Response> response = new CompletableFuture<>();
+        HttpClientRequest request = client.get(server.actualPort(), "localhost", "/",
+                rs -> response.complete(new Response(rs.statusCode(), rs.getHeader("WWW-Authenticate"))));
+        if (authorization != null) {
+            request.putHeader("Authorization", authorization);
+        }
+        request.end();
+        return response.get(5, TimeUnit.SECONDS);
+    }
+
+    private static String nonce(String authenticate) {
+        Matcher matcher = NONCE.matcher(authenticate);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    private static String md5(String value) throws NoSuchAlgorithmException {
+        return ReactHtdigestAuth.hex(MessageDigest.getInstance("MD5").digest(value.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static final class Response {
+        final int status;
+        final String authenticate;
+
+        Response(int status, String authenticate) {
+            this.status = status;
+            this.authenticate = authenticate;
+        }
+    }
+}
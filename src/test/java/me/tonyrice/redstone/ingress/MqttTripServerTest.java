@@ -0,0 +1,105 @@
+package me.tonyrice.redstone.ingress;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.ServerSocket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.netty.handler.codec.mqtt.MqttQoS;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.mqtt.MqttClient;
+import io.vertx.mqtt.MqttClientOptions;
+import io.vertx.mqtt.messages.MqttConnAckMessage;
+import me.tonyrice.redstone.Redstone;
+import me.tonyrice.redstone.metrics.PrometheusWriter;
+
+public class MqttTripServerTest {
+
+    private Vertx vertx;
+    private Redstone redstone;
+    private MqttTripServer server;
+    private int port;
+
+    @Before
+    public void setUp() throws Exception {
+        vertx = Vertx.vertx();
+        redstone = Redstone.create(vertx, new JsonObject()
+                .put("_config_default_wire", "away")
+                .put("away", new JsonObject().put("opened", new JsonObject().put("wire", "home")))
+                .put("home", new JsonObject()), null);
+        await(() -> redstone.wire("away").active());
+
+        try (ServerSocket free = new ServerSocket(0)) {
+            port = free.getLocalPort();
+        }
+        server = new MqttTripServer(vertx, redstone, "secret", "redstone/trip/");
+        CompletableFuture<AsyncResult<Void>> listening = new CompletableFuture<>();
+        server.listen(port, "127.0.0.1", listening::complete);
+        assertTrue(listening.get(5, TimeUnit.SECONDS).succeeded());
+    }
+
+    @After
+    public void tearDown() {
+        vertx.close();
+    }
+
+    @Test
+    public void tripsPublishedHooks() throws Exception {
+        MqttClient client = MqttClient.create(vertx, new MqttClientOptions().setUsername("sensor")
+                .setPassword("secret"));
+        assertTrue(connect(client).succeeded());
+
+        CompletableFuture<Integer> acknowledged = new CompletableFuture<>();
+        client.publishCompletionHandler(acknowledged::complete);
+        client.publish("redstone/trip/opened", Buffer.buffer(), MqttQoS.AT_LEAST_ONCE, false, false);
+        acknowledged.get(5, TimeUnit.SECONDS);
+        await(() -> redstone.wire("home").active());
+
+        client.publish("sensors/opened", Buffer.buffer(), MqttQoS.AT_MOST_ONCE, false, false);
+        client.publish("redstone/trip/unknown", Buffer.buffer(), MqttQoS.AT_MOST_ONCE, false, false);
+        await(() -> metrics().contains("redstone_mqtt_trips_total{status=\"invalid\"} 1")
+                && metrics().contains("redstone_mqtt_trips_total{status=\"ignored\"} 1"));
+        assertTrue(metrics().contains("redstone_mqtt_trips_total{status=\"tripped\"} 1"));
+    }
+
+    @Test
+    public void refusesClientsWithoutTheTripKey() throws Exception {
+        MqttClient client = MqttClient.create(vertx, new MqttClientOptions().setUsername("sensor")
+                .setPassword("wrong"));
+        assertFalse(connect(client).succeeded());
+
+        MqttClient anonymous = MqttClient.create(vertx, new MqttClientOptions());
+        assertFalse(connect(anonymous).succeeded());
+        assertTrue(metrics().contains("redstone_mqtt_trips_total{status=\"rejected\"} 2"));
+    }
+
+    private AsyncResult<MqttConnAckMessage> connect(MqttClient client) throws Exception {
+        CompletableFuture<AsyncResult<MqttConnAckMessage>> connected = new CompletableFuture<>();
+        client.connect(port, "127.0.0.1", connected::complete);
+        return connected.get(5, TimeUnit.SECONDS);
+    }
+
+    private String metrics() {
+        PrometheusWriter writer = new PrometheusWriter();
+        server.metrics(writer);
+        return writer.toString();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue("Timed out waiting for a condition.", System.nanoTime() < deadline);
+            Thread.sleep(5);
+        }
+    }
+}
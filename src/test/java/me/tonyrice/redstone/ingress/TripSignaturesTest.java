@@ -0,0 +1,88 @@
+package me.tonyrice.redstone.ingress;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.nio.charset.StandardCharsets;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.Test;
+
+public class TripSignaturesTest {
+
+    @Test
+    public void acceptsEachSignatureOnce() throws Exception {
+        TripSignatures signatures = new TripSignatures("secret", 60000, 64);
+        long now = System.currentTimeMillis();
+
+        byte[] message = message(now, "opened");
+        assertEquals(TripSignatures.OK, signatures.check(now, message, message.length, sign("secret", message)));
+        assertEquals(TripSignatures.REPLAYED, signatures.check(now, message, message.length, sign("secret", message)));
+
+        // The same hook signed at another time is a new trip.
+        byte[] later = message(now + 1, "opened");
+        assertEquals(TripSignatures.OK, signatures.check(now + 1, later, later.length, sign("secret", later)));
+    }
+
+    @Test
+    public void rejectsForgedAndStaleSignatures() throws Exception {
+        TripSignatures signatures = new TripSignatures("secret", 60000, 64);
+        long now = System.currentTimeMillis();
+
+        byte[] message = message(now, "opened");
+        assertEquals(TripSignatures.REJECTED, signatures.check(now, message, message.length, sign("other", message)));
+
+        // A signature of another hook does not carry over.
+        byte[] closed = message(now, "closed");
+        assertEquals(TripSignatures.REJECTED, signatures.check(now, message, message.length, sign("secret", closed)));
+
+        long stale = now - 120000;
+        byte[] old = message(stale, "opened");
+        assertEquals(TripSignatures.REJECTED, signatures.check(stale, old, old.length, sign("secret", old)));
+    }
+
+    @Test
+    public void checksOnlyTheSignedPrefix() throws Exception {
+        TripSignatures signatures = new TripSignatures("secret", 60000, 64);
+        long now = System.currentTimeMillis();
+
+        byte[] message = message(now, "opened");
+        byte[] packet = new byte[message.length + 8];
+        System.arraycopy(message, 0, packet, 0, message.length);
+        assertEquals(TripSignatures.OK, signatures.check(now, packet, message.length, sign("secret", message)));
+    }
+
+    @Test
+    public void decodesHexSignatures() {
+        byte[] signature = new byte[TripSignatures.SIGNATURE_LENGTH];
+        signature[0] = (byte) 0xab;
+        signature[31] = 0x0f;
+
+        assertArrayEquals(signature, TripSignatures.decode(hex(signature)));
+        assertArrayEquals(signature, TripSignatures.decode(hex(signature).toUpperCase()));
+        assertNull(TripSignatures.decode(hex(signature).substring(2)));
+        assertNull(TripSignatures.decode("zz" + hex(signature).substring(2)));
+        assertNull(TripSignatures.decode(null));
+    }
+
+    static byte[] message(long time, String hook) {
+        return (time + ":" + hook).getBytes(StandardCharsets.UTF_8);
+    }
+
+    static byte[] sign(String secret, byte[] message) throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        return mac.doFinal(message);
+    }
+
+    static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,102 @@
+package me.tonyrice.redstone.ingress;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Vertx;
+import io.vertx.core.datagram.DatagramSocket;
+import io.vertx.core.json.JsonObject;
+import me.tonyrice.redstone.Redstone;
+import me.tonyrice.redstone.metrics.PrometheusWriter;
+
+public class UdpTripListenerTest {
+
+    private Vertx vertx;
+    private Redstone redstone;
+    private UdpTripListener listener;
+    private DatagramSocket sender;
+    private int port;
+
+    @Before
+    public void setUp() throws Exception {
+        vertx = Vertx.vertx();
+        redstone = Redstone.create(vertx, new JsonObject()
+                .put("_config_default_wire", "away")
+                .put("away", new JsonObject().put("opened", new JsonObject().put("wire", "home")))
+                .put("home", new JsonObject()), null);
+        await(() -> redstone.wire("away").active());
+
+        try (java.net.DatagramSocket free = new java.net.DatagramSocket(0)) {
+            port = free.getLocalPort();
+        }
+        listener = new UdpTripListener(vertx, redstone, new TripSignatures("secret", 60000, 64));
+        CompletableFuture<AsyncResult<Void>> listening = new CompletableFuture<>();
+        listener.listen(port, "127.0.0.1", listening::complete);
+        assertTrue(listening.get(5, TimeUnit.SECONDS).succeeded());
+        sender = vertx.createDatagramSocket();
+    }
+
+    @After
+    public void tearDown() {
+        vertx.close();
+    }
+
+    @Test
+    public void tripsSignedDatagramsOnce() throws Exception {
+        long now = System.currentTimeMillis();
+        String datagram = now + ":opened:" + TripSignaturesTest.hex(sign(now, "opened"));
+
+        send(datagram + "\n");
+        await(() -> redstone.wire("home").active());
+        await(() -> metrics().contains("redstone_udp_trips_total{status=\"tripped\"} 1"));
+
+        // The same datagram captured and sent again is dropped.
+        send(datagram);
+        await(() -> metrics().contains("redstone_udp_trips_total{status=\"replayed\"} 1"));
+    }
+
+    @Test
+    public void dropsInvalidDatagrams() throws Exception {
+        long now = System.currentTimeMillis();
+
+        send("opened");
+        send(now + ":opened:abc");
+        send("12x:opened:" + TripSignaturesTest.hex(sign(now, "opened")));
+        await(() -> metrics().contains("redstone_udp_trips_total{status=\"invalid\"} 3"));
+
+        send(now + ":opened:" + TripSignaturesTest.hex(sign(now, "closed")));
+        await(() -> metrics().contains("redstone_udp_trips_total{status=\"rejected\"} 1"));
+        assertTrue(redstone.wire("away").active());
+    }
+
+    private void send(String datagram) {
+        sender.send(datagram, port, "127.0.0.1", rs -> {
+        });
+    }
+
+    private String metrics() {
+        PrometheusWriter writer = new PrometheusWriter();
+        listener.metrics(writer);
+        return writer.toString();
+    }
+
+    private static byte[] sign(long time, String hook) throws Exception {
+        return TripSignaturesTest.sign("secret", TripSignaturesTest.message(time, hook));
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue("Timed out waiting for a condition.", System.nanoTime() < deadline);
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package me.tonyrice.redstone.journal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+public class JournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Vertx vertx;
+    private JsonObject config;
+
+    @Before
+    public void setUp() throws IOException {
+        vertx = Vertx.vertx();
+        config = new JsonObject().put("journal", new File(folder.getRoot(), "journal").getPath())
+                .put("journal_size", 4096).put("journal_commit_ms", 1);
+    }
+
+    @After
+    public void tearDown() {
+        vertx.close();
+    }
+
+    @Test
+    public void disabledWithoutFile() throws IOException {
+        Journal journal = Journal.open(vertx, new JsonObject());
+        assertFalse(journal.enabled());
+        assertEquals(0, journal.armTimer("wire", "hook", Journal.TIMER, 0, 1, 0));
+    }
+
+    @Test
+    public void replaysActiveWiresAndQueuedTrips() throws IOException {
+        Journal journal = Journal.open(vertx, config);
+        journal.activate("home");
+        journal.activated("home");
+        journal.activate("away");
+        journal.tripQueued("away", "opened");
+        journal.tripQueued("away", "closed");
+        commit();
+
+        Journal.State state = reopen().state();
+        assertEquals(Arrays.asList("home", "away"), new ArrayList<>(state.activeWires()));
+        assertTrue(state.activated("home"));
+        assertFalse(state.activated("away"));
+        assertEquals(Arrays.asList("opened", "closed"), state.queued("away"));
+    }
+
+    @Test
+    public void replaysTimersAfterCompaction() throws IOException {
+        Journal journal = Journal.open(vertx, config);
+        journal.activate("away");
+
+        List<Long> live = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            long key = journal.armTimer("away", "hook" + (i % 10), Journal.TIMER, i, 1000 + i, 0);
+            if (i % 100 == 0) {
+                live.add(key);
+            } else {
+                journal.timerFired(key);
+            }
+            if (i % 50 == 0) {
+                commit();
+            }
+        }
+        commit();
+
+        // 2000 arms and fires need far more than 4 KB, so the journal was compacted.
+        assertTrue(Files.size(folder.getRoot().toPath().resolve("journal")) < 64 * 1024);
+
+        List<Long> replayed = new ArrayList<>();
+        for (Journal.Timer timer : reopen().state().timers()) {
+            assertEquals("away", timer.wireId());
+            assertEquals(1000 + timer.slot(), timer.deadline());
+            replayed.add(timer.key());
+        }
+        Collections.sort(replayed);
+        assertEquals(live, replayed);
+    }
+
+    @Test
+    public void cancelsTimersOfHookAndWire() throws IOException {
+        Journal journal = Journal.open(vertx, config);
+        journal.activate("away");
+        journal.activate("home");
+        journal.armTimer("away", "motion", Journal.TIMER, 0, 1, 0);
+        journal.armTimer("away", "motion", Journal.TIMER, 1, 1, 0);
+        long kept = journal.armTimer("away", "opened", Journal.REPEAT, 0, 1, 10);
+        long home = journal.armTimer("home", "motion", Journal.SCHEDULE, 0, 0, 0);
+        journal.hookCancelled("away", "motion");
+        assertEquals(Arrays.asList(kept, home), keys(journal.state()));
+
+        journal.deactivate("away");
+        assertEquals(Collections.singletonList(home), keys(journal.state()));
+        commit();
+
+        assertEquals(Collections.singletonList(home), keys(reopen().state()));
+    }
+
+    private static List<Long> keys(Journal.State state) {
+        List<Long> keys = new ArrayList<>();
+        for (Journal.Timer timer : state.timers()) {
+            keys.add(timer.key());
+        }
+        return keys;
+    }
+
+    /**
+     * Waits for the background commit to force the appended records.
+     */
+    private void commit() {
+        try {
+            Thread.sleep(50);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Journal reopen() throws IOException {
+        Vertx other = Vertx.vertx();
+        try {
+            return Journal.open(other, config);
+        } finally {
+            other.close();
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package me.tonyrice.redstone.outbound;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class CoalescingTableTest {
+
+    @Test
+    public void coalescesRequestsWithinTheirWindow() {
+        CoalescingTable table = new CoalescingTable(4096);
+
+        assertTrue(table.acquire("http://localhost/a", 1000, 500));
+        assertFalse(table.acquire(new String("http://localhost/a"), 1499, 500));
+        assertTrue(table.acquire("http://localhost/b", 1499, 500));
+        assertTrue(table.acquire("http://localhost/a", 1500, 500));
+        assertFalse(table.acquire("http://localhost/a", 1999, 500));
+    }
+
+    @Test
+    public void keepsItsCapacityAcrossStripes() {
+        assertEquals(16, new CoalescingTable(1).capacity());
+        assertEquals(8192, new CoalescingTable(5000).capacity());
+    }
+
+    @Test
+    public void remembersManyUrls() {
+        CoalescingTable table = new CoalescingTable(4096);
+        for (int i = 0; i < 1024; i++) {
+            assertTrue(table.acquire("http://localhost/" + i, 0, 1000));
+        }
+        for (int i = 0; i < 1024; i++) {
+            assertFalse(table.acquire("http://localhost/" + i, 1, 1000));
+        }
+    }
+}
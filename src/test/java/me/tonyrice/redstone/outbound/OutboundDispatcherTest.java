@@ -0,0 +1,174 @@
+package me.tonyrice.redstone.outbound;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.json.JsonObject;
+
+public class OutboundDispatcherTest {
+
+    private Vertx vertx;
+    private HttpServer server;
+
+    /**
+     * The statuses the server answers with in turn, 200 once they are used up,
+     * or 0 to hold the request until it is released.
+     */
+    private final Queue<Integer> statuses = new ConcurrentLinkedQueue<>();
+    private final Queue<HttpServerRequest> held = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger received = new AtomicInteger();
+
+    @Before
+    public void setUp() throws Exception {
+        vertx = Vertx.vertx();
+
+        CompletableFuture<HttpServer> listening = new CompletableFuture<>();
+        vertx.createHttpServer().requestHandler(request -> {
+            received.incrementAndGet();
+            Integer status = statuses.poll();
+            if (status != null && status == 0) {
+                held.add(request);
+                return;
+            }
+            request.response().setStatusCode(status != null ? status : 200).end();
+        }).listen(0, rs -> listening.complete(rs.result()));
+        server = listening.get(5, TimeUnit.SECONDS);
+    }
+
+    @After
+    public void tearDown() {
+        vertx.close();
+    }
+
+    @Test
+    public void retriesFailedRequests() throws Exception {
+        OutboundDispatcher dispatcher = dispatcher(new JsonObject().put("retries", 3).put("retry_base_ms", 5));
+        statuses.add(503);
+        statuses.add(429);
+
+        assertEquals(200, (int) dispatch(dispatcher).get(5, TimeUnit.SECONDS).result());
+        assertEquals(3, received.get());
+        assertEquals(2, (long) dispatcher.stats().getLong("retried"));
+        assertEquals(1, (long) dispatcher.stats().getLong("succeeded"));
+    }
+
+    @Test
+    public void givesUpAfterTheRetries() throws Exception {
+        OutboundDispatcher dispatcher = dispatcher(new JsonObject().put("retries", 1).put("retry_base_ms", 5)
+                .put("breaker_failures", 10));
+        statuses.add(500);
+        statuses.add(500);
+
+        AsyncResult<Integer> result = dispatch(dispatcher).get(5, TimeUnit.SECONDS);
+        assertTrue(result.failed());
+        assertEquals("Status 500.", result.cause().getMessage());
+        assertEquals(1, (long) dispatcher.stats().getLong("failed"));
+    }
+
+    @Test
+    public void limitsTheRequestsInFlight() throws Exception {
+        OutboundDispatcher dispatcher = dispatcher(new JsonObject().put("max_in_flight", 2).put("max_queued", 2));
+        for (int i = 0; i < 5; i++) {
+            statuses.add(0);
+        }
+
+        List<CompletableFuture<AsyncResult<Integer>>> results = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            results.add(dispatch(dispatcher));
+        }
+
+        // Two requests are sent, two wait and the fifth does not fit the queue.
+        await(() -> held.size() == 2);
+        assertTrue(results.get(4).get(5, TimeUnit.SECONDS).failed());
+        JsonObject host = dispatcher.stats().getJsonObject("hosts").getJsonObject("localhost:" + server.actualPort());
+        assertEquals(2, (int) host.getInteger("in_flight"));
+        assertEquals(2, (int) host.getInteger("queued"));
+
+        // Every response lets the next waiting request through.
+        await(() -> {
+            HttpServerRequest request = held.poll();
+            if (request != null) {
+                request.response().end();
+            }
+            return received.get() == 4 && held.isEmpty();
+        });
+        for (int i = 0; i < 4; i++) {
+            assertEquals(200, (int) results.get(i).get(5, TimeUnit.SECONDS).result());
+        }
+        assertEquals(1, (long) dispatcher.stats().getLong("dropped"));
+    }
+
+    @Test
+    public void opensTheCircuitOfAFailingHost() throws Exception {
+        OutboundDispatcher dispatcher = dispatcher(new JsonObject().put("retries", 0).put("breaker_failures", 2)
+                .put("breaker_reset_ms", 200));
+        statuses.add(500);
+        statuses.add(500);
+
+        assertTrue(dispatch(dispatcher).get(5, TimeUnit.SECONDS).failed());
+        assertTrue(dispatch(dispatcher).get(5, TimeUnit.SECONDS).failed());
+
+        // Requests are shed without reaching the host while the circuit is open.
+        AsyncResult<Integer> shed = dispatch(dispatcher).get(5, TimeUnit.SECONDS);
+        assertTrue(shed.failed());
+        assertTrue(shed.cause().getMessage().startsWith("Dropped"));
+        assertEquals(2, received.get());
+        assertEquals("open", circuit(dispatcher));
+
+        // A probe closes the circuit again once the host recovered.
+        Thread.sleep(250);
+        assertEquals(200, (int) dispatch(dispatcher).get(5, TimeUnit.SECONDS).result());
+        assertEquals("closed", circuit(dispatcher));
+    }
+
+    @Test
+    public void appliesTheOptionsOfAHost() throws Exception {
+        OutboundDispatcher dispatcher = dispatcher(new JsonObject().put("retries", 3).put("retry_base_ms", 5)
+                .put("hosts", new JsonObject().put("localhost:" + server.actualPort(),
+                        new JsonObject().put("retries", 0))));
+        statuses.add(503);
+
+        assertTrue(dispatch(dispatcher).get(5, TimeUnit.SECONDS).failed());
+        assertEquals(1, received.get());
+    }
+
+    private OutboundDispatcher dispatcher(JsonObject options) {
+        return new OutboundDispatcher(vertx, options);
+    }
+
+    private CompletableFuture<AsyncResult<Integer>> dispatch(OutboundDispatcher dispatcher) {
+        CompletableFuture<AsyncResult<Integer>> result = new CompletableFuture<>();
+        dispatcher.dispatch("http://localhost:" + server.actualPort() + "/hook", result::complete);
+        return result;
+    }
+
+    private String circuit(OutboundDispatcher dispatcher) {
+        return dispatcher.stats().getJsonObject("hosts").getJsonObject("localhost:" + server.actualPort())
+                .getString("circuit");
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue("Timed out waiting for a condition.", System.nanoTime() < deadline);
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package me.tonyrice.redstone.schedule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import me.tonyrice.redstone.timer.TimingWheel;
+
+public class ScheduleIndexTest {
+
+    private Vertx vertx;
+    private TimingWheel wheel;
+    private ScheduleIndex index;
+
+    @Before
+    public void setUp() {
+        vertx = Vertx.vertx();
+        wheel = new TimingWheel(vertx, 10, 64);
+        index = new ScheduleIndex(wheel);
+    }
+
+    @After
+    public void tearDown() {
+        vertx.close();
+    }
+
+    @Test
+    public void firesAtTheScheduledTime() throws InterruptedException {
+        long target = nextSecond(2);
+        List<Long> fired = new CopyOnWriteArrayList<>();
+        CountDownLatch latch = new CountDownLatch(1);
+
+        ScheduleIndex.Entry entry = index.add(index.group(), at(target), false, e -> {
+            fired.add(System.currentTimeMillis());
+            latch.countDown();
+        });
+
+        assertNotNull(entry);
+        assertEquals(target, entry.nextFire());
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertTrue(fired.get(0) >= target);
+
+        // A schedule that does not repeat is removed once it fired.
+        assertEquals(0, index.size());
+        assertEquals(1, fired.size());
+    }
+
+    @Test
+    public void rearmsRepeatingSchedules() throws InterruptedException {
+        long target = nextSecond(2);
+        CountDownLatch latch = new CountDownLatch(1);
+
+        ScheduleIndex.Entry entry = index.add(index.group(), at(target), true, e -> latch.countDown());
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertEquals(1, index.size());
+        assertEquals(target + TimeUnit.DAYS.toMillis(1), entry.nextFire());
+        assertEquals(1, wheel.size());
+    }
+
+    @Test
+    public void armsOnlyTheEarliestEntry() throws InterruptedException {
+        long first = nextSecond(2);
+        List<Integer> order = new CopyOnWriteArrayList<>();
+        CountDownLatch latch = new CountDownLatch(2);
+
+        index.add(index.group(), at(first + 1000), false, e -> {
+            order.add(2);
+            latch.countDown();
+        });
+        index.add(index.group(), at(first), false, e -> {
+            order.add(1);
+            latch.countDown();
+        });
+
+        assertEquals(2, index.size());
+        assertEquals(1, wheel.size());
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertEquals(1, (int) order.get(0));
+        assertEquals(2, (int) order.get(1));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void cancelsEntriesAndGroups() throws InterruptedException {
+        long target = nextSecond(2);
+        List<String> fired = new CopyOnWriteArrayList<>();
+        CountDownLatch latch = new CountDownLatch(1);
+
+        ScheduleIndex.Group hook = index.group();
+        ScheduleIndex.Entry single = index.add(hook, at(target), false, e -> fired.add("single"));
+        index.add(hook, at(target), false, e -> fired.add("hook"));
+        index.add(hook, at(target + 1000), false, e -> fired.add("hook"));
+
+        ScheduleIndex.Group other = index.group();
+        index.add(other, at(target + 1000), false, e -> {
+            fired.add("other");
+            latch.countDown();
+        });
+
+        assertEquals(3, hook.size());
+        assertTrue(single.cancel());
+        assertFalse(single.cancel());
+        assertEquals(2, hook.size());
+
+        assertEquals(2, hook.cancelAll());
+        assertEquals(0, hook.size());
+        assertEquals(1, index.size());
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertEquals(1, fired.size());
+        assertEquals("other", fired.get(0));
+        assertEquals(0, other.size());
+    }
+
+    /**
+     * Returns the start of the second at least the given seconds from now.
+     */
+    private static long nextSecond(int seconds) {
+        long now = System.currentTimeMillis();
+        return (now / 1000 + seconds + 1) * 1000;
+    }
+
+    /**
+     * Returns a daily schedule firing at the time of day of an epoch millis.
+     */
+    private static Schedule at(long millis) {
+        LocalTime time = LocalTime.ofSecondOfDay((millis / 1000) % TimeUnit.DAYS.toSeconds(1));
+        return Schedule.parse(new JsonObject().put("when", time.toString()), ZoneOffset.UTC);
+    }
+}
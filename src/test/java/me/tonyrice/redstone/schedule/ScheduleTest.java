@@ -0,0 +1,137 @@
+package me.tonyrice.redstone.schedule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import org.junit.Test;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+public class ScheduleTest {
+
+    final private static ZoneId NEW_YORK = ZoneId.of("America/New_York");
+
+    @Test
+    public void firesDailyTimesInOrder() {
+        Schedule schedule = Schedule.parse(new JsonObject().put("when", new JsonArray().add("18:00").add("07:30")),
+                ZoneOffset.UTC);
+
+        assertTrue(schedule instanceof DailySchedule);
+        assertEquals(LocalDateTime.parse("2021-06-01T07:30"), schedule.next(LocalDateTime.parse("2021-06-01T00:00")));
+        assertEquals(LocalDateTime.parse("2021-06-01T18:00"), schedule.next(LocalDateTime.parse("2021-06-01T07:30")));
+        assertEquals(LocalDateTime.parse("2021-06-02T07:30"), schedule.next(LocalDateTime.parse("2021-06-01T18:00")));
+    }
+
+    @Test
+    public void restrictsDailyTimesToDays() {
+        // 2021-06-05 is a Saturday.
+        Schedule weekdays = Schedule.parse(new JsonObject().put("when", "09:00").put("days", "weekdays"),
+                ZoneOffset.UTC);
+        assertEquals(LocalDateTime.parse("2021-06-07T09:00"), weekdays.next(LocalDateTime.parse("2021-06-05T08:00")));
+
+        Schedule days = Schedule.parse(new JsonObject().put("when", "09:00").put("days",
+                new JsonArray().add("tue").add("thursday")), ZoneOffset.UTC);
+        assertEquals(LocalDateTime.parse("2021-06-08T09:00"), days.next(LocalDateTime.parse("2021-06-05T08:00")));
+        assertEquals(LocalDateTime.parse("2021-06-10T09:00"), days.next(LocalDateTime.parse("2021-06-08T09:00")));
+    }
+
+    @Test
+    public void matchesCronFields() {
+        Schedule weekdays = Schedule.parse(new JsonObject().put("cron", "0 9 * * mon-fri"), ZoneOffset.UTC);
+        assertTrue(weekdays instanceof CronSchedule);
+        assertEquals(LocalDateTime.parse("2021-06-07T09:00"), weekdays.next(LocalDateTime.parse("2021-06-05T08:00")));
+
+        Schedule steps = Schedule.parse(new JsonObject().put("cron", "*/20 8-9 * * *"), ZoneOffset.UTC);
+        assertEquals(LocalDateTime.parse("2021-06-05T08:00"), steps.next(LocalDateTime.parse("2021-06-05T07:59")));
+        assertEquals(LocalDateTime.parse("2021-06-05T09:40"), steps.next(LocalDateTime.parse("2021-06-05T09:20")));
+        assertEquals(LocalDateTime.parse("2021-06-06T08:00"), steps.next(LocalDateTime.parse("2021-06-05T09:40")));
+
+        Schedule yearly = Schedule.parse(new JsonObject().put("cron", "@yearly"), ZoneOffset.UTC);
+        assertEquals(LocalDateTime.parse("2022-01-01T00:00"), yearly.next(LocalDateTime.parse("2021-06-05T08:00")));
+
+        Schedule months = Schedule.parse(new JsonObject().put("cron", "0 0 1 feb,aug *"), ZoneOffset.UTC);
+        assertEquals(LocalDateTime.parse("2021-08-01T00:00"), months.next(LocalDateTime.parse("2021-06-05T08:00")));
+    }
+
+    @Test
+    public void matchesEitherRestrictedDay() {
+        // Fires on the 13th and on every Friday, 2021-06-11 being a Friday.
+        Schedule schedule = Schedule.parse(new JsonObject().put("cron", "0 0 13 * fri"), ZoneOffset.UTC);
+
+        assertEquals(LocalDateTime.parse("2021-06-11T00:00"), schedule.next(LocalDateTime.parse("2021-06-10T00:00")));
+        assertEquals(LocalDateTime.parse("2021-06-13T00:00"), schedule.next(LocalDateTime.parse("2021-06-11T00:00")));
+        assertEquals(LocalDateTime.parse("2021-06-18T00:00"), schedule.next(LocalDateTime.parse("2021-06-13T00:00")));
+
+        // Sunday may be written as 7.
+        Schedule sunday = Schedule.parse(new JsonObject().put("cron", "0 0 * * 7"), ZoneOffset.UTC);
+        assertEquals(LocalDateTime.parse("2021-06-13T00:00"), sunday.next(LocalDateTime.parse("2021-06-10T00:00")));
+    }
+
+    @Test
+    public void rejectsInvalidConfigurations() {
+        invalid(new JsonObject());
+        invalid(new JsonObject().put("cron", "0 9 * *"));
+        invalid(new JsonObject().put("cron", "60 9 * * *"));
+        invalid(new JsonObject().put("cron", "0 9 * * someday"));
+        invalid(new JsonObject().put("when", new JsonArray()));
+        invalid(new JsonObject().put("when", "09:00").put("days", "mo"));
+    }
+
+    @Test
+    public void usesTheConfiguredZone() {
+        Schedule schedule = Schedule.parse(new JsonObject().put("when", "09:00").put("zone", "America/New_York"),
+                ZoneOffset.UTC);
+
+        assertEquals(NEW_YORK, schedule.getZone());
+        assertEquals(millis("2021-06-01T13:00:00Z"), schedule.nextFire(millis("2021-06-01T00:00:00Z")));
+    }
+
+    @Test
+    public void shiftsTimesInADaylightSavingGap() {
+        // 2021-03-14 02:00 EST jumps to 03:00 EDT.
+        Schedule daily = Schedule.parse(new JsonObject().put("when", "02:30"), NEW_YORK);
+
+        long fire = daily.nextFire(millis("2021-03-14T05:00:00Z"));
+        assertEquals(millis("2021-03-14T07:30:00Z"), fire);
+        assertEquals(millis("2021-03-15T06:30:00Z"), daily.nextFire(fire));
+
+        Schedule cron = Schedule.parse(new JsonObject().put("cron", "30 2 * * *"), NEW_YORK);
+        assertEquals(millis("2021-03-14T07:30:00Z"), cron.nextFire(millis("2021-03-14T05:00:00Z")));
+    }
+
+    @Test
+    public void firesOnceInADaylightSavingOverlap() {
+        // 2021-11-07 02:00 EDT falls back to 01:00 EST, so 01:30 happens twice.
+        Schedule daily = Schedule.parse(new JsonObject().put("when", "01:30"), NEW_YORK);
+
+        long fire = daily.nextFire(millis("2021-11-07T04:00:00Z"));
+        assertEquals(millis("2021-11-07T05:30:00Z"), fire);
+        assertEquals(millis("2021-11-08T06:30:00Z"), daily.nextFire(fire));
+
+        // From within the repeated hour the passed time is not fired again.
+        assertEquals(millis("2021-11-08T06:30:00Z"), daily.nextFire(millis("2021-11-07T06:00:00Z")));
+
+        Schedule cron = Schedule.parse(new JsonObject().put("cron", "*/15 * * * *"), NEW_YORK);
+        assertEquals(millis("2021-11-07T07:00:00Z"), cron.nextFire(millis("2021-11-07T05:50:00Z")));
+    }
+
+    private static void invalid(JsonObject config) {
+        try {
+            Schedule.parse(config, ZoneOffset.UTC);
+        } catch (IllegalArgumentException | DateTimeException e) {
+            return;
+        }
+        throw new AssertionError("Accepted " + config.encode());
+    }
+
+    private static long millis(String instant) {
+        return Instant.parse(instant).toEpochMilli();
+    }
+}
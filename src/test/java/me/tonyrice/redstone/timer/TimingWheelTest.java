@@ -0,0 +1,135 @@
+package me.tonyrice.redstone.timer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.vertx.core.Vertx;
+
+public class TimingWheelTest {
+
+    private Vertx vertx;
+    private TimingWheel wheel;
+
+    @Before
+    public void setUp() {
+        vertx = Vertx.vertx();
+        // 8 buckets of 10 ms, so anything beyond 80 ms wraps around the wheel.
+        wheel = new TimingWheel(vertx, 10, 8);
+    }
+
+    @After
+    public void tearDown() {
+        vertx.close();
+    }
+
+    @Test
+    public void firesTimersAfterTheirDelay() throws InterruptedException {
+        CountDownLatch fired = new CountDownLatch(1);
+        long start = System.nanoTime();
+        long[] elapsed = new long[1];
+
+        wheel.setTimer(wheel.group(), 30, t -> {
+            elapsed[0] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            fired.countDown();
+        });
+
+        assertTrue(fired.await(5, TimeUnit.SECONDS));
+        assertTrue(elapsed[0] >= 30);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void keepsTimersBeyondOneRotation() throws InterruptedException {
+        TimerGroup group = wheel.group();
+        List<Long> order = new CopyOnWriteArrayList<>();
+        List<Long> early = new CopyOnWriteArrayList<>();
+        CountDownLatch fired = new CountDownLatch(3);
+        long start = System.nanoTime();
+
+        for (long delay : new long[] { 250, 20, 130 }) {
+            wheel.setTimer(group, delay, t -> {
+                if (TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < delay) {
+                    early.add(delay);
+                }
+                order.add(delay);
+                fired.countDown();
+            });
+        }
+        assertEquals(3, group.size());
+
+        assertTrue(fired.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(20L, 130L, 250L), order);
+        assertTrue("fired early: " + early, early.isEmpty());
+        assertEquals(0, group.size());
+    }
+
+    @Test
+    public void repeatsUntilCancelled() throws InterruptedException {
+        CountDownLatch fired = new CountDownLatch(5);
+        Timeout timeout = wheel.setPeriodic(wheel.group(), 15, t -> fired.countDown());
+
+        assertTrue(fired.await(5, TimeUnit.SECONDS));
+        assertTrue(timeout.cancel());
+        assertTrue(timeout.isCancelled());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void sleepsUntilTheEarliestDeadline() throws InterruptedException {
+        List<Long> order = new CopyOnWriteArrayList<>();
+        CountDownLatch fired = new CountDownLatch(2);
+        long start = System.nanoTime();
+
+        wheel.setTimer(wheel.group(), 300, t -> {
+            order.add(300L);
+            fired.countDown();
+        });
+        // An earlier timer wakes the sleeping wheel before its planned wake-up.
+        wheel.setTimer(wheel.group(), 50, t -> {
+            order.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 300 ? 50L : -50L);
+            fired.countDown();
+        });
+
+        assertTrue(fired.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(50L, 300L), order);
+        // A wheel ticking every bucket would have woken 30 times.
+        assertTrue("woke " + wheel.wakeups() + " times", wheel.wakeups() <= 6);
+    }
+
+    @Test
+    public void cancelsGroups() throws InterruptedException {
+        TimerGroup cancelled = wheel.group();
+        TimerGroup kept = wheel.group();
+        CountDownLatch fired = new CountDownLatch(1);
+        List<String> fires = new CopyOnWriteArrayList<>();
+
+        for (int i = 0; i < 10; i++) {
+            wheel.setTimer(cancelled, 20 + i * 10, t -> fires.add("cancelled"));
+        }
+        wheel.setPeriodic(cancelled, 10, t -> fires.add("cancelled"));
+        Timeout last = wheel.setTimer(kept, 200, t -> {
+            fires.add("kept");
+            fired.countDown();
+        });
+
+        assertEquals(11, cancelled.cancelAll());
+        assertEquals(1, wheel.size());
+        assertTrue(last.remaining() > 0);
+
+        assertTrue(fired.await(5, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList("kept"), fires);
+        assertFalse(last.cancel());
+    }
+}